@@ -0,0 +1,170 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+package com.github.wdkapps.fillup;
+
+import com.androidplot.xy.XYSeries;
+
+/**
+ * DESCRIPTION:
+ * An androidplot XYSeries that stores (x,y) values in primitive arrays.
+ * The plot renderer reads the series by index, which is a constant time 
+ * operation (unlike SimpleXYSeries, which stores boxed values in linked 
+ * lists). The arrays grow as values are appended, or can be sized up 
+ * front when the number of values is known.
+ * <p>
+ * NOTE: 
+ * Not thread safe. Series are populated before they are added to a plot
+ * and are not modified once drawn.
+ */
+public class ArrayXYSeries implements XYSeries {
+	
+	/// default initial capacity of the arrays
+	private static final int DEFAULT_CAPACITY = 16;
+	
+	/// the series title
+	private final String title;
+	
+	/// the x-axis values
+	private long[] x;
+	
+	/// the y-axis values
+	private float[] y;
+	
+	/// the number of values in the series
+	private int size;
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an empty instance of ArrayXYSeries.
+	 * @param title - the series title.
+	 */
+	public ArrayXYSeries(String title) {
+		this(DEFAULT_CAPACITY,title);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an empty instance of ArrayXYSeries with a specified 
+	 * initial capacity.
+	 * @param capacity - the expected number of values.
+	 * @param title - the series title.
+	 */
+	public ArrayXYSeries(int capacity, String title) {
+		this.title = title;
+		this.x = new long[Math.max(capacity,1)];
+		this.y = new float[x.length];
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Appends an (x,y) value to the series.
+	 * @param xValue - the x-axis value.
+	 * @param yValue - the y-axis value.
+	 */
+	public void add(long xValue, float yValue) {
+		if (size == x.length) {
+			int capacity = x.length * 2;
+			long[] xLarger = new long[capacity];
+			float[] yLarger = new float[capacity];
+			System.arraycopy(x,0,xLarger,0,size);
+			System.arraycopy(y,0,yLarger,0,size);
+			x = xLarger;
+			y = yLarger;
+		}
+		x[size] = xValue;
+		y[size] = yValue;
+		size++;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the x-axis value at a specified index without boxing.
+	 * @param index - the index of the value.
+	 * @return the x-axis value.
+	 */
+	public long getXValue(int index) {
+		checkIndex(index);
+		return x[index];
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the y-axis value at a specified index without boxing.
+	 * @param index - the index of the value.
+	 * @return the y-axis value.
+	 */
+	public float getYValue(int index) {
+		checkIndex(index);
+		return y[index];
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the series title.
+	 * @see com.androidplot.Series#getTitle()
+	 */
+	@Override
+	public String getTitle() {
+		return title;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the number of values in the series.
+	 * @see com.androidplot.xy.XYSeries#size()
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the x-axis value at a specified index.
+	 * @see com.androidplot.xy.XYSeries#getX(int)
+	 */
+	@Override
+	public Number getX(int index) {
+		return getXValue(index);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the y-axis value at a specified index.
+	 * @see com.androidplot.xy.XYSeries#getY(int)
+	 */
+	@Override
+	public Number getY(int index) {
+		return getYValue(index);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Range checks a specified index.
+	 * @param index - the index of a value.
+	 * @throws IndexOutOfBoundsException if the index is not in the series.
+	 */
+	private void checkIndex(int index) {
+		if ((index < 0) || (index >= size)) {
+			throw new IndexOutOfBoundsException("size=" + size + " index=" + index);
+		}
+	}
+}
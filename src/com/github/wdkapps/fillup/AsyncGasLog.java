@@ -0,0 +1,477 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+package com.github.wdkapps.fillup;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * DESCRIPTION:
+ * An asynchronous facade for the GasLog. Operations are performed on 
+ * background threads and their results are delivered to a Callback on 
+ * the main (UI) thread. Write operations are performed one at a time, in 
+ * the order submitted, by a single writer thread. Read operations are 
+ * performed by a pool of reader threads and see the results of all write
+ * operations submitted before them. Read operations run in parallel with 
+ * a write operation only if the database uses write-ahead logging.
+ * <p>
+ * NOTE: 
+ * The GasLog itself is opened on a background thread, so a database 
+ * upgrade never runs on the main thread either.
+ */
+public class AsyncGasLog {
+	
+	/// a tag string for debug logging (the name of this class)
+	private static final String TAG = AsyncGasLog.class.getName();
+	
+	/// the number of threads performing read operations
+	private static final int READER_THREADS = 2;
+	
+	/// singleton instance
+	private static AsyncGasLog instance;
+	
+	/**
+	 * DESCRIPTION:
+	 * Interface for receiving the result of an asynchronous operation.
+	 * The result is delivered on the main (UI) thread. The callback is 
+	 * not invoked if the operation throws an exception.
+	 * @param <T> - the type of the result.
+	 */
+	public interface Callback<T> {
+		public void onResult(T result);
+	}
+	
+	/// performs write operations (one at a time, in order)
+	private final ExecutorService writer = Executors.newSingleThreadExecutor();
+	
+	/// performs read operations
+	private final ExecutorService readers = Executors.newFixedThreadPool(READER_THREADS);
+	
+	/// excludes read operations while a write operation is in progress
+	/// (unless write-ahead logging is enabled, so read operations must not 
+	/// share compiled statements with write operations)
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	/// excludes all operations while the database file is replaced
+	/// (always acquired after the lock above)
+	private final ReadWriteLock open = new ReentrantReadWriteLock();
+	
+	/// delivers results to the main thread
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	
+	/// the most recently submitted write operation (null if none)
+	private Future<?> lastWrite;
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns a single instance, creating it if necessary.
+	 * @return AsyncGasLog - singleton instance.
+	 */
+	public static synchronized AsyncGasLog getInstance() {
+		if (instance == null) {
+			instance = new AsyncGasLog();
+		}
+		return instance;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of AsyncGasLog (private to enforce singleton).
+	 */
+	private AsyncGasLog() {
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Performs a read operation on the log in the background.
+	 * NOTE: read operations can run concurrently with each other and with
+	 * a write operation, so the task must only query the log with cursors 
+	 * (not the compiled statements shared by the GasLog write methods).
+	 * @param task - the operation to perform (background thread).
+	 * @param callback - receives the result (main thread, can be null).
+	 * @return a Future representing the pending result.
+	 */
+	public synchronized <T> Future<T> read(final Callable<T> task, final Callback<T> callback) {
+		final Future<?> pending = lastWrite;
+		return readers.submit(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				waitFor(pending);
+				if (GasLog.getInstance().isWriteAheadLoggingEnabled()) {
+					return performOpen(task,callback);
+				}
+				lock.readLock().lock();
+				try {
+					return performOpen(task,callback);
+				} finally {
+					lock.readLock().unlock();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Performs a read operation, unless the database file is being 
+	 * replaced (waits until the replacement is complete).
+	 * @see #perform(Callable, Callback)
+	 */
+	private <T> T performOpen(Callable<T> task, Callback<T> callback) throws Exception {
+		open.readLock().lock();
+		try {
+			return perform(task,callback);
+		} finally {
+			open.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Performs a write operation on the log in the background. 
+	 * @param task - the operation to perform (background thread).
+	 * @param callback - receives the result (main thread, can be null).
+	 * @return a Future representing the pending result.
+	 */
+	public synchronized <T> Future<T> write(final Callable<T> task, final Callback<T> callback) {
+		Future<T> future = writer.submit(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				lock.writeLock().lock();
+				try {
+					return perform(task,callback);
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+		});
+		lastWrite = future;
+		return future;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Performs an operation and posts its result to a callback on the 
+	 * main thread. 
+	 * @param task - the operation to perform.
+	 * @param callback - receives the result (can be null).
+	 * @return the result of the operation.
+	 * @throws Exception if the operation fails.
+	 */
+	private <T> T perform(Callable<T> task, final Callback<T> callback) throws Exception {
+		final String tag = TAG+".perform()";
+		final T result;
+		try {
+			result = task.call();
+		} catch (Exception e) {
+			Log.e(tag,"operation failed",e);
+			throw e;
+		}
+		if (callback != null) {
+			handler.post(new Runnable() {
+				@Override
+				public void run() {
+					callback.onResult(result);
+				}
+			});
+		}
+		return result;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Waits for a previously submitted write operation to finish.
+	 * @param future - the write operation (can be null).
+	 */
+	private void waitFor(Future<?> future) {
+		if (future == null) return;
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			// failure already logged by the writer 
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads all vehicles in the log.
+	 * @see GasLog#readAllVehicles()
+	 */
+	public Future<List<Vehicle>> readAllVehicles(Callback<List<Vehicle>> callback) {
+		return read(new Callable<List<Vehicle>>() {
+			@Override
+			public List<Vehicle> call() {
+				return GasLog.getInstance().readAllVehicles();
+			}
+		},callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads the current odometer value for a vehicle.
+	 * @see GasLog#readCurrentOdometer(Vehicle)
+	 */
+	public Future<Integer> readCurrentOdometer(final Vehicle vehicle, Callback<Integer> callback) {
+		return read(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return GasLog.getInstance().readCurrentOdometer(vehicle);
+			}
+		},callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads the records needed to estimate mileage for a record.
+	 * @see GasLog#readEstimateRecords(Vehicle, GasRecord)
+	 */
+	public Future<List<GasRecord>> readEstimateRecords(final Vehicle vehicle, final GasRecord record, Callback<List<GasRecord>> callback) {
+		return read(new Callable<List<GasRecord>>() {
+			@Override
+			public List<GasRecord> call() {
+				return GasLog.getInstance().readEstimateRecords(vehicle,record);
+			}
+		},callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads the records for a vehicle within a range of dates.
+	 * @see RecordRepository#readRecords(Vehicle, Date, Date)
+	 */
+	public Future<List<GasRecord>> readRecords(final Vehicle vehicle, final Date start, final Date end, Callback<List<GasRecord>> callback) {
+		return read(new Callable<List<GasRecord>>() {
+			@Override
+			public List<GasRecord> call() {
+				return RecordRepository.getInstance().readRecords(vehicle,start,end);
+			}
+		},callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads the records for a vehicle within a range of dates into a 
+	 * column oriented store.
+	 * @see RecordRepository#readRecordColumns(Vehicle, Date, Date)
+	 */
+	public Future<RecordColumns> readRecordColumns(final Vehicle vehicle, final Date start, final Date end, Callback<RecordColumns> callback) {
+		return read(new Callable<RecordColumns>() {
+			@Override
+			public RecordColumns call() {
+				return RecordRepository.getInstance().readRecordColumns(vehicle,start,end);
+			}
+		},callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads the monthly trip totals for a vehicle within a range of dates.
+	 * @see RecordRepository#readMonthlyTrips(Vehicle, Date, Date)
+	 */
+	public Future<MonthlyTrips> readMonthlyTrips(final Vehicle vehicle, final Date start, final Date end, Callback<MonthlyTrips> callback) {
+		return read(new Callable<MonthlyTrips>() {
+			@Override
+			public MonthlyTrips call() {
+				return RecordRepository.getInstance().readMonthlyTrips(vehicle,start,end);
+			}
+		},callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Creates a gasoline record in the log.
+	 * @see GasLog#createRecord(Vehicle, GasRecord)
+	 */
+	public Future<Boolean> createRecord(final Vehicle vehicle, final GasRecord record, Callback<Boolean> callback) {
+		return write(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return GasLog.getInstance().createRecord(vehicle,record);
+			}
+		},callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Updates a gasoline record in the log.
+	 * @see GasLog#updateRecord(GasRecord)
+	 */
+	public Future<Boolean> updateRecord(final GasRecord record, Callback<Boolean> callback) {
+		return write(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return GasLog.getInstance().updateRecord(record);
+			}
+		},callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Deletes a gasoline record from the log.
+	 * @see GasLog#deleteRecord(GasRecord)
+	 */
+	public Future<Boolean> deleteRecord(final GasRecord record, Callback<Boolean> callback) {
+		return write(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return GasLog.getInstance().deleteRecord(record);
+			}
+		},callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads gasoline record data from an ASCII CSV file into the log.
+	 * @see GasLog#importData(Vehicle, InputStream, int, ImportProgress)
+	 */
+	public Future<Boolean> importData(final Vehicle vehicle, final InputStream file, final int mode, final ImportProgress progress, Callback<Boolean> callback) {
+		return write(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return GasLog.getInstance().importData(vehicle,file,mode,progress);
+			}
+		},callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Copies the log data for a vehicle to an ASCII CSV file.
+	 * @see GasLog#exportData(Vehicle, File)
+	 */
+	public Future<Boolean> exportData(final Vehicle vehicle, final File file, Callback<Boolean> callback) {
+		return read(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return GasLog.getInstance().exportData(vehicle,file);
+			}
+		},callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Copies the log data for all vehicles to a ZIP archive of ASCII CSV 
+	 * files.
+	 * @see GasLog#exportAllData(File, ExportProgress)
+	 */
+	public Future<Boolean> exportAllData(final File file, final ExportProgress progress, Callback<Boolean> callback) {
+		return read(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return GasLog.getInstance().exportAllData(file,progress);
+			}
+		},callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Copies all vehicles and records in the log to a binary backup file.
+	 * Performed as a write operation, so that no changes are made to the 
+	 * log while the backup is in progress.
+	 * @see GasLog#backupData(File)
+	 */
+	public Future<Boolean> backupData(final File file, Callback<Boolean> callback) {
+		return write(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return GasLog.getInstance().backupData(file);
+			}
+		},callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Replaces all vehicles and records in the log with the contents of a 
+	 * binary backup file.
+	 * @see GasLog#restoreData(InputStream)
+	 */
+	public Future<Boolean> restoreData(final InputStream file, Callback<Boolean> callback) {
+		return write(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return GasLog.getInstance().restoreData(file);
+			}
+		},callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Copies the log database file to a snapshot file. Performed as a 
+	 * write operation, so that no changes are made to the log while the 
+	 * file is copied.
+	 * @see GasLog#snapshotData(File)
+	 */
+	public Future<Boolean> snapshotData(final File file, Callback<Boolean> callback) {
+		return write(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return GasLog.getInstance().snapshotData(file);
+			}
+		},callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Replaces the log database file with a snapshot file. Performed as a 
+	 * write operation that also waits for all read operations in progress
+	 * to finish, so that no operation uses the log while it is replaced.
+	 * @see GasLog#restoreSnapshot(File)
+	 */
+	public Future<Boolean> restoreSnapshot(final File file, Callback<Boolean> callback) {
+		return write(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				open.writeLock().lock();
+				try {
+					return GasLog.restoreSnapshot(file);
+				} finally {
+					open.writeLock().unlock();
+				}
+			}
+		},callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the database version number reported by SQLite.
+	 * @see GasLog#getDatabaseVersion()
+	 */
+	public Future<Integer> getDatabaseVersion(Callback<Integer> callback) {
+		return read(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return GasLog.getInstance().getDatabaseVersion();
+			}
+		},callback);
+	}
+}
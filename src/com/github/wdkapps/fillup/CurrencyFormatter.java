@@ -32,6 +32,8 @@ import android.util.Log;
 /**
  * DESCRIPTION:
  * A formatter for currency values as text Strings for a specified currency/locale.
+ * NumberFormat is not thread-safe, so each thread formats values with its 
+ * own copy of the configured NumberFormat.
  */
 public class CurrencyFormatter extends Format {
 	
@@ -46,8 +48,16 @@ public class CurrencyFormatter extends Format {
 	// flag indicating whether the formatter is numeric (without currency symbol)
 	protected boolean numeric;
     
-    /// the actual number formatter
-	protected NumberFormat nf; 
+    /// the actual number formatter (configured template, copied for each thread)
+	protected volatile NumberFormat nf; 
+	
+	/// each thread's copy of the number formatter, and the template it was copied from
+	private final transient ThreadLocal<NumberFormat[]> copies = new ThreadLocal<NumberFormat[]>() {
+		@Override
+		protected NumberFormat[] initialValue() {
+			return new NumberFormat[2];
+		}
+	};
 
 	/**
 	 * DESCRIPTION:
@@ -86,6 +96,7 @@ public class CurrencyFormatter extends Format {
 		
 		this.locale = locale;
 		
+		NumberFormat nf;
 		if (numeric) {
 			nf = NumberFormat.getInstance(locale);
 			
@@ -99,6 +110,25 @@ public class CurrencyFormatter extends Format {
     	// configure fraction digits for the formatter
     	nf.setMinimumFractionDigits(getMinimumFractionDigits());
     	nf.setMaximumFractionDigits(getMaximumFractionDigits());
+    	
+    	// publish the configured formatter (threads copy it on next use)
+    	this.nf = nf;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the current thread's copy of the number formatter, copying
+	 * the configured formatter if it has changed since the last use.
+	 * @return NumberFormat
+	 */
+	protected NumberFormat getNumberFormat() {
+		NumberFormat template = nf;
+		NumberFormat[] copy = copies.get();
+		if (copy[0] != template) {
+			copy[0] = template;
+			copy[1] = (NumberFormat)template.clone();
+		}
+		return copy[1];
 	}
 	
 	/**
@@ -108,7 +138,7 @@ public class CurrencyFormatter extends Format {
 	 * @return String
 	 */
 	public String format(double value) {
-		return nf.format(value);
+		return getNumberFormat().format(value);
 	}
 
 	/**
@@ -116,7 +146,7 @@ public class CurrencyFormatter extends Format {
 	 */
 	@Override
 	public StringBuffer format(Object object, StringBuffer buffer, FieldPosition field) {
-		return nf.format(object, buffer, field);
+		return getNumberFormat().format(object, buffer, field);
 	}
 
 	/**
@@ -124,7 +154,7 @@ public class CurrencyFormatter extends Format {
 	 */
 	@Override
 	public Object parseObject(String string, ParsePosition position) {
-		return nf.parseObject(string,position);
+		return getNumberFormat().parseObject(string,position);
 	}
 	
 	/**
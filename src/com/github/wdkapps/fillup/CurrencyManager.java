@@ -74,7 +74,7 @@ public class CurrencyManager implements OnSharedPreferenceChangeListener {
 	 * Obtains a singleton instance of the CurrencyManager
 	 * @return CurrencyManager instance.
 	 */
-	public static CurrencyManager getInstance() {
+	public static synchronized CurrencyManager getInstance() {
 		if (instance == null) {
 			instance = new CurrencyManager();
 		}
@@ -219,7 +219,7 @@ public class CurrencyManager implements OnSharedPreferenceChangeListener {
 	 * of currency values with currency symbol.
 	 * @return CurrencyFormatter
 	 */
-	public CurrencyFormatter getSymbolicFormatter() {
+	public synchronized CurrencyFormatter getSymbolicFormatter() {
 		
 		if (symbolicFormatter == null) {
 			symbolicFormatter = new CurrencyFormatter(false);
@@ -235,7 +235,7 @@ public class CurrencyManager implements OnSharedPreferenceChangeListener {
 	 * of currency values without currency symbol.
 	 * @return CurrencyFormatter
 	 */
-	public CurrencyFormatter getNumericFormatter() {
+	public synchronized CurrencyFormatter getNumericFormatter() {
 		
 		if (numericFormatter == null) {
 			numericFormatter = new CurrencyFormatter(true);
@@ -251,7 +251,7 @@ public class CurrencyManager implements OnSharedPreferenceChangeListener {
 	 * of fractional currency values with currency symbol.
 	 * @return CurrencyFormatter
 	 */
-	public CurrencyFormatter getSymbolicFractionalFormatter() {
+	public synchronized CurrencyFormatter getSymbolicFractionalFormatter() {
 		
 		if (symbolicFractionalFormatter == null) {
 			symbolicFractionalFormatter = new FractionalCurrencyFormatter(false);
@@ -267,7 +267,7 @@ public class CurrencyManager implements OnSharedPreferenceChangeListener {
 	 * of fractional currency values without currency symbol.
 	 * @return PriceFormatter
 	 */
-	public CurrencyFormatter getNumericFractionalFormatter() {
+	public synchronized CurrencyFormatter getNumericFractionalFormatter() {
 		
 		if (numericFractionalFormatter == null) {
 			numericFractionalFormatter = new FractionalCurrencyFormatter(true);
@@ -284,7 +284,7 @@ public class CurrencyManager implements OnSharedPreferenceChangeListener {
 	 * @see android.content.SharedPreferences.OnSharedPreferenceChangeListener#onSharedPreferenceChanged(android.content.SharedPreferences, java.lang.String)
 	 */
 	@Override
-	public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+	public synchronized void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
 		if (key.equals(Settings.KEY_CURRENCY)) {
 			getCurrencyLocale();
 			if (symbolicFormatter != null) symbolicFormatter.setLocale(locale);
@@ -0,0 +1,196 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+
+package com.github.wdkapps.fillup;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * DESCRIPTION:
+ * Reports the progress of an export of all vehicles and allows the 
+ * export to be canceled. Values are updated by the background threads 
+ * exporting the vehicles. Each change is published to a Callback on the 
+ * main (UI) thread; changes made while a previous one is still waiting 
+ * to be delivered are combined, so the main thread is never flooded with 
+ * updates.
+ */
+public class ExportProgress {
+
+	/// delivers progress to the main thread
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	/// receives progress (main thread, can be null)
+	private final AsyncGasLog.Callback<ExportProgress> callback;
+
+	/// true if an update has been posted but not yet delivered
+	private final AtomicBoolean posted = new AtomicBoolean();
+	
+	/// true if the export has been canceled
+	private volatile boolean canceled;
+	
+	/// number of vehicles to export
+	private volatile int vehicles;
+	
+	/// number of vehicles exported
+	private int completed;
+	
+	/// the vehicles being exported, and the number of records written for each
+	private final Map<Vehicle,Integer> active = new LinkedHashMap<Vehicle,Integer>();
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of ExportProgress.
+	 * @param callback - receives progress updates (main thread, can be null).
+	 */
+	public ExportProgress(AsyncGasLog.Callback<ExportProgress> callback) {
+		this.callback = callback;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Requests that the export be canceled. The partially written export
+	 * file is deleted.
+	 */
+	public void cancel() {
+		canceled = true;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Indicates whether the export has been canceled.
+	 * @return true if canceled.
+	 */
+	public boolean isCanceled() {
+		return canceled;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the number of vehicles to export.
+	 * @return the number of vehicles.
+	 */
+	public int getVehicleCount() {
+		return vehicles;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the number of vehicles exported.
+	 * @return the number of vehicles.
+	 */
+	public synchronized int getCompletedCount() {
+		return completed;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the vehicles currently being exported.
+	 * @return a List of Vehicles (in the order started).
+	 */
+	public synchronized List<Vehicle> getActiveVehicles() {
+		return new ArrayList<Vehicle>(active.keySet());
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the number of records written so far for a vehicle currently 
+	 * being exported.
+	 * @param vehicle - the Vehicle.
+	 * @return the number of records (0 if the vehicle is not active).
+	 */
+	public synchronized int getRecordCount(Vehicle vehicle) {
+		Integer count = active.get(vehicle);
+		return (count == null) ? 0 : count;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Setter method for the number of vehicles to export.
+	 * @param vehicles - the number of vehicles.
+	 */
+	void setVehicleCount(int vehicles) {
+		this.vehicles = vehicles;
+		publish();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Records that the export of a vehicle has started.
+	 * @param vehicle - the Vehicle.
+	 */
+	void vehicleStarted(Vehicle vehicle) {
+		synchronized (this) {
+			active.put(vehicle,0);
+		}
+		publish();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Setter method for the number of records written for a vehicle.
+	 * @param vehicle - the Vehicle.
+	 * @param records - the number of records.
+	 */
+	void setRecordCount(Vehicle vehicle, int records) {
+		synchronized (this) {
+			active.put(vehicle,records);
+		}
+		publish();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Records that the export of a vehicle has finished.
+	 * @param vehicle - the Vehicle.
+	 */
+	void vehicleFinished(Vehicle vehicle) {
+		synchronized (this) {
+			active.remove(vehicle);
+			completed++;
+		}
+		publish();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Posts the current progress to the callback on the main thread, unless
+	 * an update is already waiting to be delivered.
+	 */
+	private void publish() {
+		if (callback == null) return;
+		if (posted.compareAndSet(false,true)) {
+			handler.post(new Runnable() {
+				@Override
+				public void run() {
+					posted.set(false);
+					callback.onResult(ExportProgress.this);
+				}
+			});
+		}
+	}
+}
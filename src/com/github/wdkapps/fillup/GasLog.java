@@ -19,16 +19,31 @@
 
 package com.github.wdkapps.fillup;
 
-import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.PrintStream;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import android.content.ContentValues;
 import android.content.Context;
@@ -36,7 +51,9 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
 import android.util.Log;
 
 /**
@@ -56,6 +73,7 @@ public class GasLog {
     /// database table names
 	private static final String VEHICLES_TABLE = "Vehicles";
     private static final String RECORDS_TABLE = "Records";
+    private static final String MONTHLY_TABLE = "Monthly";
 
     /// column names for RECORDS_TABLE
     private static final String RECORD_ID = "_id";
@@ -67,8 +85,24 @@ public class GasLog {
     private static final String RECORD_HIDDEN = "hidden";
     private static final String RECORD_COST = "cost";
     private static final String RECORD_NOTES = "notes";
+    private static final String RECORD_SEGMENT_START = "segstart";
+    private static final String RECORD_SEGMENT_VOLUME = "segvolume";
     
     
+    /// column names for MONTHLY_TABLE
+    private static final String MONTHLY_VEHICLE_ID = "_vid";
+    private static final String MONTHLY_MONTH = "month";
+    private static final String MONTHLY_DISTANCE = "distance";
+    private static final String MONTHLY_GALLONS = "gallons";
+    private static final String MONTHLY_COST = "cost";
+    private static final String MONTHLY_FILLS = "fills";
+    private static final String MONTHLY_MILEAGE_COUNT = "mpgcount";
+    private static final String MONTHLY_MILEAGE_ZEROS = "mpgzeros";
+    private static final String MONTHLY_MILEAGE_MIN = "mpgmin";
+    private static final String MONTHLY_MILEAGE_MAX = "mpgmax";
+    private static final String MONTHLY_MILEAGE_SUM = "mpgsum";
+    private static final String MONTHLY_MILEAGE_INVSUM = "mpginvsum";
+    
     // column names for VEHICLE_TABLE
     private static final String VEHICLE_ID = "_id";
     private static final String VEHICLE_NAME = "name";
@@ -87,9 +121,34 @@ public class GasLog {
     	RECORD_FULLTANK,
     	RECORD_HIDDEN,
     	RECORD_COST,
-    	RECORD_NOTES
+    	RECORD_NOTES,
+    	RECORD_SEGMENT_START,
+    	RECORD_SEGMENT_VOLUME
     };
     
+    /// SQL command to create an index for reading records by date range
+    public static final String RECORDS_TIME_INDEX = 
+    		"create index if not exists records_vid_time on " + RECORDS_TABLE + 
+    		" (" + RECORD_VEHICLE_ID + "," + RECORD_TIME + ");";
+    
+    /// SQL command to create the table of monthly totals per vehicle
+    /// note: month = (year * 12) + month of year (0-11) in local time
+    public static final String MONTHLY_TABLE_CREATE = 
+    		"create table if not exists " + MONTHLY_TABLE + " ( " + 
+    			MONTHLY_VEHICLE_ID     + " integer not null, " + 
+    			MONTHLY_MONTH          + " integer not null, " + 
+    			MONTHLY_DISTANCE       + " integer not null, " + 
+    			MONTHLY_GALLONS        + " real not null, " + 
+    			MONTHLY_COST           + " real not null, " + 
+    			MONTHLY_FILLS          + " integer not null, " + 
+    			MONTHLY_MILEAGE_COUNT  + " integer not null, " + 
+    			MONTHLY_MILEAGE_ZEROS  + " integer not null, " + 
+    			MONTHLY_MILEAGE_MIN    + " real not null, " + 
+    			MONTHLY_MILEAGE_MAX    + " real not null, " + 
+    			MONTHLY_MILEAGE_SUM    + " real not null, " + 
+    			MONTHLY_MILEAGE_INVSUM + " real not null, " + 
+    			"primary key ("+MONTHLY_VEHICLE_ID+","+MONTHLY_MONTH+"));";
+    
     /// SQL commands to create the database
     public static final String[] DATABASE_CREATE = new String[] {
 
@@ -108,12 +167,70 @@ public class GasLog {
     			RECORD_HIDDEN       + " integer not null default 0, " +
     			RECORD_COST         + " real not null default 0, " +
     			RECORD_NOTES        + " text, " +
+    			RECORD_SEGMENT_START  + " integer, " +
+    			RECORD_SEGMENT_VOLUME + " real, " +
     			"unique ("+RECORD_VEHICLE_ID+","+RECORD_ODOMETER+"), " + 
-    			"foreign key ("+RECORD_VEHICLE_ID+") references "+VEHICLES_TABLE+" ("+VEHICLE_ID+"));"
+    			"foreign key ("+RECORD_VEHICLE_ID+") references "+VEHICLES_TABLE+" ("+VEHICLE_ID+"));",
+    			
+    	RECORDS_TIME_INDEX,
+    	
+    	MONTHLY_TABLE_CREATE
     };
     
+    /// SQL statements compiled once and reused by the record access methods
+    private static final String INSERT_RECORD_SQL = 
+    		"INSERT INTO " + RECORDS_TABLE + " (" + 
+    		RECORD_VEHICLE_ID + "," + RECORD_TIME + "," + RECORD_ODOMETER + "," + 
+    		RECORD_GALLONS + "," + RECORD_FULLTANK + "," + RECORD_HIDDEN + "," + 
+    		RECORD_COST + "," + RECORD_NOTES + ") VALUES (?,?,?,?,?,?,?,?)";
+    private static final String UPDATE_RECORD_SQL = 
+    		"UPDATE " + RECORDS_TABLE + " SET " + 
+    		RECORD_VEHICLE_ID + "=?," + RECORD_TIME + "=?," + RECORD_ODOMETER + "=?," + 
+    		RECORD_GALLONS + "=?," + RECORD_FULLTANK + "=?," + RECORD_HIDDEN + "=?," + 
+    		RECORD_COST + "=?," + RECORD_NOTES + "=? WHERE " + RECORD_ID + "=?";
+    private static final String IMPORT_RECORD_SQL = 
+    		"INSERT OR IGNORE INTO " + RECORDS_TABLE + " (" + 
+    		RECORD_VEHICLE_ID + "," + RECORD_TIME + "," + RECORD_ODOMETER + "," + 
+    		RECORD_GALLONS + "," + RECORD_FULLTANK + "," + RECORD_HIDDEN + "," + 
+    		RECORD_COST + "," + RECORD_NOTES + ") VALUES (?,?,?,?,?,?,?,?)";
+    /// (values are compared at the precision of exported CSV data: time to
+    /// the minute, gallons to 3 decimals, cost to the tolerance in ?9)
+    private static final String MERGE_RECORD_WHERE = 
+    		" WHERE " + RECORD_VEHICLE_ID + "=?1 AND " + RECORD_ODOMETER + "=?3 AND (" + 
+    		"(" + RECORD_TIME + "/60000)<>(?2/60000) OR " + 
+    		"ABS(" + RECORD_GALLONS + "-?4)>0.001 OR " + 
+    		RECORD_FULLTANK + "<>?5 OR " + RECORD_HIDDEN + "<>?6 OR " + 
+    		"ABS(" + RECORD_COST + "-?7)>?9 OR " + 
+    		"IFNULL(" + RECORD_NOTES + ",'')<>IFNULL(?8,''))";
+    private static final String MERGE_RECORD_TIME_SQL = 
+    		"SELECT (SELECT " + RECORD_TIME + " FROM " + RECORDS_TABLE + MERGE_RECORD_WHERE + ")";
+    private static final String MERGE_RECORD_SQL = 
+    		"UPDATE " + RECORDS_TABLE + " SET " + 
+    		RECORD_TIME + "=?2," + RECORD_GALLONS + "=?4," + RECORD_FULLTANK + "=?5," + 
+    		RECORD_HIDDEN + "=?6," + RECORD_COST + "=?7," + RECORD_NOTES + "=?8" + 
+    		MERGE_RECORD_WHERE;
+    private static final String DELETE_RECORD_SQL = 
+    		"DELETE FROM " + RECORDS_TABLE + " WHERE " + RECORD_ID + "=?";
+    private static final String MAX_ODOMETER_SQL = 
+    		"SELECT IFNULL(MAX(" + RECORD_ODOMETER + "),-1) FROM " + RECORDS_TABLE + 
+    		" WHERE " + RECORD_VEHICLE_ID + "=?";
+    private static final String NEXT_ODOMETER_SQL = 
+    		"SELECT IFNULL(MIN(" + RECORD_ODOMETER + "),-1) FROM " + RECORDS_TABLE + 
+    		" WHERE " + RECORD_VEHICLE_ID + "=? AND " + RECORD_ODOMETER + ">?";
+    private static final String RECORD_ODOMETER_SQL = 
+    		"SELECT " + RECORD_ODOMETER + " FROM " + RECORDS_TABLE + 
+    		" WHERE " + RECORD_ID + "=?";
+    private static final String RECORD_TIME_SQL = 
+    		"SELECT " + RECORD_TIME + " FROM " + RECORDS_TABLE + 
+    		" WHERE " + RECORD_ID + "=?";
+    private static final String CHANGES_SQL = "SELECT changes()";
+    private static final String UPDATE_SEGMENT_SQL = 
+    		"UPDATE " + RECORDS_TABLE + " SET " + 
+    		RECORD_SEGMENT_START + "=?," + RECORD_SEGMENT_VOLUME + "=? WHERE " + RECORD_ID + "=?";
+    
     /// SQL commands to delete the database
     public static final String[] DATABASE_DELETE = new String[] {
+    	"drop table if exists " + MONTHLY_TABLE + ";",
     	"drop table if exists " + RECORDS_TABLE + ";",
     	"drop table if exists " + VEHICLES_TABLE + ";"
     };
@@ -122,7 +239,28 @@ public class GasLog {
 	public static final String DATABASE_NAME = "gaslog.db";
 	
 	/// the database version number 
-    public static final int DATABASE_VERSION = 5;
+    public static final int DATABASE_VERSION = 8;
+    
+    /// the header string at the start of every SQLite database file
+    private static final String SQLITE_HEADER = "SQLite format 3\0";
+    
+    /// suffix of a temporary file written before it replaces another file
+    private static final String TEMP_SUFFIX = ".tmp";
+    
+    /// suffix of the previous database file kept while a snapshot is restored
+    private static final String BACKUP_SUFFIX = ".bak";
+    
+    /// name of the manifest file in an export archive
+    private static final String EXPORT_MANIFEST = "manifest.csv";
+    
+    /// maximum number of threads exporting vehicles in parallel
+    private static final int MAX_EXPORTERS = 4;
+    
+    /// number of records exported between progress updates
+    private static final int EXPORT_PROGRESS_RECORDS = 1000;
+    
+    /// suffixes of the journal files SQLite keeps next to a database file
+    private static final String[] JOURNAL_SUFFIXES = {"-journal","-wal","-shm"};
 
     /// context of the instance creator
     private final Context context;
@@ -133,14 +271,45 @@ public class GasLog {
     /// the database
     private final SQLiteDatabase db;
     
+    /// true if write-ahead logging is enabled for the database
+    private final boolean walEnabled;
+    
+    /// data version of each vehicle's records (by vehicle id)
+    private final Map<Integer,Integer> versions = new HashMap<Integer,Integer>();
+    
+    /// true once the database has been closed
+    private boolean closed = false;
+    
+    /// compiled statements (NOTE: bindings are not thread-safe, so these are 
+    /// only used by methods that modify the log, which run one at a time on 
+    /// the writer thread; methods that only read the log use cursors instead)
+    private final SQLiteStatement insertRecord;
+    private final SQLiteStatement updateRecord;
+    private final SQLiteStatement importRecord;
+    private final SQLiteStatement mergeRecordTime;
+    private final SQLiteStatement mergeRecord;
+    private final SQLiteStatement deleteRecord;
+    private final SQLiteStatement nextOdometer;
+    private final SQLiteStatement recordOdometer;
+    private final SQLiteStatement recordTime;
+    private final SQLiteStatement changes;
+    
     /**
      * DESCRIPTION:
      * Determines if the log database file currently exists.
      * @return true if file exists, false otherwise.
      */
     public static boolean exists() {
-        File dbFile = App.getContext().getDatabasePath(DATABASE_NAME);
-        return dbFile.exists();
+        return getDatabaseFile().exists();
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Returns the log database file.
+     * @return the File.
+     */
+    private static File getDatabaseFile() {
+    	return App.getContext().getDatabasePath(DATABASE_NAME);
     }
     
     /**
@@ -148,7 +317,7 @@ public class GasLog {
      * Returns a single instance, creating it if necessary.
      * @return GasLog - singleton instance.
      */
-    public static GasLog getInstance() {
+    public static synchronized GasLog getInstance() {
     	if (instance == null) {
             instance = new GasLog();
     	}
@@ -157,24 +326,128 @@ public class GasLog {
     
     /**
      * DESCRIPTION:
-     * Destroys any existing log instance, closing the database.
+     * Closes the database when this instance is garbage collected.
+     * NOTE: only closes this instance (the singleton may have been replaced).
      */
     public void finalize() throws Throwable {
-    	if (instance != null) {
-    		instance.helper.close();
-    		instance = null;
-    	}
+    	close();
         super.finalize();
     }
     
+    /**
+     * DESCRIPTION:
+     * Closes the compiled statements and the database of this instance. 
+     * Has no effect if already closed.
+     */
+    private synchronized void close() {
+    	if (!closed) {
+    		closed = true;
+    		closeStatements();
+    		helper.close();
+    	}
+    }
+    
     /**
      * DESCRIPTION:
      * Constructs an instance of GasLog (private to enforce singleton).
+     * The database is closed again if the instance cannot be initialized.
      */
     private GasLog() {
     	this.context = App.getContext();
         this.helper = new GasLogOpenHelper(this.context);
-        this.db = helper.getWritableDatabase();
+        try {
+        	this.db = helper.getWritableDatabase();
+        	this.walEnabled = enableWriteAheadLogging();
+        	this.insertRecord = db.compileStatement(INSERT_RECORD_SQL);
+        	this.updateRecord = db.compileStatement(UPDATE_RECORD_SQL);
+        	this.importRecord = db.compileStatement(IMPORT_RECORD_SQL);
+        	this.mergeRecordTime = db.compileStatement(MERGE_RECORD_TIME_SQL);
+        	this.mergeRecord = db.compileStatement(MERGE_RECORD_SQL);
+        	this.deleteRecord = db.compileStatement(DELETE_RECORD_SQL);
+        	this.nextOdometer = db.compileStatement(NEXT_ODOMETER_SQL);
+        	this.recordOdometer = db.compileStatement(RECORD_ODOMETER_SQL);
+        	this.recordTime = db.compileStatement(RECORD_TIME_SQL);
+        	this.changes = db.compileStatement(CHANGES_SQL);
+        } catch (RuntimeException e) {
+        	helper.close();
+        	throw e;
+        }
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Enables write-ahead logging for the database. Queries performed by 
+     * other threads then use separate read-only connections and run in 
+     * parallel with a write transaction instead of waiting for it.
+     * Write-ahead logging is not supported until Android 3.0 (API 11) so 
+     * the method is invoked via Java reflection (will fail on older APIs).
+     * @return true if write-ahead logging is enabled.
+     */
+    private boolean enableWriteAheadLogging() {
+    	final String tag = TAG+".enableWriteAheadLogging()";
+    	try {
+    		Method method = SQLiteDatabase.class.getMethod("enableWriteAheadLogging");
+    		boolean enabled = (Boolean)method.invoke(db);
+    		Log.d(tag,"Write-ahead logging enabled=" + enabled);
+    		return enabled;
+    	} catch (Throwable t) {
+    		Log.w(tag,"Write-ahead logging not supported on API " + Build.VERSION.SDK_INT);
+    		return false;
+    	}
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Determines if queries can run in parallel with a write transaction.
+     * @return true if write-ahead logging is enabled for the database.
+     */
+    public boolean isWriteAheadLoggingEnabled() {
+    	return walEnabled;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Releases the compiled statements.
+     */
+    private void closeStatements() {
+    	insertRecord.close();
+    	updateRecord.close();
+    	importRecord.close();
+    	mergeRecordTime.close();
+    	mergeRecord.close();
+    	deleteRecord.close();
+    	nextOdometer.close();
+    	recordOdometer.close();
+    	recordTime.close();
+    	changes.close();
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Returns the data version of a vehicle's records. The version changes
+     * each time records for the vehicle are written to the log, so data 
+     * read at one version can be cached until the version changes.
+     * @param vehicle - the Vehicle.
+     * @return the data version.
+     */
+    public int getDataVersion(Vehicle vehicle) {
+    	synchronized (versions) {
+    		Integer version = versions.get(vehicle.getID());
+    		return (version == null) ? 0 : version;
+    	}
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Increments the data version of a vehicle's records. 
+     * NOTE: call after the change is committed.
+     * @param vid - the vehicle id.
+     */
+    private void dataChanged(int vid) {
+    	synchronized (versions) {
+    		Integer version = versions.get(vid);
+    		versions.put(vid,(version == null) ? 1 : version + 1);
+    	}
     }
     
     /**
@@ -204,24 +477,57 @@ public class GasLog {
 
     /**
      * DESCRIPTION:
-     * Convenience method to convert a GasRecord instance to a set of key/value
-     * pairs in a ContentValues instance utilized by SQLite access methods.
+     * Convenience method to bind the values of a GasRecord instance to the 
+     * first eight parameters of a compiled insert or update statement 
+     * (vehicle id, time, odometer, gallons, full tank, hidden, cost, notes).
      *
-     * @param record - the GasRecord to convert.
-     * @return a ContentValues instance representing the specified GasRecord.
+     * @param statement - the compiled statement.
+     * @param record - the GasRecord to bind.
      */
-    private ContentValues getContentValues(GasRecord record) {
-    	ContentValues values = new ContentValues();
-    	values.put(RECORD_ID, record.getID());
-    	values.put(RECORD_VEHICLE_ID, record.getVehicleID());
-    	values.put(RECORD_TIME, record.getDate().getTime());
-    	values.put(RECORD_ODOMETER,record.getOdometer());
-    	values.put(RECORD_GALLONS, record.getGallons());
-    	values.put(RECORD_FULLTANK, record.isFullTank());
-    	values.put(RECORD_HIDDEN, record.isCalculationHidden());
-    	values.put(RECORD_COST, record.getCost());
-    	values.put(RECORD_NOTES, record.getNotes());
-    	return values;
+    private void bindRecord(SQLiteStatement statement, GasRecord record) {
+    	bindRecord(statement,
+    			record.getVehicleID(),
+    			record.getDate().getTime(),
+    			record.getOdometer(),
+    			record.getGallons(),
+    			record.isFullTank(),
+    			record.isCalculationHidden(),
+    			record.getCost(),
+    			record.getNotes());
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Binds record values to the first eight parameters of a compiled 
+     * insert or update statement.
+     * @see #bindRecord(SQLiteStatement, GasRecord)
+     */
+    private void bindRecord(SQLiteStatement statement, int vid, long time, int odometer,
+    		float gallons, boolean fulltank, boolean hidden, double cost, String notes) {
+    	statement.clearBindings();
+    	statement.bindLong(1, vid);
+    	statement.bindLong(2, time);
+    	statement.bindLong(3, odometer);
+    	statement.bindDouble(4, gallons);
+    	statement.bindLong(5, fulltank ? 1 : 0);
+    	statement.bindLong(6, hidden ? 1 : 0);
+    	statement.bindDouble(7, cost);
+    	if (notes == null) {
+    		statement.bindNull(8);
+    	} else {
+    		statement.bindString(8, notes);
+    	}
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Returns the number of rows changed by the most recently completed
+     * update or delete statement.
+     * NOTE: SQLiteStatement.executeUpdateDelete() requires API 11.
+     * @return the number of rows changed.
+     */
+    private int readChangeCount() {
+    	return (int)changes.simpleQueryForLong();
     }
     
     /**
@@ -280,6 +586,24 @@ public class GasLog {
     	}
     	return record;
     }
+    
+    /**
+     * DESCRIPTION:
+     * Convenience method to create a MileageCalculation instance for a
+     * record from the stored mileage segment values read from the database.
+     * @param c - a Cursor containing results of a database query. 
+     * @param units - the Units of measurement to use for calculations.
+     * @return a MileageCalculation instance (null if the record has no calculation).
+     */
+    private MileageCalculation getCalculationFromCursor(Cursor c, Units units) {
+    	int start = c.getColumnIndex(RECORD_SEGMENT_START);
+    	if (c.isNull(start)) {
+    		return null;
+    	}
+    	int odometer = c.getInt(c.getColumnIndex(RECORD_ODOMETER));
+    	float volume = c.getFloat(c.getColumnIndex(RECORD_SEGMENT_VOLUME));
+    	return new MileageCalculation(c.getInt(start),odometer,volume,units);
+    }
 
     /**
      * DESCRIPTION:
@@ -431,27 +755,14 @@ public class GasLog {
     	ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
 
     	int value = -1;
-    	
     	Cursor cursor = null;
-
+    	
     	try {
     		// query the database for maximum value of the odometer column
-    		final String MAX_ODOMETER = "MAX(" + RECORD_ODOMETER + ")";
-    		final String[] columns = new String[] {MAX_ODOMETER};
-    		String selection = RECORD_VEHICLE_ID + "=" + vehicle.getID();
-    		cursor = db.query(
-    				RECORDS_TABLE, 
-    				columns,
-    				selection, 
-    				null, null, null, null);
-
-    		// get the value from the query results 
-    		if (cursor != null) {
-    			if (cursor.moveToFirst()) {
-    				do {
-    					value = cursor.getInt(cursor.getColumnIndex(MAX_ODOMETER));
-    				} while (cursor.moveToNext());
-    			}
+    		String[] args = {vehicle.getID().toString()};
+    		cursor = db.rawQuery(MAX_ODOMETER_SQL, args);
+    		if ((cursor != null) && cursor.moveToFirst()) {
+    			value = cursor.getInt(0);
     		}
     	} catch (SQLException e) {
     		Log.e(tag,"SQLException: "+e.getMessage());
@@ -475,8 +786,16 @@ public class GasLog {
     	ASSERT((record.getID() == null),tag,"record id must be null");
     	boolean success = false;
     	record.setVehicleID(vehicle.getID());
+    	db.beginTransaction();
     	try {
-    		long rowID = db.insertOrThrow(RECORDS_TABLE, null, getContentValues(record));
+    		bindRecord(insertRecord, record);
+    		long rowID = insertRecord.executeInsert();
+    		if (rowID < 0) {
+    			throw new SQLException("insert failed");
+    		}
+    		updateMileageSegments(db,vehicle.getID(),record.getOdometer());
+    		updateMonthlyTotals(db,vehicle.getID(),record.getOdometer(),record.getOdometer());
+    		db.setTransactionSuccessful();
     		record.setID((int)rowID);
     		success = true;
     	} catch (SQLiteConstraintException e) {
@@ -484,11 +803,178 @@ public class GasLog {
     		Utilities.toast(context,context.getString(R.string.toast_duplicate_odometer_value));
     	} catch (SQLException e) {
     		Log.e(tag,"SQLException: "+e.getMessage());
+    	} finally {
+    		db.endTransaction();
+    		dataChanged(vehicle.getID());
     	}
     	
     	return success;
     }    	
     
+    /**
+     * DESCRIPTION:
+     * Creates a collection of gasoline records in the log for a specific 
+     * vehicle. The records are inserted using a single compiled statement
+     * and committed in batches. A record that conflicts with an existing 
+     * record (duplicate odometer value) is handled as specified by the 
+     * import mode:
+     * <ul>
+     * <li>SKIP_DUPLICATES - the record is skipped.
+     * <li>OVERWRITE_DUPLICATES - the existing record is updated with the 
+     * record's values (skipped if the values are the same at the precision
+     * of exported CSV data).
+     * <li>FAIL_ON_DUPLICATE - the operation ends (the current batch is 
+     * rolled back, and the whole operation if called within a transaction).
+     * </ul>
+     * Mileage segments and monthly totals are re-calculated only around 
+     * the records that were created or changed, so existing records that 
+     * are not changed cost little more than an index lookup.
+     * NOTE: if called within a transaction, the batches are only committed
+     * (and the data version changed) when the caller's transaction ends.
+     * @param vehicle - the Vehicle to create records for.
+     * @param records - the GasRecords to create.
+     * @param batchSize - the number of records committed per transaction (0 = one transaction).
+     * @param mode - the ImportMode value for handling duplicate records.
+     * @param progress - reports the number of records inserted, updated and skipped (can be null).
+     * @return the number of records created or updated (-1 on failure, batches
+     * already committed remain in the log).
+     */
+    public int createRecords(Vehicle vehicle, Iterable<GasRecord> records, int batchSize, int mode, ImportProgress progress) {
+    	final String tag = TAG+".createRecords()";
+    	ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
+    	
+    	if (progress == null) {
+    		progress = new ImportProgress(null);
+    	}
+    	
+    	// cost values differing by less than the rounding of exported values are the same
+    	int digits = CurrencyManager.getInstance().getNumericFormatter().getMaximumFractionDigits();
+    	double tolerance = 0.5d * Math.pow(10,-digits) + 1e-9;
+    	
+    	int inserted = 0;
+    	int updated = 0;
+    	int skipped = 0;
+    	int changed = 0;
+    	
+    	// counts as of the last committed batch (reported if a batch fails)
+    	int[] committed = new int[3];
+    	
+    	// records created by the current (uncommitted) batch
+    	List<GasRecord> batch = new ArrayList<GasRecord>();
+    	
+    	// odometer values created or updated by the current batch
+    	TreeSet<Integer> odometers = new TreeSet<Integer>();
+    	
+    	// months of the previous times of records updated by the current batch
+    	Set<Integer> months = new TreeSet<Integer>();
+
+    	db.beginTransaction();
+    	try {
+    		for (GasRecord record : records) {
+    			ASSERT((record.getID() == null),tag,"record id must be null");
+    			record.setVehicleID(vehicle.getID());
+    			
+    			bindRecord(importRecord, record);
+    			long rowID = importRecord.executeInsert();
+    			if (rowID >= 0) {
+    				record.setID((int)rowID);
+    				batch.add(record);
+    				progress.setInsertedCount(++inserted);
+    			} else if (mode == ImportMode.OVERWRITE_DUPLICATES) {
+    				// update the existing record only if its values differ
+    				bindRecord(mergeRecordTime, record);
+    				mergeRecordTime.bindDouble(9, tolerance);
+    				String time = mergeRecordTime.simpleQueryForString();
+    				if (time == null) {
+    					progress.setSkippedCount(++skipped);
+    					continue;
+    				}
+    				bindRecord(mergeRecord, record);
+    				mergeRecord.bindDouble(9, tolerance);
+    				mergeRecord.execute();
+    				months.add(getMonthKey(Long.parseLong(time)));
+    				progress.setUpdatedCount(++updated);
+    			} else if (mode == ImportMode.FAIL_ON_DUPLICATE) {
+    				Utilities.toast(context,context.getString(R.string.toast_duplicate_odometer_value));
+    				throw new SQLiteConstraintException("duplicate odometer value " + record.getOdometer());
+    			} else {
+    				progress.setSkippedCount(++skipped);
+    				continue;
+    			}
+    			odometers.add(record.getOdometer());
+
+    			// commit the batch
+    			if ((batchSize > 0) && (odometers.size() >= batchSize)) {
+    				updateChangedRecords(vehicle.getID(),odometers,months);
+    				db.setTransactionSuccessful();
+    				db.endTransaction();
+    				if (!db.inTransaction()) dataChanged(vehicle.getID());
+    				changed += odometers.size();
+    				committed = new int[] {inserted, updated, skipped};
+    				batch.clear();
+    				odometers.clear();
+    				months.clear();
+    				db.beginTransaction();
+    			}
+    		}
+    		
+    		// commit the remaining records
+    		updateChangedRecords(vehicle.getID(),odometers,months);
+    		db.setTransactionSuccessful();
+    		changed += odometers.size();
+    		batch.clear();
+    	} catch (SQLException e) {
+    		Log.e(tag,"SQLException: "+e.getMessage());
+    		changed = -1;
+    		
+    		// rows of the failed batch were not committed
+    		progress.setInsertedCount(committed[0]);
+    		progress.setUpdatedCount(committed[1]);
+    		progress.setSkippedCount(committed[2]);
+    	} finally {
+    		db.endTransaction();
+    		if (!db.inTransaction()) dataChanged(vehicle.getID());
+    		
+    		// records in a failed batch were not created
+    		for (GasRecord record : batch) {
+    			record.setID(null);
+    		}
+    	}
+    	
+    	return changed;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Re-calculates the mileage segments and monthly totals affected by 
+     * records created or updated by createRecords(). The changed odometer
+     * values are grouped into runs of adjacent records, so unchanged 
+     * records between changes are not re-calculated.
+     * NOTE: should be called within a transaction.
+     * @param vid - the vehicle id.
+     * @param odometers - the odometer values of the changed records.
+     * @param months - the months of the previous times of updated records.
+     */
+    private void updateChangedRecords(int vid, TreeSet<Integer> odometers, Set<Integer> months) {
+    	if (odometers.isEmpty()) return;
+    	
+    	Set<Integer> affected = new TreeSet<Integer>(months);
+    	Integer from = null;
+    	Integer to = null;
+    	for (Integer odometer : odometers) {
+    		if ((to != null) && (readNextOdometer(vid,to) != odometer)) {
+    			updateMileageSegments(db,vid,from,to);
+    			addMonthKeys(db,vid,from,to,affected);
+    			from = null;
+    		}
+    		if (from == null) from = odometer;
+    		to = odometer;
+    	}
+    	updateMileageSegments(db,vid,from,to);
+    	addMonthKeys(db,vid,from,to,affected);
+    	updateMonthlyTotals(db,vid,affected);
+    }
+    
     /**
      * DESCRIPTION:
      * Updates a gasoline record in the log.
@@ -499,202 +985,1577 @@ public class GasLog {
     	final String tag = TAG+".updateRecord()";
 		ASSERT((record.getID() != null),tag,"record id cannot be null");
     	boolean success = false;
+    	db.beginTransaction();
     	try {
-        	ContentValues values = getContentValues(record);
-        	values.remove(RECORD_ID);
-        	String whereClause = RECORD_ID + "=" + record.getID();
-    		int count = db.update(RECORDS_TABLE,values,whereClause,null);
+    		// the odometer value and time prior to update (the record may move)
+    		int previous = readRecordOdometer(record.getID());
+    		long time = readRecordTime(record.getID());
+    		
+    		bindRecord(updateRecord, record);
+    		updateRecord.bindLong(9, record.getID());
+    		updateRecord.execute();
+    		int count = readChangeCount();
+    		
+    		// re-calculate mileage segments at both old and new locations
+    		if (count > 0) {
+    			updateMileageSegments(db,record.getVehicleID(),previous);
+    			if (previous != record.getOdometer()) {
+    				updateMileageSegments(db,record.getVehicleID(),record.getOdometer());
+    			}
+    			
+    			// re-calculate monthly totals at both old and new locations
+    			Set<Integer> months = new TreeSet<Integer>();
+    			months.add(getMonthKey(time));
+    			addMonthKeys(db,record.getVehicleID(),previous,previous,months);
+    			addMonthKeys(db,record.getVehicleID(),record.getOdometer(),record.getOdometer(),months);
+    			updateMonthlyTotals(db,record.getVehicleID(),months);
+    			db.setTransactionSuccessful();
+    		}
     		success = (count > 0);
     	} catch (SQLiteConstraintException e) {
     		Log.e(tag,"SQLiteConstraintException: "+e.getMessage());
     		Utilities.toast(context,context.getString(R.string.toast_duplicate_odometer_value));
     	} catch (SQLException e) {
     		Log.e(tag,"SQLException: "+e.getMessage());
+    	} finally {
+    		db.endTransaction();
+    		dataChanged(record.getVehicleID());
     	}
     	return success;
     }
     
     /**
      * DESCRIPTION:
-     * Reads all gasoline records contained in the log for a specific vehicle.
-     * @param vehicle - the Vehicle to read the records for. 
-     * @return a List of all GasRecord's in the log for the vehicle (empty if none exist).
+     * Reads the odometer value currently stored in the log for a record.
+     * @param id - the record id.
+     * @return the stored odometer value (-1 if no such record).
      */
-    public List<GasRecord> readAllRecords(Vehicle vehicle) {
-       	final String tag = TAG+".readAllRecords()";
-		ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
-
-		List<GasRecord> list = new ArrayList<GasRecord>();
-		
-		Cursor cursor = null;
-
-		try {
-			// SELECT * FROM Records WHERE vid=vehicle.getID() ORDER BY odometer;
-			String orderBy = RECORD_ODOMETER;
-			String selection = RECORD_VEHICLE_ID + "=" + vehicle.getID();
-			cursor = db.query(
-					RECORDS_TABLE, 
-					RECORDS_TABLE_COLUMNS,
-					selection,
-					null,null,null,
-					orderBy,
-					null
-					);
-
-			// create a list of GasRecords from the data
-			if (cursor != null) {
-				if (cursor.moveToFirst()) {
-					do {
-						GasRecord record = getRecordFromCursor(cursor);
-						list.add(record);
-					} while (cursor.moveToNext());
-				}
-			}
-
-			// calculate mileage based on the data
-			GasRecordList.calculateMileage(list);
-			
-		} catch (SQLException e) {
-			Log.e(tag,"SQLException: "+e.getMessage());
-			list.clear();
-		} finally {
-			if (cursor != null) cursor.close();
-		}
-
-		// return the list of GasRecords
-    	return list;
+    private int readRecordOdometer(int id) {
+    	int value = -1;
+    	try {
+    		recordOdometer.bindLong(1, id);
+    		value = (int)recordOdometer.simpleQueryForLong();
+    	} catch (SQLiteDoneException e) {
+    		// no such record
+    	}
+    	return value;
     }
     
     /**
      * DESCRIPTION:
-     * Deletes a specified gasoline record from the log.
-     * @param record - the GasRecord to delete.
-     * @return boolean flag indicating success/failure (true=success)
+     * Reads the odometer value of a vehicle's next record.
+     * @param vid - the vehicle id.
+     * @param odometer - the odometer value.
+     * @return the lowest stored odometer value greater than the specified
+     * value (-1 if none).
      */
-    public boolean deleteRecord(GasRecord record) {
-
-    	final String tag = TAG+".deleteRecord()";
-    	
-		ASSERT((record.getID() != null),tag,"record id cannot be null");
-		
-    	boolean success = false;
-    	
-    	try {
-        	String whereClause = RECORD_ID + "=" + record.getID();
-        	String [] whereArgs = null;
-        	int count = db.delete(RECORDS_TABLE, whereClause, whereArgs);
-    		success = (count == 1);
-    	} catch (SQLException e) {
-    		Log.e(tag,"SQLException: "+e.getMessage());
-    	}
-    	
-    	return success;
+    private int readNextOdometer(int vid, int odometer) {
+    	nextOdometer.bindLong(1, vid);
+    	nextOdometer.bindLong(2, odometer);
+    	return (int)nextOdometer.simpleQueryForLong();
     }
-
+    
     /**
      * DESCRIPTION:
-     * Deletes all gasoline records from the log for a specific vehicle.
-     * @param vehicle - the Vehicle to delete records for.
-     * @return boolean flag indicating success/failure (true=success)
+     * Reads the time currently stored in the log for a record.
+     * @param id - the record id.
+     * @return the stored time in milliseconds (-1 if no such record).
      */
-    public boolean deleteAllRecords(Vehicle vehicle) {
-    	final String tag = TAG+".deleteAllRecords()";
-    	ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
-    	boolean success = false;
+    private long readRecordTime(int id) {
+    	long value = -1;
     	try {
-    		String whereClause = RECORD_VEHICLE_ID + "=" + vehicle.getID();
-    		String [] whereArgs = null;
-    		db.delete(RECORDS_TABLE, whereClause, whereArgs);
-    		success = true;
-    	} catch (SQLException e) {
-    		Log.e(tag,"SQLException: "+e.getMessage());
+    		recordTime.bindLong(1, id);
+    		value = recordTime.simpleQueryForLong();
+    	} catch (SQLiteDoneException e) {
+    		// no such record
     	}
-    	
-    	return success;
+    	return value;
     }
     
     /**
      * DESCRIPTION:
-     * Reads gasoline record data from a specified ASCII CSV formatted file
-     * into the log for a specific vehicle. 
-     * @param vehicle - the Vehicle to import records for.
-     * @param file - the ASCII CSV data file to import.
-     * @return boolean flag indicating success/failure (true=success)
+     * Re-calculates the stored mileage segment values (start odometer and 
+     * gasoline used since the previous full tank) for a vehicle's records 
+     * affected by a change at a specified odometer value. Calculation starts
+     * at the previous full tank and ends at the first full tank after the 
+     * odometer value. Only rows whose values changed are written.
+     * NOTE: should be called within a transaction.
+     * @param db - the database.
+     * @param vid - the vehicle id.
+     * @param odometer - the odometer value of the change (-1 = all records).
      */
-    public boolean importData(Vehicle vehicle, InputStream file) {
-    	
-    	final String tag = TAG+".importData()";
-    	
-    	boolean success = false;
-    	
-    	db.beginTransaction();
-    	
-		int num = 0;
-    	BufferedReader reader = null;
-    	try {
-    		reader = new BufferedReader(new InputStreamReader(file));
-    		
-    		String line;
-    		do {
-    			line = reader.readLine();
-    			num++;
-    			if (line != null) {
-    				GasRecord record = new GasRecord(line);
-    				if (!createRecord(vehicle,record)) {
-    					throw new SQLiteException("create failed");
-    				}
-    			}
-    		} while (line != null);
-    		
-    		success = true;
-    		db.setTransactionSuccessful();
-    		
-    	} catch(Throwable t) {
-    		Log.e(tag,"import failed",t);
-    		String format = context.getString(R.string.toast_stopped_at_csv_line);
-    		Utilities.toast(context, String.format(format,num));
-    	} finally {
-    		db.endTransaction();
-    		if (reader != null) { 
-    			try {
-    				reader.close();
-    			} catch (IOException e) {
-    				Log.e(tag,"close() failed",e);
-    			}
-    		}
+    static void updateMileageSegments(SQLiteDatabase db, int vid, int odometer) {
+    	if (odometer < 0) {
+    		updateMileageSegments(db,vid,-1,Integer.MAX_VALUE);
+    	} else {
+    		updateMileageSegments(db,vid,odometer,odometer);
     	}
-    	
-    	return success;
     }
     
     /**
      * DESCRIPTION:
-     * Copies all existing log data for a specific vehicle to an ASCII CSV file.
-     * @param vehicle - the Vehicle to export data for.
-     * @param file - the ASCII CSV file to create.
-     * @return boolean flag indicating success/failure (true=success)
+     * Re-calculates the stored mileage segment values for a vehicle's records
+     * affected by changes within a range of odometer values. Calculation starts
+     * at the full tank before the range and ends at the first full tank after
+     * the range. 
+     * NOTE: should be called within a transaction.
+     * @param db - the database.
+     * @param vid - the vehicle id.
+     * @param from - the lowest odometer value changed (-1 = first record).
+     * @param to - the highest odometer value changed (Integer.MAX_VALUE = last record).
      */
-    public boolean exportData(Vehicle vehicle, File file) {
+    static void updateMileageSegments(SQLiteDatabase db, int vid, int from, int to) {
+    	
+    	// find the previous full tank (if any) before the change
+    	int start = -1;
+    	int odometer = from;
+    	Cursor cursor = null;
+    	SQLiteStatement update = null;
+    	try {
+    		if (odometer >= 0) {
+    			cursor = db.rawQuery(
+    					"SELECT MAX(" + RECORD_ODOMETER + ") FROM " + RECORDS_TABLE + 
+    					" WHERE " + RECORD_VEHICLE_ID + "=" + vid + 
+    					" AND " + RECORD_FULLTANK + "=1" + 
+    					" AND " + RECORD_ODOMETER + "<" + odometer, null);
+    			if (cursor.moveToFirst() && !cursor.isNull(0)) {
+    				start = cursor.getInt(0);
+    			}
+    			cursor.close();
+    		}
+
+    		// read records following the previous full tank
+    		final String[] columns = new String[] {
+    				RECORD_ID,
+    				RECORD_ODOMETER,
+    				RECORD_GALLONS,
+    				RECORD_FULLTANK,
+    				RECORD_SEGMENT_START,
+    				RECORD_SEGMENT_VOLUME
+    		};
+    		String selection = RECORD_VEHICLE_ID + "=" + vid + " AND " + RECORD_ODOMETER + ">" + start;
+    		cursor = db.query(RECORDS_TABLE, columns, selection, null, null, null, RECORD_ODOMETER);
+
+    		// calculate values for each record in the affected segments
+    		boolean calculating = (start >= 0);
+    		float volume = 0f;
+    		while (cursor.moveToNext()) {
+    			int id = cursor.getInt(0);
+    			int current = cursor.getInt(1);
+    			float gallons = cursor.getFloat(2);
+    			boolean fulltank = (cursor.getInt(3) == 1);
+    			
+    			boolean hasSegment = calculating && fulltank;
+    			if (calculating) {
+    				volume += gallons;
+    			}
+    			
+    			// write the values if they have changed
+    			boolean changed;
+    			if (hasSegment) {
+    				changed = cursor.isNull(4) || 
+    						(cursor.getInt(4) != start) || 
+    						(cursor.getFloat(5) != volume);
+    			} else {
+    				changed = !cursor.isNull(4) || !cursor.isNull(5);
+    			}
+    			if (changed) {
+    				if (update == null) {
+    					update = db.compileStatement(UPDATE_SEGMENT_SQL);
+    				}
+    				if (hasSegment) {
+    					update.bindLong(1, start);
+    					update.bindDouble(2, volume);
+    				} else {
+    					update.bindNull(1);
+    					update.bindNull(2);
+    				}
+    				update.bindLong(3, id);
+    				update.execute();
+    			}
+    			
+    			// a full tank ends one segment and starts the next
+    			if (fulltank) {
+    				if (current > to) break;
+    				calculating = true;
+    				start = current;
+    				volume = 0f;
+    			}
+    		}
+    	} finally {
+    		if (cursor != null) cursor.close();
+    		if (update != null) update.close();
+    	}
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Re-calculates the stored mileage segment values for all records 
+     * of all vehicles in the log.
+     * NOTE: should be called within a transaction.
+     * @param db - the database.
+     */
+    static void updateMileageSegments(SQLiteDatabase db) {
+    	Cursor cursor = null;
+    	try {
+    		cursor = db.rawQuery("SELECT DISTINCT " + RECORD_VEHICLE_ID + " FROM " + RECORDS_TABLE, null);
+    		while (cursor.moveToNext()) {
+    			updateMileageSegments(db,cursor.getInt(0),-1);
+    		}
+    	} finally {
+    		if (cursor != null) cursor.close();
+    	}
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Returns the key identifying the month (in local time) of a 
+     * specified time in the table of monthly totals.
+     * @param time - the time in milliseconds.
+     * @return the month key, (year * 12) + month of year (0-11).
+     */
+    private static int getMonthKey(long time) {
+    	Date date = new Date(time);
+    	return ((date.getYear() + 1900) * 12) + date.getMonth();
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Returns the first day of the month identified by a month key.
+     * @param month - the month key.
+     * @return the Date at the start of the month (local time).
+     */
+    private static Date getMonthDate(int month) {
+    	// year,month,day,hour,min.sec
+    	return new Date((month / 12) - 1900, month % 12, 1, 0, 0, 0);
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Adds the months of a vehicle's records whose monthly totals are
+     * affected by changes within a range of odometer values to a set. 
+     * A change affects the records in the range, the distance driven to the 
+     * next record, and mileage calculations up to the next full tank.
+     * @param db - the database.
+     * @param vid - the vehicle id.
+     * @param from - the lowest odometer value changed (-1 = first record).
+     * @param to - the highest odometer value changed (Integer.MAX_VALUE = last record).
+     * @param months - the Set of month keys to add to.
+     */
+    private static void addMonthKeys(SQLiteDatabase db, int vid, int from, int to, Set<Integer> months) {
+    	Cursor cursor = null;
+    	try {
+    		// the first full tank after the range (never before the next record)
+    		if (to < Integer.MAX_VALUE) {
+    			cursor = db.rawQuery(
+    					"SELECT MIN(" + RECORD_ODOMETER + ") FROM " + RECORDS_TABLE + 
+    					" WHERE " + RECORD_VEHICLE_ID + "=" + vid + 
+    					" AND " + RECORD_FULLTANK + "=1" + 
+    					" AND " + RECORD_ODOMETER + ">" + to, null);
+    			if (cursor.moveToFirst() && !cursor.isNull(0)) {
+    				to = cursor.getInt(0);
+    			} else {
+    				to = Integer.MAX_VALUE;
+    			}
+    			cursor.close();
+    		}
+    		
+    		// the months of the records in the affected range
+    		cursor = db.rawQuery(
+    				"SELECT " + RECORD_TIME + " FROM " + RECORDS_TABLE + 
+    				" WHERE " + RECORD_VEHICLE_ID + "=" + vid + 
+    				" AND " + RECORD_ODOMETER + ">=" + from + 
+    				" AND " + RECORD_ODOMETER + "<=" + to, null);
+    		while (cursor.moveToNext()) {
+    			months.add(getMonthKey(cursor.getLong(0)));
+    		}
+    	} finally {
+    		if (cursor != null) cursor.close();
+    	}
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Re-calculates the stored monthly totals for a vehicle's records 
+     * affected by changes within a range of odometer values. 
+     * NOTE: should be called within a transaction, after the mileage
+     * segments have been updated.
+     * @param db - the database.
+     * @param vid - the vehicle id.
+     * @param from - the lowest odometer value changed (-1 = first record).
+     * @param to - the highest odometer value changed (Integer.MAX_VALUE = last record).
+     */
+    static void updateMonthlyTotals(SQLiteDatabase db, int vid, int from, int to) {
+    	Set<Integer> months = new TreeSet<Integer>();
+    	addMonthKeys(db,vid,from,to,months);
+    	updateMonthlyTotals(db,vid,months);
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Re-calculates the stored totals for a set of months from a 
+     * vehicle's records. The totals for a month with no records are removed.
+     * NOTE: should be called within a transaction.
+     * @param db - the database.
+     * @param vid - the vehicle id.
+     * @param months - the Set of month keys to re-calculate.
+     */
+    static void updateMonthlyTotals(SQLiteDatabase db, int vid, Set<Integer> months) {
+    	
+    	// the odometer value of the record preceding each record (the trip start)
+    	final String previous = 
+    			"(SELECT MAX(p." + RECORD_ODOMETER + ") FROM " + RECORDS_TABLE + " p" + 
+    			" WHERE p." + RECORD_VEHICLE_ID + "=r." + RECORD_VEHICLE_ID + 
+    			" AND p." + RECORD_ODOMETER + "<r." + RECORD_ODOMETER + ")";
+    	
+    	for (int month : months) {
+    		long start = getMonthDate(month).getTime();
+    		long end = getMonthDate(month + 1).getTime();
+    		
+    		int distance = 0;
+    		float gallons = 0f;
+    		double cost = 0d;
+    		int fills = 0;
+    		MileageStatistics mileage = new MileageStatistics();
+    		
+    		// accumulate the trips ending during the month
+    		Cursor cursor = null;
+    		try {
+    			cursor = db.rawQuery(
+    					"SELECT r." + RECORD_ODOMETER + 
+    					",r." + RECORD_GALLONS + 
+    					",r." + RECORD_COST + 
+    					",r." + RECORD_HIDDEN + 
+    					",r." + RECORD_SEGMENT_START + 
+    					",r." + RECORD_SEGMENT_VOLUME + 
+    					"," + previous + 
+    					" FROM " + RECORDS_TABLE + " r" + 
+    					" WHERE r." + RECORD_VEHICLE_ID + "=" + vid + 
+    					" AND r." + RECORD_TIME + ">=" + start + 
+    					" AND r." + RECORD_TIME + "<" + end, null);
+    			while (cursor.moveToNext()) {
+    				int odometer = cursor.getInt(0);
+    				gallons += cursor.getFloat(1);
+    				cost += cursor.getDouble(2);
+    				if (!cursor.isNull(6)) {
+    					distance += odometer - cursor.getInt(6);
+    				}
+    				if (!cursor.isNull(4) && (cursor.getInt(3) == 0)) {
+    					mileage.add(odometer - cursor.getInt(4),cursor.getFloat(5));
+    				}
+    				fills++;
+    			}
+    		} finally {
+    			if (cursor != null) cursor.close();
+    		}
+    		
+    		// write the totals for the month
+    		if (fills == 0) {
+    			db.delete(MONTHLY_TABLE, 
+    					MONTHLY_VEHICLE_ID + "=" + vid + " AND " + MONTHLY_MONTH + "=" + month, null);
+    		} else {
+    			ContentValues values = new ContentValues();
+    			values.put(MONTHLY_VEHICLE_ID, vid);
+    			values.put(MONTHLY_MONTH, month);
+    			values.put(MONTHLY_DISTANCE, distance);
+    			values.put(MONTHLY_GALLONS, gallons);
+    			values.put(MONTHLY_COST, cost);
+    			values.put(MONTHLY_FILLS, fills);
+    			values.put(MONTHLY_MILEAGE_COUNT, mileage.getCount());
+    			values.put(MONTHLY_MILEAGE_ZEROS, mileage.getZeros());
+    			values.put(MONTHLY_MILEAGE_MIN, mileage.getMinimumRatio());
+    			values.put(MONTHLY_MILEAGE_MAX, mileage.getMaximumRatio());
+    			values.put(MONTHLY_MILEAGE_SUM, mileage.getSum());
+    			values.put(MONTHLY_MILEAGE_INVSUM, mileage.getInverseSum());
+    			db.replaceOrThrow(MONTHLY_TABLE, null, values);
+    		}
+    	}
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Re-calculates the stored monthly totals for all records 
+     * of all vehicles in the log.
+     * NOTE: should be called within a transaction.
+     * @param db - the database.
+     */
+    static void updateMonthlyTotals(SQLiteDatabase db) {
+    	Cursor cursor = null;
+    	try {
+    		db.delete(MONTHLY_TABLE, null, null);
+    		cursor = db.rawQuery("SELECT DISTINCT " + RECORD_VEHICLE_ID + " FROM " + RECORDS_TABLE, null);
+    		while (cursor.moveToNext()) {
+    			updateMonthlyTotals(db,cursor.getInt(0),-1,Integer.MAX_VALUE);
+    		}
+    	} finally {
+    		if (cursor != null) cursor.close();
+    	}
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Reads all gasoline records contained in the log for a specific vehicle.
+     * @param vehicle - the Vehicle to read the records for. 
+     * @return a List of all GasRecord's in the log for the vehicle (empty if none exist).
+     */
+    public List<GasRecord> readAllRecords(Vehicle vehicle) {
+       	final String tag = TAG+".readAllRecords()";
+		ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
+
+		List<GasRecord> list = new ArrayList<GasRecord>();
+		
+		try {
+			// SELECT * FROM Records WHERE vid=vehicle.getID() ORDER BY odometer;
+			String selection = RECORD_VEHICLE_ID + "=" + vehicle.getID();
+			readRecords(selection,null,list);
+		} catch (SQLException e) {
+			Log.e(tag,"SQLException: "+e.getMessage());
+			list.clear();
+		}
+
+		// return the list of GasRecords
+    	return list;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Reads the gasoline records for a specific vehicle that were recorded 
+     * within a range of dates (inclusive). The list also includes the 
+     * records from the previous full tank before the range up to the start 
+     * of the range, so that trip and mileage values calculated from the
+     * list are correct at the range boundary. 
+     * @param vehicle - the Vehicle to read the records for. 
+     * @param start - the start of the date range.
+     * @param end - the end of the date range.
+     * @return a List of GasRecords sorted by odometer value (empty if none exist).
+     */
+    public List<GasRecord> readRecords(Vehicle vehicle, Date start, Date end) {
+       	final String tag = TAG+".readRecords()";
+		ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
+
+		List<GasRecord> list = new ArrayList<GasRecord>();
+		
+		try {
+			// SELECT * FROM Records WHERE vid=vehicle.getID() AND time BETWEEN start AND end;
+			String inRange = RECORD_VEHICLE_ID + "=" + vehicle.getID() + 
+					" AND " + RECORD_TIME + ">=" + start.getTime() + 
+					" AND " + RECORD_TIME + "<=" + end.getTime();
+			
+			// the lowest odometer value within the range
+			String first = "(SELECT MIN(" + RECORD_ODOMETER + ") FROM " + RECORDS_TABLE + 
+					" WHERE " + inRange + ")";
+			
+			// the previous full tank before the range (the anchor)
+			String anchor = "(SELECT MAX(" + RECORD_ODOMETER + ") FROM " + RECORDS_TABLE + 
+					" WHERE " + RECORD_VEHICLE_ID + "=" + vehicle.getID() +
+					" AND " + RECORD_FULLTANK + "=1" +
+					" AND " + RECORD_ODOMETER + "<" + first + ")";
+			
+			// read records from the anchor up to the range, and the range itself
+			// note: a single query reads a consistent snapshot of the log 
+			readRecords(inRange + " OR (" + 
+					RECORD_VEHICLE_ID + "=" + vehicle.getID() + 
+					" AND " + RECORD_ODOMETER + ">=" + anchor + 
+					" AND " + RECORD_ODOMETER + "<" + first + ")", null, list);
+			
+		} catch (SQLException e) {
+			Log.e(tag,"SQLException: "+e.getMessage());
+			list.clear();
+		}
+
+		// return the list of GasRecords
+    	return list;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Reads the gasoline records for a specific vehicle within a range of
+     * dates into a column oriented store, without creating GasRecord 
+     * instances. Mileage calculations are derived from the stored segment
+     * values, so no records before the range are needed.
+     * @param vehicle - the Vehicle to read the records for. 
+     * @param start - the start of the date range.
+     * @param end - the end of the date range.
+     * @return the RecordColumns sorted by date (empty if no data).
+     */
+    public RecordColumns readRecordColumns(Vehicle vehicle, Date start, Date end) {
+       	final String tag = TAG+".readRecordColumns()";
+		ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
+
+		RecordColumns columns = new RecordColumns();
+		Cursor cursor = null;
+		
+		try {
+			// SELECT ... FROM Records WHERE vid=vehicle.getID() AND time BETWEEN start AND end ORDER BY time;
+			final String[] projection = new String[] {
+					RECORD_TIME,
+					RECORD_ODOMETER,
+					RECORD_GALLONS,
+					RECORD_COST,
+					RECORD_FULLTANK,
+					RECORD_HIDDEN,
+					RECORD_SEGMENT_START,
+					RECORD_SEGMENT_VOLUME
+			};
+			String selection = RECORD_VEHICLE_ID + "=" + vehicle.getID() + 
+					" AND " + RECORD_TIME + ">=" + start.getTime() + 
+					" AND " + RECORD_TIME + "<=" + end.getTime();
+			String orderBy = RECORD_TIME + "," + RECORD_ODOMETER;
+			cursor = db.query(RECORDS_TABLE, projection, selection, null, null, null, orderBy);
+			columns = new RecordColumns(cursor.getCount());
+			while (cursor.moveToNext()) {
+				boolean calculated = !cursor.isNull(6);
+				columns.add(
+						cursor.getLong(0),
+						cursor.getInt(1),
+						cursor.getFloat(2),
+						cursor.getDouble(3),
+						(cursor.getInt(4) == 1),
+						(cursor.getInt(5) == 1),
+						calculated,
+						calculated ? cursor.getInt(6) : 0,
+						calculated ? cursor.getFloat(7) : 0f);
+			}
+		} catch (SQLException e) {
+			Log.e(tag,"SQLException: "+e.getMessage());
+			columns = new RecordColumns();
+		} finally {
+			if (cursor != null) cursor.close();
+		}
+
+		// return the records
+    	return columns;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Reads the stored monthly trip totals for a specific vehicle within a 
+     * range of dates. The totals are maintained as records are written, 
+     * so only one row per month is read regardless of the number of records.
+     * @param vehicle - the Vehicle to read the totals for. 
+     * @param start - the start of the date range.
+     * @param end - the end of the date range.
+     * @return the MonthlyTrips for the range (empty if no data).
+     */
+    public MonthlyTrips readMonthlyTrips(Vehicle vehicle, Date start, Date end) {
+       	final String tag = TAG+".readMonthlyTrips()";
+		ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
+
+		MonthlyTrips monthly = new MonthlyTrips();
+		Cursor cursor = null;
+		
+		try {
+			// SELECT * FROM Monthly WHERE vid=vehicle.getID() AND month BETWEEN start AND end;
+			String selection = MONTHLY_VEHICLE_ID + "=" + vehicle.getID() + 
+					" AND " + MONTHLY_MONTH + " BETWEEN " + getMonthKey(start.getTime()) + 
+					" AND " + getMonthKey(end.getTime());
+			cursor = db.query(MONTHLY_TABLE, null, selection, null, null, null, MONTHLY_MONTH);
+			while (cursor.moveToNext()) {
+				monthly.add(getTripFromCursor(cursor));
+			}
+		} catch (SQLException e) {
+			Log.e(tag,"SQLException: "+e.getMessage());
+			monthly = new MonthlyTrips();
+		} finally {
+			if (cursor != null) cursor.close();
+		}
+
+		// return the monthly totals
+    	return monthly;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Convenience method to create a TripRecord instance reflecting the 
+     * totals for one month from values read from the database.
+     * @param c - a Cursor containing results of a query of the monthly totals. 
+     * @return a TripRecord instance.
+     */
+    private TripRecord getTripFromCursor(Cursor c) {
+    	MileageStatistics mileage = new MileageStatistics(
+    			c.getInt(c.getColumnIndex(MONTHLY_MILEAGE_COUNT)),
+    			c.getInt(c.getColumnIndex(MONTHLY_MILEAGE_ZEROS)),
+    			c.getDouble(c.getColumnIndex(MONTHLY_MILEAGE_MIN)),
+    			c.getDouble(c.getColumnIndex(MONTHLY_MILEAGE_MAX)),
+    			c.getDouble(c.getColumnIndex(MONTHLY_MILEAGE_SUM)),
+    			c.getDouble(c.getColumnIndex(MONTHLY_MILEAGE_INVSUM)));
+    	return new TripRecord(
+    			getMonthDate(c.getInt(c.getColumnIndex(MONTHLY_MONTH))),
+    			c.getInt(c.getColumnIndex(MONTHLY_DISTANCE)),
+    			c.getFloat(c.getColumnIndex(MONTHLY_GALLONS)),
+    			c.getDouble(c.getColumnIndex(MONTHLY_COST)),
+    			c.getInt(c.getColumnIndex(MONTHLY_FILLS)),
+    			mileage);
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Reads a window of consecutive gasoline records for a specific vehicle.
+     * The records are numbered in odometer order, starting at zero.
+     * @param vehicle - the Vehicle to read the records for. 
+     * @param offset - the number of the first record to read.
+     * @param limit - the maximum number of records to read.
+     * @return a List of GasRecords sorted by odometer value (empty if none exist).
+     */
+    public List<GasRecord> readRecords(Vehicle vehicle, int offset, int limit) {
+       	final String tag = TAG+".readRecords()";
+		ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
+
+		List<GasRecord> list = new ArrayList<GasRecord>(limit);
+		
+		try {
+			// SELECT * FROM Records WHERE vid=vehicle.getID() ORDER BY odometer LIMIT offset,limit;
+			String selection = RECORD_VEHICLE_ID + "=" + vehicle.getID();
+			readRecords(selection,offset + "," + limit,list);
+		} catch (SQLException e) {
+			Log.e(tag,"SQLException: "+e.getMessage());
+			list.clear();
+		}
+
+		// return the list of GasRecords
+    	return list;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Reads the gasoline records needed to estimate mileage for a record:
+     * the previous full tank and all records after it, up to and including 
+     * the record being evaluated.
+     * @param vehicle - the Vehicle that the record belongs to.
+     * @param record - the GasRecord being evaluated.
+     * @return a List of GasRecords sorted by odometer value (empty if there 
+     * is no previous full tank).
+     */
+    public List<GasRecord> readEstimateRecords(Vehicle vehicle, GasRecord record) {
+       	final String tag = TAG+".readEstimateRecords()";
+		ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
+
+		List<GasRecord> list = new ArrayList<GasRecord>();
+		
+		try {
+			// odometer value of the previous full tank (NULL if none)
+			String vid = RECORD_VEHICLE_ID + "=" + vehicle.getID();
+			String fulltank = 
+					"(SELECT MAX(" + RECORD_ODOMETER + ") FROM " + RECORDS_TABLE + 
+					" WHERE " + vid + 
+					" AND " + RECORD_FULLTANK + "=1" + 
+					" AND " + RECORD_ODOMETER + "<" + record.getOdometer() + ")";
+			String selection = vid + 
+					" AND " + RECORD_ODOMETER + ">=" + fulltank + 
+					" AND " + RECORD_ODOMETER + "<=" + record.getOdometer();
+			readRecords(selection,null,list);
+		} catch (SQLException e) {
+			Log.e(tag,"SQLException: "+e.getMessage());
+			list.clear();
+		}
+
+    	return list;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Determines the number of gasoline records in the log for a specific vehicle.
+     * @param vehicle - the Vehicle being evaluated.
+     * @return the number of records (0 if no data).
+     */
+    public int readRecordCount(Vehicle vehicle) {
+    	final String tag = TAG+".readRecordCount()";
+    	ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
+    	return readCount(RECORD_VEHICLE_ID + "=" + vehicle.getID());
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Determines the position of a gasoline record within the odometer 
+     * ordered list of all records for a specific vehicle.
+     * @param vehicle - the Vehicle being evaluated.
+     * @param odometer - the odometer value of the record.
+     * @return the position of the record (number of records with a lower odometer value).
+     */
+    public int readRecordPosition(Vehicle vehicle, int odometer) {
+    	final String tag = TAG+".readRecordPosition()";
+    	ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
+    	return readCount(RECORD_VEHICLE_ID + "=" + vehicle.getID() + 
+    			" AND " + RECORD_ODOMETER + "<" + odometer);
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Reads the dates of all gasoline records for a specific vehicle, 
+     * without creating GasRecord instances.
+     * @param vehicle - the Vehicle to read the record dates for.
+     * @return an array of times (milliseconds) in odometer order (empty if no data).
+     */
+    public long[] readRecordTimes(Vehicle vehicle) {
+    	final String tag = TAG+".readRecordTimes()";
+    	ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
+    	
+    	long[] times = new long[0];
+    	Cursor cursor = null;
+    	
+    	try {
+    		// SELECT time FROM Records WHERE vid=vehicle.getID() ORDER BY odometer;
+    		final String[] projection = new String[] { RECORD_TIME };
+    		String selection = RECORD_VEHICLE_ID + "=" + vehicle.getID();
+    		cursor = db.query(RECORDS_TABLE, projection, selection, null, null, null, RECORD_ODOMETER);
+    		times = new long[cursor.getCount()];
+    		for (int n = 0; cursor.moveToNext() && (n < times.length); n++) {
+    			times[n] = cursor.getLong(0);
+    		}
+    	} catch (SQLException e) {
+    		Log.e(tag,"SQLException: "+e.getMessage());
+    		times = new long[0];
+    	} finally {
+    		if (cursor != null) cursor.close();
+    	}
+    	
+    	return times;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Determines if the log contains a full tank record for a specific vehicle.
+     * @param vehicle - the Vehicle being evaluated.
+     * @return true if the log contains a record with full tank.
+     */
+    public boolean hasFullTank(Vehicle vehicle) {
+    	final String tag = TAG+".hasFullTank()";
+    	ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
+    	return readCount(RECORD_VEHICLE_ID + "=" + vehicle.getID() + 
+    			" AND " + RECORD_FULLTANK + "=1") > 0;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Convenience method to count the gasoline records selected by an SQL 
+     * WHERE clause.
+     * @param selection - the SQL WHERE clause (excluding the WHERE itself).
+     * @return the number of records (0 if none or an error occurs).
+     */
+    private int readCount(String selection) {
+    	final String tag = TAG+".readCount()";
+    	int count = 0;
+    	Cursor cursor = null;
+    	try {
+    		cursor = db.rawQuery("SELECT COUNT(*) FROM " + RECORDS_TABLE + " WHERE " + selection, null);
+    		if ((cursor != null) && cursor.moveToFirst()) {
+    			count = cursor.getInt(0);
+    		}
+    	} catch (SQLException e) {
+    		Log.e(tag,"SQLException: "+e.getMessage());
+    	} finally {
+    		if (cursor != null) cursor.close();
+    	}
+    	return count;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Convenience method to read gasoline records selected by an SQL WHERE 
+     * clause, in odometer order, and append them to a list.
+     * @param selection - the SQL WHERE clause (excluding the WHERE itself).
+     * @param limit - the SQL LIMIT clause (null = no limit).
+     * @param list - the List to append the records to.
+     * @throws SQLException if the query fails.
+     */
+    private void readRecords(String selection, String limit, List<GasRecord> list) {
+    	Cursor cursor = null;
+    	try {
+			String orderBy = RECORD_ODOMETER;
+			cursor = db.query(
+					RECORDS_TABLE, 
+					RECORDS_TABLE_COLUMNS,
+					selection,
+					null,null,null,
+					orderBy,
+					limit
+					);
+
+			// create GasRecords from the data 
+			// note: mileage calculations are stored with the data
+			if (cursor != null) {
+				Units units = new Units(Settings.KEY_UNITS);
+				if (cursor.moveToFirst()) {
+					do {
+						GasRecord record = getRecordFromCursor(cursor);
+						record.setCalculation(getCalculationFromCursor(cursor,units));
+						list.add(record);
+					} while (cursor.moveToNext());
+				}
+			}
+    	} finally {
+    		if (cursor != null) cursor.close();
+    	}
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Deletes a specified gasoline record from the log.
+     * @param record - the GasRecord to delete.
+     * @return boolean flag indicating success/failure (true=success)
+     */
+    public boolean deleteRecord(GasRecord record) {
+
+    	final String tag = TAG+".deleteRecord()";
+    	
+		ASSERT((record.getID() != null),tag,"record id cannot be null");
+		
+    	boolean success = false;
+    	
+    	db.beginTransaction();
+    	try {
+    		long time = readRecordTime(record.getID());
+    		deleteRecord.bindLong(1, record.getID());
+    		deleteRecord.execute();
+    		success = (readChangeCount() == 1);
+    		if (success) {
+    			updateMileageSegments(db,record.getVehicleID(),record.getOdometer());
+    			Set<Integer> months = new TreeSet<Integer>();
+    			months.add(getMonthKey(time));
+    			addMonthKeys(db,record.getVehicleID(),record.getOdometer(),record.getOdometer(),months);
+    			updateMonthlyTotals(db,record.getVehicleID(),months);
+    			db.setTransactionSuccessful();
+    		}
+    	} catch (SQLException e) {
+    		Log.e(tag,"SQLException: "+e.getMessage());
+    		success = false;
+    	} finally {
+    		db.endTransaction();
+    		dataChanged(record.getVehicleID());
+    	}
+    	
+    	return success;
+    }
+
+    /**
+     * DESCRIPTION:
+     * Deletes all gasoline records from the log for a specific vehicle.
+     * @param vehicle - the Vehicle to delete records for.
+     * @return boolean flag indicating success/failure (true=success)
+     */
+    public boolean deleteAllRecords(Vehicle vehicle) {
+    	final String tag = TAG+".deleteAllRecords()";
+    	ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
+    	boolean success = false;
+    	try {
+    		String whereClause = RECORD_VEHICLE_ID + "=" + vehicle.getID();
+    		String [] whereArgs = null;
+    		db.delete(RECORDS_TABLE, whereClause, whereArgs);
+    		whereClause = MONTHLY_VEHICLE_ID + "=" + vehicle.getID();
+    		db.delete(MONTHLY_TABLE, whereClause, whereArgs);
+    		success = true;
+    	} catch (SQLException e) {
+    		Log.e(tag,"SQLException: "+e.getMessage());
+    	} finally {
+    		dataChanged(vehicle.getID());
+    	}
+    	
+    	return success;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Reads gasoline record data from a specified ASCII CSV formatted file
+     * into the log for a specific vehicle. The file is read and parsed by
+     * background threads (see RecordImporter) while the records are 
+     * inserted. All records are inserted in one transaction, so the log is
+     * unchanged if a parse error occurs or the import is canceled.
+     * @param vehicle - the Vehicle to import records for.
+     * @param file - the ASCII CSV data file to import.
+     * @param mode - the ImportMode value for handling duplicate records.
+     * @param progress - reports progress and results, and requests cancellation (can be null).
+     * @return boolean flag indicating success/failure (true=success)
+     */
+    public boolean importData(Vehicle vehicle, InputStream file, int mode, ImportProgress progress) {
+    	
+    	final String tag = TAG+".importData()";
+    	ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
+    	
+    	if (progress == null) {
+    		progress = new ImportProgress(null);
+    	}
+    	
+    	boolean success = false;
+    	
+    	// create the records as they are parsed
+    	RecordImporter importer = new RecordImporter(file,progress);
+    	db.beginTransaction();
+    	try {
+    		int created = createRecords(vehicle,importer,0,mode,progress);
+    		if ((created >= 0) && importer.isComplete()) {
+    			db.setTransactionSuccessful();
+    			success = true;
+    		}
+    	} catch (SQLException e) {
+    		Log.e(tag,"SQLException: "+e.getMessage());
+    	} finally {
+    		db.endTransaction();
+    		dataChanged(vehicle.getID());
+    		importer.close();
+    	}
+    	
+    	// nothing was committed if the import failed
+    	if (!success) {
+    		progress.setInsertedCount(0);
+    		progress.setUpdatedCount(0);
+    		progress.setSkippedCount(0);
+    	}
+    	
+    	if (progress.getErrorLine() > 0) {
+    		String format = context.getString(R.string.toast_stopped_at_csv_line);
+    		Utilities.toast(context, String.format(format,progress.getErrorLine()));
+    	}
+    	
+    	return success;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Copies all existing log data for a specific vehicle to an ASCII CSV file.
+     * The records are written directly from a single pass over a database
+     * cursor (no GasRecord instances are created), so memory use does not
+     * depend on the size of the log. The mileage column is derived from the
+     * stored mileage segment values. The file is UTF-8 encoded, like the
+     * entries of an export archive.
+     * @param vehicle - the Vehicle to export data for.
+     * @param file - the CSV file to create.
+     * @return boolean flag indicating success/failure (true=success)
+     */
+    public boolean exportData(Vehicle vehicle, File file) {
     	
     	final String tag = TAG+".exportData()";
+    	ASSERT((vehicle.getID() != null),tag,"vehicle id cannot be null");
+    	
+    	boolean status = false;
+    	
+    	RecordCsvWriter out = null;
+    	try {
+    		int costDigits = CurrencyManager.getInstance().getNumericFormatter().getMaximumFractionDigits();
+    		out = new RecordCsvWriter(new OutputStreamWriter(new FileOutputStream(file),"UTF-8"),costDigits);
+    		writeRecords(vehicle,out,null);
+    		out.close();
+    		out = null;
+    		status = true;
+    	} catch(Throwable t) {
+    		Log.e(tag,"export failed",t);
+    	} finally {
+    		if (out != null) {
+    			try {
+    				out.close();
+    			} catch (IOException e) {
+    				Log.e(tag,"close failed",e);
+    			}
+    		}
+    	}
+    	
+    	return status;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Writes the gasoline records for a specific vehicle as lines of CSV 
+     * text, from a single pass over a database cursor.
+     * @param vehicle - the Vehicle to write records for.
+     * @param out - the CSV output.
+     * @param progress - receives the number of records written (can be null).
+     * @return the number of records written.
+     * @throws IOException if the write fails.
+     * @throws CancellationException if the export is canceled.
+     */
+    private int writeRecords(Vehicle vehicle, RecordCsvWriter out, ExportProgress progress) throws IOException {
+    	
+    	// SELECT ... FROM Records WHERE vid=vehicle.getID() ORDER BY odometer;
+    	final String[] columns = new String[] {
+    			RECORD_TIME,
+    			RECORD_ODOMETER,
+    			RECORD_GALLONS,
+    			RECORD_FULLTANK,
+    			RECORD_HIDDEN,
+    			RECORD_COST,
+    			RECORD_NOTES,
+    			RECORD_SEGMENT_START,
+    			RECORD_SEGMENT_VOLUME
+    	};
+    	String selection = RECORD_VEHICLE_ID + "=" + vehicle.getID();
+    	Cursor cursor = db.query(RECORDS_TABLE, columns, selection, null, null, null, RECORD_ODOMETER);
+    	
+    	int count = 0;
+    	try {
+    		Units units = new Units(Settings.KEY_UNITS);
+    		while (cursor.moveToNext()) {
+    			int odometer = cursor.getInt(1);
+    			boolean calculated = !cursor.isNull(7);
+    			float mileage = 0f;
+    			if (calculated) {
+    				mileage = MileageCalculation.getMileage(odometer - cursor.getInt(7),cursor.getFloat(8),units);
+    			}
+    			out.write(
+    					cursor.getLong(0),
+    					odometer,
+    					cursor.getFloat(2),
+    					(cursor.getInt(3) == 1),
+    					(cursor.getInt(4) == 1),
+    					cursor.getDouble(5),
+    					cursor.getString(6),
+    					calculated,
+    					mileage);
+    			count++;
+    			
+    			if ((progress != null) && ((count % EXPORT_PROGRESS_RECORDS) == 0)) {
+    				if (progress.isCanceled()) {
+    					throw new CancellationException("export canceled");
+    				}
+    				progress.setRecordCount(vehicle,count);
+    			}
+    		}
+    	} finally {
+    		cursor.close();
+    	}
+    	
+    	return count;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Copies the log data for all vehicles to a single ZIP archive. The 
+     * archive contains an ASCII CSV file for each vehicle (as created by
+     * exportData()) and a manifest.csv file listing the vehicle for each 
+     * file. Vehicles are exported in parallel by a pool of threads, each 
+     * querying the database on its own thread (a separate connection when
+     * write-ahead logging is enabled) and compressing its CSV file in memory.
+     * The compressed files are written to the archive in vehicle order,
+     * with only a few vehicles in progress at once to limit memory use.
+     * The archive is written to a temporary file that is renamed when 
+     * complete, so a partial archive is never left behind.
+     * @param file - the ZIP archive file to create.
+     * @param progress - receives progress and can cancel the export.
+     * @return boolean flag indicating success/failure (true=success)
+     */
+    public boolean exportAllData(File file, final ExportProgress progress) {
+    	
+    	final String tag = TAG+".exportAllData()";
     	
     	boolean status = false;
     	
-    	List<GasRecord> list = readAllRecords(vehicle);
+    	final List<Vehicle> vehicles = readAllVehicles();
+    	final List<String> names = getExportNames(vehicles);
+    	final int[] records = new int[vehicles.size()];
+    	final int costDigits = CurrencyManager.getInstance().getNumericFormatter().getMaximumFractionDigits();
+    	final long time = System.currentTimeMillis();
+    	progress.setVehicleCount(vehicles.size());
     	
-    	PrintStream out = null;
+    	int threads = Runtime.getRuntime().availableProcessors();
+    	threads = Math.max(1, Math.min(threads, MAX_EXPORTERS));
+    	ExecutorService exporters = Executors.newFixedThreadPool(threads);
+    	LinkedList<Future<RecordArchiveWriter.Entry>> pending = new LinkedList<Future<RecordArchiveWriter.Entry>>();
+    	
+    	File temp = new File(file.getPath() + TEMP_SUFFIX);
+    	RecordArchiveWriter out = null;
     	try {
-    		out = new PrintStream(new FileOutputStream(file));
-    		for (GasRecord record : list) {
-    			out.println(record.toStringCSV());
+    		out = new RecordArchiveWriter(new FileOutputStream(temp));
+    		
+    		int submitted = 0;
+    		for (int i = 0; i < vehicles.size(); i++) {
+    			
+    			// keep the exporters busy, without exporting too far ahead
+    			while ((submitted < vehicles.size()) && (submitted - i < threads * 2)) {
+    				final int index = submitted++;
+    				pending.add(exporters.submit(new Callable<RecordArchiveWriter.Entry>() {
+    					@Override
+    					public RecordArchiveWriter.Entry call() throws Exception {
+    						Vehicle vehicle = vehicles.get(index);
+    						if (progress.isCanceled()) {
+    							throw new CancellationException("export canceled");
+    						}
+    						progress.vehicleStarted(vehicle);
+    						RecordArchiveWriter.Entry entry = new RecordArchiveWriter.Entry(names.get(index),time);
+    						RecordCsvWriter csv = new RecordCsvWriter(new OutputStreamWriter(entry,"UTF-8"),costDigits);
+    						try {
+    							records[index] = writeRecords(vehicle,csv,progress);
+    						} finally {
+    							csv.close();
+    						}
+    						progress.vehicleFinished(vehicle);
+    						return entry;
+    					}
+    				}));
+    			}
+    			
+    			try {
+    				out.add(pending.removeFirst().get());
+    			} catch (ExecutionException e) {
+    				throw e.getCause();
+    			}
+    		}
+    		
+    		RecordArchiveWriter.Entry manifest = new RecordArchiveWriter.Entry(EXPORT_MANIFEST,time);
+    		RecordCsvWriter csv = new RecordCsvWriter(new OutputStreamWriter(manifest,"UTF-8"),0);
+    		csv.writeFields("file","vehicle","tanksize","records");
+    		for (int i = 0; i < vehicles.size(); i++) {
+    			Vehicle vehicle = vehicles.get(i);
+    			Float tankSize = vehicle.getTankSize();
+    			csv.writeFields(
+    					names.get(i),
+    					vehicle.getName(),
+    					(tankSize == null) ? null : tankSize.toString(),
+    					Integer.toString(records[i]));
+    		}
+    		csv.close();
+    		out.add(manifest);
+    		
+    		out.finish();
+    		out.close();
+    		out = null;
+    		
+    		if (!temp.renameTo(file)) {
+    			file.delete();
+    			if (!temp.renameTo(file)) {
+    				throw new IOException("rename failed: " + file);
+    			}
     		}
     		status = true;
+    	} catch(CancellationException e) {
+    		Log.d(tag,"export canceled");
     	} catch(Throwable t) {
     		Log.e(tag,"export failed",t);
     	} finally {
-    		if (out != null) out.close();
+    		exporters.shutdownNow();
+    		if (out != null) {
+    			try {
+    				out.close();
+    			} catch (IOException e) {
+    				Log.e(tag,"close failed",e);
+    			}
+    		}
+    		if (!status) {
+    			temp.delete();
+    		}
+    	}
+    	
+    	return status;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Returns a unique CSV file name for each vehicle in an export archive.
+     * Characters that are not allowed in file names are replaced, and the 
+     * vehicle id is appended to names that would otherwise be the same.
+     * @param vehicles - the vehicles to export.
+     * @return a List of file names (in the same order as the vehicles).
+     */
+    private static List<String> getExportNames(List<Vehicle> vehicles) {
+    	Set<String> used = new HashSet<String>();
+    	used.add(EXPORT_MANIFEST);
+    	List<String> names = new ArrayList<String>(vehicles.size());
+    	for (Vehicle vehicle : vehicles) {
+    		String name = vehicle.getName().replaceAll("[\\\\/:*?\"<>|]","_") + ".csv";
+    		if (!used.add(name.toLowerCase(Locale.US))) {
+    			name = name.substring(0,name.length() - 4) + "-" + vehicle.getID() + ".csv";
+    			used.add(name.toLowerCase(Locale.US));
+    		}
+    		names.add(name);
+    	}
+    	return names;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Copies all vehicles and gasoline records in the log to a compact 
+     * binary backup file (see RecordBackupWriter). Records are read from
+     * a database cursor one vehicle at a time.
+     * NOTE: should not run concurrently with changes to the log, so that 
+     * the backup is consistent across vehicles.
+     * @param file - the backup file to create.
+     * @return boolean flag indicating success/failure (true=success)
+     */
+    public boolean backupData(File file) {
+    	
+    	final String tag = TAG+".backupData()";
+    	
+    	boolean status = false;
+    	
+    	Cursor vehicles = null;
+    	Cursor cursor = null;
+    	RecordBackupWriter out = null;
+    	try {
+    		out = new RecordBackupWriter(new FileOutputStream(file));
+    		
+    		vehicles = db.query(VEHICLES_TABLE, VEHICLES_TABLE_COLUMNS, null, null, null, null, VEHICLE_ID);
+    		while (vehicles.moveToNext()) {
+    			int vid = vehicles.getInt(0);
+    			
+    			// SELECT ... FROM Records WHERE vid=vid ORDER BY odometer;
+    			final String[] columns = new String[] {
+    					RECORD_TIME,
+    					RECORD_ODOMETER,
+    					RECORD_GALLONS,
+    					RECORD_FULLTANK,
+    					RECORD_HIDDEN,
+    					RECORD_COST,
+    					RECORD_NOTES
+    			};
+    			String selection = RECORD_VEHICLE_ID + "=" + vid;
+    			cursor = db.query(RECORDS_TABLE, columns, selection, null, null, null, RECORD_ODOMETER);
+    			while (cursor.moveToNext()) {
+    				out.add(
+    						cursor.getLong(0),
+    						cursor.getInt(1),
+    						cursor.getFloat(2),
+    						(cursor.getInt(3) == 1),
+    						(cursor.getInt(4) == 1),
+    						cursor.getDouble(5),
+    						cursor.getString(6));
+    			}
+    			cursor.close();
+    			cursor = null;
+    			
+    			Float tankSize = vehicles.isNull(2) ? null : vehicles.getFloat(2);
+    			out.writeVehicle(vid, vehicles.getString(1), tankSize);
+    		}
+    		
+    		out.finish();
+    		out.close();
+    		out = null;
+    		status = true;
+    	} catch(Throwable t) {
+    		Log.e(tag,"backup failed",t);
+    	} finally {
+    		if (vehicles != null) vehicles.close();
+    		if (cursor != null) cursor.close();
+    		if (out != null) {
+    			try {
+    				out.close();
+    			} catch (IOException e) {
+    				Log.e(tag,"close failed",e);
+    			}
+    		}
     	}
     	
     	return status;
     }
+    
+    /**
+     * DESCRIPTION:
+     * Replaces all vehicles and gasoline records in the log with the 
+     * contents of a binary backup file created by backupData(). The file 
+     * is decoded one vehicle at a time and its records are inserted using
+     * a compiled statement. Mileage segments and monthly totals are then
+     * re-calculated. The log is unchanged if the file is invalid (the
+     * checksum is verified before the changes are committed).
+     * @param file - the backup file to restore.
+     * @return boolean flag indicating success/failure (true=success)
+     */
+    public boolean restoreData(InputStream file) {
+    	
+    	final String tag = TAG+".restoreData()";
+    	
+    	boolean success = false;
+    	
+    	// vehicles whose records change
+    	Set<Integer> vids = new TreeSet<Integer>();
+    	for (Vehicle vehicle : readAllVehicles()) {
+    		vids.add(vehicle.getID());
+    	}
+    	
+    	RecordBackupReader in = null;
+    	db.beginTransaction();
+    	try {
+    		in = new RecordBackupReader(file);
+    		
+    		db.delete(MONTHLY_TABLE, null, null);
+    		db.delete(RECORDS_TABLE, null, null);
+    		db.delete(VEHICLES_TABLE, null, null);
+    		
+    		while (in.nextVehicle()) {
+    			int vid = in.getVehicleID();
+    			ContentValues values = new ContentValues();
+    			values.put(VEHICLE_ID, vid);
+    			values.put(VEHICLE_NAME, in.getVehicleName());
+    			Float tankSize = in.getTankSize();
+    			if (tankSize == null) {
+    				// tank size is optional in a backup (the column is not null)
+    				tankSize = new Vehicle().getTankSize();
+    			}
+    			values.put(VEHICLE_TANK_SIZE, tankSize);
+    			db.insertOrThrow(VEHICLES_TABLE, null, values);
+    			vids.add(vid);
+    			
+    			for (int i = 0; i < in.getRecordCount(); i++) {
+    				bindRecord(insertRecord,
+    						vid,
+    						in.getTime(i),
+    						in.getOdometer(i),
+    						in.getGallons(i),
+    						in.isFullTank(i),
+    						in.isHidden(i),
+    						in.getCost(i),
+    						in.getNotes(i));
+    				if (insertRecord.executeInsert() < 0) {
+    					throw new SQLException("insert failed");
+    				}
+    			}
+    		}
+    		
+    		updateMileageSegments(db);
+    		updateMonthlyTotals(db);
+    		db.setTransactionSuccessful();
+    		success = true;
+    	} catch(Throwable t) {
+    		Log.e(tag,"restore failed",t);
+    	} finally {
+    		db.endTransaction();
+    		for (Integer vid : vids) {
+    			dataChanged(vid);
+    		}
+    		RecordRepository.getInstance().clear();
+    		if (in != null) {
+    			try {
+    				in.close();
+    			} catch (IOException e) {
+    				Log.e(tag,"close failed",e);
+    			}
+    		}
+    	}
+    	
+    	return success;
+    }
+
+    /**
+     * DESCRIPTION:
+     * Copies the log database file itself to a snapshot file. When
+     * write-ahead logging is enabled the log is checkpointed first so that
+     * the database file contains all committed changes. The snapshot is 
+     * written to a temporary file that is renamed when complete, so an
+     * existing snapshot is never left partially overwritten.
+     * NOTE: must not run concurrently with changes to the log, so that 
+     * the copy of the file is consistent.
+     * @param file - the snapshot file to create.
+     * @return boolean flag indicating success/failure (true=success)
+     */
+    public boolean snapshotData(File file) {
+    	
+    	final String tag = TAG+".snapshotData()";
+    	
+    	File temp = new File(file.getPath() + TEMP_SUFFIX);
+    	try {
+    		if (walEnabled) {
+    			checkpoint();
+    		}
+    		copyFile(getDatabaseFile(),temp);
+    		if (!temp.renameTo(file)) {
+    			file.delete();
+    			if (!temp.renameTo(file)) {
+    				throw new IOException("rename failed: " + file);
+    			}
+    		}
+    		return true;
+    	} catch(Throwable t) {
+    		Log.e(tag,"snapshot failed",t);
+    		temp.delete();
+    		return false;
+    	}
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Copies all changes in the write-ahead log into the database file.
+     * @throws SQLException if the checkpoint could not be completed.
+     */
+    private void checkpoint() {
+    	Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(FULL)",null);
+    	try {
+    		// result columns: busy, frames in log, frames checkpointed
+    		if (cursor.moveToFirst() && 
+    			((cursor.getInt(0) != 0) || (cursor.getInt(1) != cursor.getInt(2)))) {
+    			throw new SQLException("checkpoint incomplete");
+    		}
+    	} finally {
+    		cursor.close();
+    	}
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Replaces the log database file with a snapshot file created by 
+     * snapshotData(). The snapshot is copied to a temporary file next to
+     * the database and validated before the log is closed. The database 
+     * file is then renamed to a backup file, the temporary file is renamed
+     * to the database file and the log is re-opened, upgrading the snapshot
+     * if it was created by an older version of the application. If the
+     * snapshot cannot be opened the backup file is renamed back, so the 
+     * log is unchanged unless the restore succeeds.
+     * NOTE: the GasLog instance is replaced, so no other thread may be 
+     * using the log while the snapshot is restored.
+     * @param file - the snapshot file to restore.
+     * @return boolean flag indicating success/failure (true=success)
+     */
+    public static synchronized boolean restoreSnapshot(File file) {
+    	
+    	final String tag = TAG+".restoreSnapshot()";
+    	
+    	File dbFile = getDatabaseFile();
+    	File temp = new File(dbFile.getPath() + TEMP_SUFFIX);
+    	try {
+    		copyFile(file,temp);
+    		validateSnapshot(temp);
+    	} catch(Throwable t) {
+    		Log.e(tag,"invalid snapshot",t);
+    		deleteDatabaseFile(temp);
+    		return false;
+    	}
+    	
+    	File backup = new File(dbFile.getPath() + BACKUP_SUFFIX);
+    	boolean backedUp = false;
+    	boolean replaced = false;
+    	try {
+    		// close the log (the journal is empty once the database is closed)
+    		if (instance != null) {
+    			instance.close();
+    			instance = null;
+    		}
+    		for (String suffix : JOURNAL_SUFFIXES) {
+    			new File(dbFile.getPath() + suffix).delete();
+    		}
+    		
+    		deleteDatabaseFile(backup);
+    		if (dbFile.exists()) {
+    			if (!dbFile.renameTo(backup)) {
+    				throw new IOException("rename failed: " + backup);
+    			}
+    			backedUp = true;
+    		}
+    		if (!temp.renameTo(dbFile)) {
+    			throw new IOException("rename failed: " + dbFile);
+    		}
+    		replaced = true;
+    		
+    		// data versions restart with the new instance
+    		RecordRepository.getInstance().clear();
+    		getInstance();
+    	} catch(Throwable t) {
+    		Log.e(tag,"restore failed",t);
+    		deleteDatabaseFile(temp);
+    		
+    		// put the previous database back and re-open it
+    		if (replaced) {
+    			deleteDatabaseFile(dbFile);
+    		}
+    		if (backedUp && !backup.renameTo(dbFile)) {
+    			Log.e(tag,"unable to restore backup: " + backup);
+    			return false;
+    		}
+    		RecordRepository.getInstance().clear();
+    		try {
+    			getInstance();
+    		} catch(Throwable e) {
+    			Log.e(tag,"re-open failed",e);
+    		}
+    		return false;
+    	}
+    	
+    	deleteDatabaseFile(backup);
+    	return true;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Verifies that a file is a log database that can replace the current
+     * one: an intact SQLite database containing the log tables, with a 
+     * version that is not newer than this application supports.
+     * @param file - the database file to validate.
+     * @throws IOException if the file is not valid.
+     */
+    private static void validateSnapshot(File file) throws IOException {
+    	
+    	// check for the SQLite header before handing the file to SQLite
+    	byte[] header = new byte[SQLITE_HEADER.length()];
+    	FileInputStream in = new FileInputStream(file);
+    	try {
+    		int n = 0;
+    		while (n < header.length) {
+    			int count = in.read(header,n,header.length-n);
+    			if (count < 0) break;
+    			n += count;
+    		}
+    		if ((n < header.length) || !SQLITE_HEADER.equals(new String(header,"US-ASCII"))) {
+    			throw new IOException("not a database file");
+    		}
+    	} finally {
+    		in.close();
+    	}
+    	
+    	SQLiteDatabase snapshot = null;
+    	Cursor cursor = null;
+    	try {
+    		snapshot = SQLiteDatabase.openDatabase(file.getPath(),null,
+    				SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+    		
+    		int version = snapshot.getVersion();
+    		if ((version < 1) || (version > DATABASE_VERSION)) {
+    			throw new IOException("unsupported database version " + version);
+    		}
+    		
+    		cursor = snapshot.rawQuery("PRAGMA quick_check",null);
+    		if (!cursor.moveToFirst() || !"ok".equals(cursor.getString(0))) {
+    			throw new IOException("database is corrupt");
+    		}
+    		cursor.close();
+    		
+    		final String[] args = {VEHICLES_TABLE, RECORDS_TABLE};
+    		cursor = snapshot.rawQuery("SELECT count(*) FROM sqlite_master WHERE type='table' AND name IN (?,?)",args);
+    		if (!cursor.moveToFirst() || (cursor.getInt(0) != args.length)) {
+    			throw new IOException("log tables not found");
+    		}
+    	} catch (SQLException e) {
+    		throw new IOException("invalid database: " + e.getMessage());
+    	} finally {
+    		if (cursor != null) cursor.close();
+    		if (snapshot != null) snapshot.close();
+    	}
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Deletes a database file and any journal files next to it.
+     * @param file - the database file.
+     */
+    private static void deleteDatabaseFile(File file) {
+    	file.delete();
+    	for (String suffix : JOURNAL_SUFFIXES) {
+    		new File(file.getPath() + suffix).delete();
+    	}
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Copies the contents of a file using file channels (no intermediate 
+     * buffer in the Java heap).
+     * @param src - the file to copy.
+     * @param dst - the file to create or overwrite.
+     * @throws IOException if the copy fails.
+     */
+    private static void copyFile(File src, File dst) throws IOException {
+    	FileInputStream in = new FileInputStream(src);
+    	try {
+    		FileOutputStream out = new FileOutputStream(dst);
+    		try {
+    			FileChannel source = in.getChannel();
+    			FileChannel target = out.getChannel();
+    			long size = source.size();
+    			long position = 0;
+    			while (position < size) {
+    				long count = source.transferTo(position,size-position,target);
+    				if (count <= 0) {
+    					throw new IOException("copy incomplete: " + src);
+    				}
+    				position += count;
+    			}
+    			out.getFD().sync();
+    		} finally {
+    			out.close();
+    		}
+    	} finally {
+    		in.close();
+    	}
+    }
 }
@@ -22,10 +22,14 @@ package com.github.wdkapps.fillup;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import android.app.Activity;
 import android.app.Dialog;
+import android.app.ProgressDialog;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
@@ -55,7 +59,8 @@ extends Activity
 implements ConfirmationDialog.Listener, 
 	StorageSelectionDialog.Listener, 
 	OnItemClickListener, 
-	OnSharedPreferenceChangeListener 
+	OnSharedPreferenceChangeListener,
+	GasRecordWindow.Listener
 {
 	
 	/// key name for the Vehicle to pass via Intent
@@ -63,23 +68,29 @@ implements ConfirmationDialog.Listener,
 	public final static String VEHICLE = GasLogListActivity.class.getName() + ".VEHICLE";
 	
 	/// the gasoline log
-	private GasLog gaslog;
+	private AsyncGasLog gaslog;
 	
 	/// the vehicle to display gas records for (obtained via Intent)
 	private Vehicle vehicle;
 
-	/// a list of records in the log 
-	private List<GasRecord> records;
+	/// a list of records in the log (a window of records is kept in memory)
+	private GasRecordWindow records;
 
 	/// the currently selected row from the list of records 
 	private int selectedRow;
 	
+	/// the record displayed in the currently selected row
+	private GasRecord selectedRecord;
+	
 	/// the Android ListView for display of log records
 	private ListView listView;
 	
 	/// an adapter used to format and display each log record 
 	private GasLogListAdapter adapter;
 	
+	/// displays the progress of a CSV import (null if no import in progress)
+	private ProgressDialog importDialog;
+	
     /**
      * DESCRIPTION:
      * Called when the activity is starting.
@@ -96,23 +107,29 @@ implements ConfirmationDialog.Listener,
         vehicle = (Vehicle)intent.getSerializableExtra(VEHICLE);
 
         // initialize other attributes
-        gaslog = GasLog.getInstance();
-		records = gaslog.readAllRecords(vehicle);
+        gaslog = AsyncGasLog.getInstance();
+		records = new GasRecordWindow(vehicle,this);
 		listView = (ListView)findViewById(R.id.gas_log_list);
 		adapter = new GasLogListAdapter(this,records);
 
-		// configure ListView to use our adapter
+		// configure ListView to use our adapter (with fast scroll by month)
 		listView.setAdapter(adapter);
+		listView.setFastScrollEnabled(true);
 		
 		// configure ListView to use our context menu when a record is clicked
 		registerForContextMenu(listView);
 		listView.setLongClickable(false);
 		listView.setOnItemClickListener(this);
 		
-		// scroll ListView to last record (highest odometer value)
-		if (listView.getCount() > 0) {
-			listView.setSelection(listView.getCount()-1);
-		}
+		// read the last records (highest odometer value) and scroll ListView to them
+		records.reload(Integer.MAX_VALUE,new AsyncGasLog.Callback<GasRecordWindow>() {
+			@Override
+			public void onResult(GasRecordWindow window) {
+				if (listView.getCount() > 0) {
+					listView.setSelection(listView.getCount()-1);
+				}
+			}
+		});
 		
 		// set column header labels to reflect current unit preference
 		updateColumnHeaderLabels();
@@ -146,6 +163,8 @@ implements ConfirmationDialog.Listener,
     public boolean onPrepareOptionsMenu(Menu menu) {
     	MenuItem itemExport = menu.findItem(R.id.itemExport);
     	itemExport.setEnabled(!records.isEmpty());
+    	MenuItem itemJumpToDate = menu.findItem(R.id.itemJumpToDate);
+    	itemJumpToDate.setEnabled(!records.isEmpty());
     	return true;
     }
     
@@ -180,6 +199,10 @@ implements ConfirmationDialog.Listener,
     		}
     		return true;
     		
+    	case R.id.itemJumpToDate:
+    		jumpToDate();
+    		return true;
+    		
     	case R.id.itemSettings:
     		Intent intent = new Intent(this,Settings.class);
     		startActivity(intent);
@@ -206,11 +229,17 @@ implements ConfirmationDialog.Listener,
     	AdapterContextMenuInfo info = (AdapterContextMenuInfo)menuInfo;
     	selectedRow = (int)info.id;
     	
-    	// get record that is currently selected
-    	GasRecord record = records.get(selectedRow);
+    	// get record that is currently selected (no menu if not yet read from the log)
+    	GasRecord record = records.peek(selectedRow);
+    	if (record == null) {
+    		menu.clear();
+    		return;
+    	}
+    	selectedRecord = record;
 
     	// adjust menu contents for "show estimate"
-    	if (!MileageEstimateDialog.isDisplayable(vehicle,records,selectedRow)) {
+    	// (the previous full tank is searched for when the item is selected)
+    	if (!MileageEstimateDialog.isEstimable(vehicle,record,selectedRow)) {
     		menu.removeItem(R.id.itemShowEstimate);
     	}
 
@@ -263,18 +292,16 @@ implements ConfirmationDialog.Listener,
     		return true;
 
     	case R.id.itemShowEstimate:
-        	MileageEstimateDialog.init(vehicle,records,selectedRow);
-    		showDialog(DIALOG_SHOW_ESTIMATE_ID);
+    		showEstimate(selectedRecord,true);
     		return true;
     		
     	case R.id.itemShowCalc:
-        	GasRecord record = records.get(selectedRow);
-        	MileageCalculationDialog.init(record);
+        	MileageCalculationDialog.init(selectedRecord);
     		showDialog(DIALOG_SHOW_CALCULATION_ID);
     		return true;
     		
     	case R.id.itemHideCalc:
-    		toggleHiddenCalculation(records.get(selectedRow));
+    		toggleHiddenCalculation(selectedRecord);
     		return true;
     		
     	default:
@@ -282,19 +309,51 @@ implements ConfirmationDialog.Listener,
     	}
     }
     
+    /**
+     * DESCRIPTION:
+     * Reads the records needed to estimate mileage for a gas record in the
+     * background, then displays the mileage estimate dialog.
+     * @param record - the gas record to estimate mileage for.
+     * @param explain - true to explain why if there is no previous full tank.
+     */
+    protected void showEstimate(GasRecord record, final boolean explain) {
+    	gaslog.readEstimateRecords(vehicle,record,new AsyncGasLog.Callback<List<GasRecord>>() {
+    		@Override
+    		public void onResult(List<GasRecord> list) {
+    			if (isFinishing()) return;
+    			int location = list.size() - 1;
+    			if (MileageEstimateDialog.isDisplayable(vehicle,list,location)) {
+    				MileageEstimateDialog.init(vehicle,list,location);
+    				showDialog(DIALOG_SHOW_ESTIMATE_ID);
+    			} else if (explain) {
+    				showDialog(DIALOG_TANK_NEVER_FILLED_ID);
+    			}
+    		}
+    	});
+    }
+    
     /**
      * DESCRIPTION:
      * Toggle the "hidden calculation" attribute of the specified gas record.
+     * A copy of the record is written to the log; the displayed record is 
+     * only changed once the update has succeeded.
      * @param record - the gas record.
      */
-    protected void toggleHiddenCalculation(GasRecord record) {
-    	boolean hidden = record.isCalculationHidden();
-    	record.setHiddenCalculation(!hidden);
-		if (gaslog.updateRecord(record)) {
-			adapter.notifyDataSetChanged();
-		} else {
-			Utilities.toast(this,getString(R.string.toast_failed));
-		}
+    protected void toggleHiddenCalculation(final GasRecord record) {
+    	final boolean hidden = !record.isCalculationHidden();
+    	GasRecord update = new GasRecord(record);
+    	update.setHiddenCalculation(hidden);
+    	gaslog.updateRecord(update,new AsyncGasLog.Callback<Boolean>() {
+    		@Override
+    		public void onResult(Boolean success) {
+    			if (success) {
+    				record.setHiddenCalculation(hidden);
+    				adapter.notifyRecordChanged(record);
+    			} else {
+    				Utilities.toast(GasLogListActivity.this,getString(R.string.toast_failed));
+    			}
+    		}
+    	});
     }
     
     /**
@@ -311,15 +370,74 @@ implements ConfirmationDialog.Listener,
     		return;
 		}
     	
-    	if (!gaslog.importData(vehicle, file)) {
-    		Utilities.toast(this,getString(R.string.toast_import_failed));
-    		return;
-    	} 
+    	// display progress, allowing the user to cancel the import
+    	final ImportProgress progress = new ImportProgress(new AsyncGasLog.Callback<ImportProgress>() {
+    		@Override
+    		public void onResult(ImportProgress progress) {
+    			if (importDialog != null) {
+    				importDialog.setMessage(getImportMessage(progress));
+    			}
+    		}
+    	});
+    	importDialog = new ProgressDialog(this);
+    	importDialog.setTitle(getString(R.string.import_label));
+    	importDialog.setMessage(getImportMessage(progress));
+    	importDialog.setIndeterminate(true);
+    	importDialog.setCancelable(false);
+    	importDialog.setButton(DialogInterface.BUTTON_NEGATIVE,getString(R.string.cancel_label),
+    			new DialogInterface.OnClickListener() {
+    		@Override
+    		public void onClick(DialogInterface dialog, int which) {
+    			progress.cancel();
+    		}
+    	});
+    	importDialog.show();
+    	
+    	// duplicate records are handled as specified by settings
+    	ImportMode mode = new ImportMode(this,Settings.KEY_IMPORT_MODE);
     	
-    	records.clear();
-    	records.addAll(gaslog.readAllRecords(vehicle));
-    	adapter.notifyDataSetChanged();
-		Utilities.toast(this,getString(R.string.toast_import_complete));
+    	gaslog.importData(vehicle,file,mode.getValue(),progress,new AsyncGasLog.Callback<Boolean>() {
+    		@Override
+    		public void onResult(Boolean success) {
+    			dismissImportDialog();
+    			if (progress.isCanceled()) {
+    				Utilities.toast(GasLogListActivity.this,getString(R.string.toast_canceled));
+    				return;
+    			}
+    			if (!success) {
+    				Utilities.toast(GasLogListActivity.this,getString(R.string.toast_import_failed));
+    				return;
+    			} 
+
+    			records.reload(Integer.MAX_VALUE);
+    			String format = getString(R.string.toast_import_summary);
+    			String summary = String.format(format,
+    					progress.getInsertedCount(),progress.getUpdatedCount(),progress.getSkippedCount());
+    			Utilities.toast(GasLogListActivity.this,getString(R.string.toast_import_complete)+"\n"+summary);
+    		}
+    	});
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Returns a message describing the progress of a CSV import.
+     * @param progress - the import progress.
+     * @return the message.
+     */
+    private String getImportMessage(ImportProgress progress) {
+    	String format = getString(R.string.message_import_progress);
+    	return String.format(format,progress.getLineCount(),progress.getRecordCount());
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Dismisses the CSV import progress dialog (if displayed).
+     */
+    private void dismissImportDialog() {
+    	if (importDialog != null) {
+    		importDialog.dismiss();
+    		importDialog = null;
+    	}
     }
     
     /**
@@ -384,15 +502,22 @@ implements ConfirmationDialog.Listener,
     		return;
     	}
 
-    	File file = getExportFile();
+    	final File file = getExportFile();
 	
-    	if (gaslog.exportData(vehicle,file)) {
-    		Utilities.toast(this,getString(R.string.toast_export_complete));
-    		Utilities.toast(this, file.getAbsolutePath());
-    		showDialog(DIALOG_CONFIRM_EXPORT_SHARE_ID);
-    	} else {
-    		Utilities.toast(this,getString(R.string.toast_export_failed));
-    	}
+    	gaslog.exportData(vehicle,file,new AsyncGasLog.Callback<Boolean>() {
+    		@Override
+    		public void onResult(Boolean success) {
+    			if (success) {
+    				Utilities.toast(GasLogListActivity.this,getString(R.string.toast_export_complete));
+    				Utilities.toast(GasLogListActivity.this, file.getAbsolutePath());
+    				if (!isFinishing()) {
+    					showDialog(DIALOG_CONFIRM_EXPORT_SHARE_ID);
+    				}
+    			} else {
+    				Utilities.toast(GasLogListActivity.this,getString(R.string.toast_export_failed));
+    			}
+    		}
+    	});
     }
     
     /**
@@ -403,13 +528,18 @@ implements ConfirmationDialog.Listener,
      * @param view - the View that activated this method (button click, etc).
      */
     protected void getGas(View view) {
-    	Intent intent = new Intent(this, GasRecordActivity.class);
-    	GasRecord record = new GasRecord(vehicle);
-        int current_odometer = gaslog.readCurrentOdometer(vehicle);
-    	intent.putExtra(GasRecordActivity.RECORD, record);
-        intent.putExtra(GasRecordActivity.CURRENT_ODOMETER, current_odometer);
-        intent.putExtra(GasRecordActivity.TANK_SIZE, vehicle.getTankSize());
-    	startActivityForResult(intent,GET_GAS_REQUEST);
+    	gaslog.readCurrentOdometer(vehicle,new AsyncGasLog.Callback<Integer>() {
+    		@Override
+    		public void onResult(Integer current_odometer) {
+    			if (isFinishing()) return;
+    			Intent intent = new Intent(GasLogListActivity.this, GasRecordActivity.class);
+    			GasRecord record = new GasRecord(vehicle);
+    			intent.putExtra(GasRecordActivity.RECORD, record);
+    			intent.putExtra(GasRecordActivity.CURRENT_ODOMETER, current_odometer.intValue());
+    			intent.putExtra(GasRecordActivity.TANK_SIZE, vehicle.getTankSize());
+    			startActivityForResult(intent,GET_GAS_REQUEST);
+    		}
+    	});
     }
     
     /**
@@ -418,35 +548,70 @@ implements ConfirmationDialog.Listener,
      * to add to the log.
      * @param record - the GasRecord data entered by the user.
      */
-    protected void onGetGasResult(GasRecord record) {
+    protected void onGetGasResult(final GasRecord record) {
+    	
+    	// determined in the background before the record is added
+    	final boolean[] previousFullTank = new boolean[1];
+    	
+    	gaslog.write(new Callable<Integer>() {
+    		@Override
+    		public Integer call() {
+    			GasLog log = GasLog.getInstance();
+    			
+    			// determine if full tank has been recorded before
+    			previousFullTank[0] = log.hasFullTank(vehicle);
+
+    			// attempt to add the new record to the log
+    			if (!log.createRecord(vehicle,record)) {
+    				return null;
+    			}
+    			
+    			// find the position of the record in the list
+    			return log.readRecordPosition(vehicle,record.getOdometer());
+    		}
+    	},new AsyncGasLog.Callback<Integer>() {
+    		@Override
+    		public void onResult(final Integer position) {
+    			
+    			if (position == null) {
+    				Utilities.toast(GasLogListActivity.this,getString(R.string.toast_error_saving_data));
+    				return;
+    			}
+    			
+    			// success!
+    			Utilities.toast(GasLogListActivity.this,getString(R.string.toast_data_saved));
+    			
+    			// read the record (and its mileage calculation) from the log
+    			records.insert(position,record,new AsyncGasLog.Callback<GasRecordWindow>() {
+    				@Override
+    				public void onResult(GasRecordWindow window) {
+    					if (!isFinishing()) {
+    						onGetGasRecordRead(position,previousFullTank[0]);
+    					}
+    				}
+    			});
+    		}
+    	});
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Called when a gasoline record added to the log has been read back 
+     * into the list.
+     * @param position - the position of the record in the list.
+     * @param previousFullTank - true if a full tank was recorded before the record was added.
+     */
+    private void onGetGasRecordRead(int position, boolean previousFullTank) {
     	
-		// attempt to add the new record to the log
-		if (!gaslog.createRecord(vehicle,record)) {
-			Utilities.toast(this,getString(R.string.toast_error_saving_data));
-			return;
-		}
-
-		// success!
-		Utilities.toast(this,getString(R.string.toast_data_saved));
-
-		// determine if full tank has been recorded before
-		boolean previousFullTank = GasRecordList.hasFullTank(records);
-
-		// add the new record to the list
-		records.add(record);
-
-		// recalculate mileage for the list
-		GasRecordList.calculateMileage(records);
-
-		// notify adapter that the list has changed
-		adapter.notifyDataSetChanged();
-
-		// find the position of the record in the list
-		int position = GasRecordList.find(records,record);
-
 		// scroll that row into view
 		listView.setSelection(position);
 
+		// the window has been moved to contain the record
+		GasRecord record = records.peek(position);
+		if (record == null) {
+			return;
+		}
+		
 		// need a previous full tank in the log to do any calculations
 		if (!previousFullTank) {
 			showDialog(DIALOG_TANK_NEVER_FILLED_ID);
@@ -461,9 +626,8 @@ implements ConfirmationDialog.Listener,
 		} 
 
 		// display mileage estimate if possible
-		if (MileageEstimateDialog.isDisplayable(vehicle,records,position)) {
-			MileageEstimateDialog.init(vehicle,records,position);
-			showDialog(DIALOG_SHOW_ESTIMATE_ID);
+		if (MileageEstimateDialog.isEstimable(vehicle,record,position)) {
+			showEstimate(record,false);
 		} 
 			
     }
@@ -475,8 +639,7 @@ implements ConfirmationDialog.Listener,
      */
     protected void editRow() {
     	Intent intent = new Intent(this, GasRecordActivity.class);
-    	GasRecord record = records.get(selectedRow);
-    	intent.putExtra(GasRecordActivity.RECORD, record);
+    	intent.putExtra(GasRecordActivity.RECORD, selectedRecord);
         intent.putExtra(GasRecordActivity.TANK_SIZE, vehicle.getTankSize());
     	startActivityForResult(intent,EDIT_ROW_REQUEST);
     }
@@ -487,13 +650,16 @@ implements ConfirmationDialog.Listener,
      * @param record - the GasRecord data edited by the user.
      */
     protected void onEditRowResult(GasRecord record) {
-		if (gaslog.updateRecord(record)) {
-			records.set(selectedRow,record);
-			GasRecordList.calculateMileage(records);
-			adapter.notifyDataSetChanged();
-		} else {
-			Utilities.toast(this,getString(R.string.toast_edit_failed));
-		}
+    	gaslog.updateRecord(record,new AsyncGasLog.Callback<Boolean>() {
+    		@Override
+    		public void onResult(Boolean success) {
+    			if (success) {
+    				records.reload();
+    			} else {
+    				Utilities.toast(GasLogListActivity.this,getString(R.string.toast_edit_failed));
+    			}
+    		}
+    	});
     }
     
     /**
@@ -504,26 +670,39 @@ implements ConfirmationDialog.Listener,
     protected void deleteRow() {
     	
     	// get the record to delete from our list of records
-    	GasRecord record = records.get(selectedRow);
+    	final int position = selectedRow;
+    	GasRecord record = selectedRecord;
     	
     	// attempt to remove the record from the log
-    	if (gaslog.deleteRecord(record)) {
-    		// success!
-    		
-    		// remove the record from our list of records
-    		records.remove(selectedRow);
-    		
-    		// re-calculate mileage based on the modified data
-    		GasRecordList.calculateMileage(records);
-    		
-    		// update the list view
-    		adapter.notifyDataSetChanged();
-    	} else {
-    		Utilities.toast(this,getString(R.string.toast_delete_failed));
-    	}
+    	gaslog.deleteRecord(record,new AsyncGasLog.Callback<Boolean>() {
+    		@Override
+    		public void onResult(Boolean success) {
+    			if (success) {
+    				// read the modified data (and mileage calculations) from the log
+    				records.delete(position);
+    			} else {
+    				Utilities.toast(GasLogListActivity.this,getString(R.string.toast_delete_failed));
+    			}
+    		}
+    	});
 
     }
     
+    /**
+     * DESCRIPTION:
+     * Called when the user requests to scroll the list to a specific date.
+     * Starts a new Activity to allow the user to select the date, starting
+     * from the date of the first visible record.
+     */
+    protected void jumpToDate() {
+    	MonthSectionIndex index = records.getSectionIndex();
+    	int position = listView.getFirstVisiblePosition();
+    	Date date = (position < index.size()) ? index.getDate(position) : new Date();
+    	Intent intent = new Intent(this, DateTimeActivity.class);
+    	intent.putExtra(DateTimeActivity.MILLISECONDS, date.getTime());
+    	startActivityForResult(intent,JUMP_TO_DATE_REQUEST);
+    }
+    
 	/**
 	 * DESCRIPTION:
 	 * Request code constants for onActivityResult()
@@ -532,6 +711,7 @@ implements ConfirmationDialog.Listener,
 	private static final int EDIT_ROW_REQUEST = 1;
 	private static final int GET_GAS_REQUEST = 2;
 	private static final int CHOOSE_IMPORT_FILE = 3;
+	private static final int JUMP_TO_DATE_REQUEST = 4;
     
     /**
      * DESCRIPTION:
@@ -574,6 +754,14 @@ implements ConfirmationDialog.Listener,
 
         	break;
         	
+        case JUMP_TO_DATE_REQUEST:
+        	if (resultCode == Activity.RESULT_OK) {
+        		long milliseconds = intent.getLongExtra(DateTimeActivity.MILLISECONDS,0);
+        		Date date = new Date(milliseconds);
+        		listView.setSelection(records.getSectionIndex().getPosition(date));
+        	}
+        	break;
+        	
         default:
         	Utilities.toast(this,"Invalid request code.");
         }
@@ -737,14 +925,24 @@ implements ConfirmationDialog.Listener,
 			// update the column header labels to reflect new units
 			updateColumnHeaderLabels();
 
-			// re-calculate mileage based on the new units
-			GasRecordList.calculateMileage(records);
+			// re-read mileage calculations based on the new units
+			records.reload();
 		}
 		
 		// update the list view
 		adapter.notifyDataSetChanged();
 	}
 	
+	/**
+	 * DESCRIPTION:
+	 * Called when the records in the list have been read from the log.
+	 * @see com.github.wdkapps.fillup.GasRecordWindow.Listener#onRecordWindowChanged(com.github.wdkapps.fillup.GasRecordWindow)
+	 */
+	@Override
+	public void onRecordWindowChanged(GasRecordWindow window) {
+		adapter.notifyDataSetChanged();
+	}
+	
 	/**
 	 * DESCRIPTION:
 	 * Save current state data.
@@ -756,6 +954,7 @@ implements ConfirmationDialog.Listener,
 	protected void onSaveInstanceState(Bundle outState) {
 		super.onSaveInstanceState(outState);
 		outState.putInt("selectedRow", selectedRow);
+		outState.putSerializable("selectedRecord", selectedRecord);
 	}
 
 	/**
@@ -767,6 +966,19 @@ implements ConfirmationDialog.Listener,
 	protected void onRestoreInstanceState(Bundle savedInstanceState) {
 		super.onRestoreInstanceState(savedInstanceState);
 		selectedRow = savedInstanceState.getInt("selectedRow");
+		selectedRecord = (GasRecord)savedInstanceState.getSerializable("selectedRecord");
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Called when the activity is being destroyed. An import in progress
+	 * continues in the background, but its progress is no longer displayed.
+	 * @see android.app.Activity#onDestroy()
+	 */
+	@Override
+	protected void onDestroy() {
+		dismissImportDialog();
+		super.onDestroy();
 	}
 
 }
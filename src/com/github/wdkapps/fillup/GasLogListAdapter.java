@@ -19,46 +19,233 @@
 
 package com.github.wdkapps.fillup;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.Html;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
+import android.widget.SectionIndexer;
 import android.widget.TextView;
 
 /**
  * DESCRIPTION:
- * An Android ArrayAdapter for the purpose of displaying gasoline records
- * in an Android ListView.
+ * An Android Adapter for the purpose of displaying gasoline records in an
+ * Android ListView. The records are obtained from a GasRecordWindow, so 
+ * only a window of records around the visible rows is kept in memory. 
+ * Rows whose records have not been read from the log yet are blank.
+ * <p>
+ * The display text for each row (formatted values and styled HTML) is 
+ * built on a background thread each time the window of records changes, 
+ * and cached, so displaying a row only sets the text of its views. The 
+ * cache is discarded when the display settings change.
+ * <p>
+ * The rows are divided into sections by month for fast scrolling, using 
+ * the MonthSectionIndex of the GasRecordWindow.
  */
-public class GasLogListAdapter extends ArrayAdapter<GasRecord> {
+public class GasLogListAdapter extends BaseAdapter implements SectionIndexer {
+	
+	/// the maximum number of rows of display text kept in the cache
+	private static final int MAX_CACHED_ROWS = 1000;
+	
+	/// builds row display text in the background
+	private static final ExecutorService builder = Executors.newSingleThreadExecutor();
+	
+	/**
+	 * DESCRIPTION:
+	 * The widgets of a row view (saved as the view's tag so they are only
+	 * looked up when the view is created).
+	 */
+	private static class ViewHolder {
+		final TextView columnDate;
+		final TextView columnOdometer;
+		final TextView columnGallons;
+		final TextView columnMileage;
+		final TextView rowCost;
+		final TextView rowNotes;
+		
+		ViewHolder(View view) {
+			columnDate = (TextView)view.findViewById(R.id.columnDate);
+			columnOdometer = (TextView)view.findViewById(R.id.columnOdometer);
+			columnGallons = (TextView)view.findViewById(R.id.columnGallons);
+			columnMileage = (TextView)view.findViewById(R.id.columnMileage);
+			rowCost = (TextView)view.findViewById(R.id.rowCost);
+			rowNotes = (TextView)view.findViewById(R.id.rowNotes);
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * The settings that determine the display text of a row. Instances
+	 * are immutable, so rows can be built on a background thread. The
+	 * currency formatters are private copies for the currency locale, so
+	 * rows are built for the same currency that the cache is keyed on.
+	 */
+	private static class RowFormat {
+		final Locale locale;
+		final Locale currency;
+		final CurrencyFormatter costFormatter;
+		final CurrencyFormatter priceFormatter;
+		final int units;
+		final boolean isCostDisplayable;
+		final boolean isNotesDisplayable;
+		final String costLabel;
+		final String notesLabel;
+		final String volumeRatioLabel;
+		
+		RowFormat(Activity activity) {
+			Units units = new Units(Settings.KEY_UNITS);
+			this.locale = App.getLocale();
+			this.currency = CurrencyManager.getInstance().getSymbolicFormatter().getLocale();
+			this.costFormatter = new CurrencyFormatter(false);
+			this.costFormatter.setLocale(currency);
+			this.priceFormatter = new FractionalCurrencyFormatter(false);
+			this.priceFormatter.setLocale(currency);
+			this.units = units.getValue();
+			this.isCostDisplayable = Settings.isCostDisplayable();
+			this.isNotesDisplayable = Settings.isNotesDisplayable();
+			this.costLabel = activity.getString(R.string.cost_label);
+			this.notesLabel = activity.getString(R.string.notes_label);
+			this.volumeRatioLabel = units.getLiquidVolumeRatioLabel();
+		}
+		
+		/**
+		 * DESCRIPTION:
+		 * Determines if rows built with another format would be the same.
+		 * @param that - the other RowFormat.
+		 * @return true if the formats are the same.
+		 */
+		boolean isSameAs(RowFormat that) {
+			return locale.equals(that.locale) &&
+					currency.equals(that.currency) &&
+					(units == that.units) &&
+					(isCostDisplayable == that.isCostDisplayable) &&
+					(isNotesDisplayable == that.isNotesDisplayable);
+		}
+		
+		/**
+		 * DESCRIPTION:
+		 * Builds the display text of a row for a record.
+		 * @param record - the GasRecord.
+		 * @return the Row.
+		 */
+		Row build(GasRecord record) {
+			
+			Row row = new Row(record);
+			ValueFormatter formatter = ValueFormatter.getInstance();
+			StringBuilder text;
+			
+			// date
+			row.date = record.getDateString();
+			
+			// odometer (bold if tank is full) 
+			if (record.isFullTank()) {
+				text = formatter.getBuilder();
+				text.append("<b>").append(record.getOdometerString()).append("</b>");
+				row.odometer = Html.fromHtml(text.toString());
+			} else {
+				row.odometer = record.getOdometerString();
+			}
+			
+			// gallons
+			row.gallons = record.getGallonsString();
+			
+			// mpg
+			String mileage = "";
+			if (record.hasCalculation()) {
+				mileage = record.getCalculation().getMileageString();
+				if (mileage.length() > "9999.99".length()) {
+					mileage = "#VAL!";
+				}
+				if (record.isCalculationHidden()) {
+					mileage = "---";
+				}
+			}
+			row.mileage = mileage;
+			
+			// cost (don't display if zero)
+			if (isCostDisplayable && (record.getCost() != 0d)) {
+				text = formatter.getBuilder();
+				text.append("<b>").append(costLabel).append("</b>: ")
+					.append(costFormatter.format(record.getCost()))
+					.append(" (")
+					.append(priceFormatter.format(record.getPrice()))
+					.append(' ').append(volumeRatioLabel).append(')');
+				row.cost = Html.fromHtml(text.toString());
+			}
+
+			// notes (don't display if blank)
+			String notes = record.getNotes();
+			if (isNotesDisplayable && (notes != null) && !notes.trim().isEmpty()) {
+				text = formatter.getBuilder();
+				text.append("<b>").append(notesLabel).append("</b>: ").append(notes);
+				row.notes = Html.fromHtml(text.toString());
+			}
+			
+			return row;
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * The display text of a row, built from a specific record instance.
+	 */
+	private static class Row {
+		final GasRecord record;
+		CharSequence date;
+		CharSequence odometer;
+		CharSequence gallons;
+		CharSequence mileage;
+		CharSequence cost;
+		CharSequence notes;
+		
+		Row(GasRecord record) {
+			this.record = record;
+		}
+	}
 	
 	/// the Android Activity owning the ListView
 	private final Activity activity;
 		
 	/// a list of gasoline records for display 
-	private final List<GasRecord> records;
-	
-    /// currently configured units of measurement
-    private Units units;
-    
-    /// currently settings for displaying cost and notes
-    private boolean isCostDisplayable;
-    private boolean isNotesDisplayable;
-
+	private final GasRecordWindow records;
+	
+	/// delivers rows built in the background to the main thread
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	
+	/// the current settings for display of rows
+	private RowFormat format;
+	
+	/// cached rows by record id (least recently used first)
+	private final Map<Integer,Row> cache = new LinkedHashMap<Integer,Row>(16,0.75f,true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer,Row> eldest) {
+			return size() > MAX_CACHED_ROWS;
+		}
+	};
+	
+	/// incremented each time the cache is invalidated (rows built before are discarded)
+	private int generation;
 	
 	/**
 	 * DESCRIPTION:
 	 * Constructs an instance of GasLogListAdapter.
 	 *
 	 * @param activity - the Android Activity instance that owns the ListView.
-	 * @param records - the List of GasRecord instances for display in the ListView.
+	 * @param records - the GasRecordWindow of GasRecord instances for display in the ListView.
 	 */
-	public GasLogListAdapter(Activity activity, List<GasRecord> records) {
-		super(activity,R.layout.row_gas_log_list,records);
+	public GasLogListAdapter(Activity activity, GasRecordWindow records) {
 		this.activity = activity;
 		this.records = records;
 		getSettings();
@@ -68,100 +255,239 @@ public class GasLogListAdapter extends ArrayAdapter<GasRecord> {
 	 * DESCRIPTION:
 	 * Gets current configuration values from Settings. Better performance 
 	 * keeping a local copy of these values, but we need to update
-	 * when they change.
+	 * when they change. Cached rows are discarded if the values have changed.
 	 * @see GasLogListAdapter#notifyDataSetChanged()
 	 */
 	private void getSettings() {
-		this.units = new Units(Settings.KEY_UNITS);
-		this.isCostDisplayable = Settings.isCostDisplayable();
-		this.isNotesDisplayable = Settings.isNotesDisplayable();
+		RowFormat current = new RowFormat(activity);
+		if ((format == null) || !format.isSameAs(current)) {
+			format = current;
+			invalidate();
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Discards all cached rows.
+	 */
+	private void invalidate() {
+		cache.clear();
+		generation++;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the number of rows (one per record for the vehicle).
+	 * @see android.widget.Adapter#getCount()
+	 */
+	@Override
+	public int getCount() {
+		return records.size();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the GasRecord displayed at a position, if it has been read
+	 * from the log.
+	 * @return the GasRecord (null if not read yet, see GasRecordWindow.peek()).
+	 * @see android.widget.Adapter#getItem(int)
+	 */
+	@Override
+	public GasRecord getItem(int position) {
+		return records.peek(position);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the row id of a position (the position itself).
+	 * @see android.widget.Adapter#getItemId(int)
+	 */
+	@Override
+	public long getItemId(int position) {
+		return position;
 	}
 	
 	/**
 	 * DESCRIPTION:
 	 * Constructs and populates a View for display of the GasRecord date at the index
 	 * of the List specified by the position parameter.
-	 * @see android.widget.ArrayAdapter#getView(int, android.view.View, android.view.ViewGroup)
+	 * @see android.widget.Adapter#getView(int, android.view.View, android.view.ViewGroup)
 	 */
 	@Override
 	public View getView(int position, View view, ViewGroup parent) {
 		
 		// create a view for the row if it doesn't already exist
+		ViewHolder holder;
 		if (view == null) {
 			LayoutInflater inflater = activity.getLayoutInflater();
 			view = inflater.inflate(R.layout.row_gas_log_list,null);
-		} 
-		
-		// get widgets from the view
-		TextView columnDate = (TextView)view.findViewById(R.id.columnDate);
-		TextView columnOdometer = (TextView)view.findViewById(R.id.columnOdometer);
-		TextView columnGallons = (TextView)view.findViewById(R.id.columnGallons);
-		TextView columnMileage = (TextView)view.findViewById(R.id.columnMileage);
-		TextView rowCost = (TextView)view.findViewById(R.id.rowCost);
-		TextView rowNotes = (TextView)view.findViewById(R.id.rowNotes);
-		
-		// populate row widgets from record data
-		GasRecord record = records.get(position);
-		
-		// date
-		columnDate.setText(record.getDateString());
-
-		// odometer (bold if tank is full) 
-		if (record.isFullTank()) {
-			columnOdometer.setText(Html.fromHtml("<b>"+record.getOdometerString()+"</b>"));
+			holder = new ViewHolder(view);
+			view.setTag(holder);
 		} else {
-			columnOdometer.setText(record.getOdometerString());
+			holder = (ViewHolder)view.getTag();
 		}
 		
-		// gallons
-		columnGallons.setText(record.getGallonsString());
+		// populate row widgets from record data
+		GasRecord record = records.peek(position);
+		
+		// read more records in the background as the list scrolls
+		records.prefetch(position);
 		
-		// mpg
-		String mileage = "";
-		if (record.hasCalculation()) {
-			mileage = record.getCalculation().getMileageString();
-			if (mileage.length() > "9999.99".length()) {
-				mileage = "#VAL!";
-			}
-			if (record.isCalculationHidden()) {
-				mileage = "---";
-			}
+		// leave the row blank until the record has been read from the log
+		if (record == null) {
+			holder.columnDate.setText("");
+			holder.columnOdometer.setText("");
+			holder.columnGallons.setText("");
+			holder.columnMileage.setText("");
+			holder.rowCost.setVisibility(View.GONE);
+			holder.rowNotes.setVisibility(View.GONE);
+			return view;
 		}
-		columnMileage.setText(mileage);
 		
-		// cost (don't display if zero)
-		if (!isCostDisplayable || (record.getCost() == 0d)) {
-			rowCost.setVisibility(View.GONE);
+		Row row = getRow(record);
+		holder.columnDate.setText(row.date);
+		holder.columnOdometer.setText(row.odometer);
+		holder.columnGallons.setText(row.gallons);
+		holder.columnMileage.setText(row.mileage);
+		setOptionalText(holder.rowCost,row.cost);
+		setOptionalText(holder.rowNotes,row.notes);
+		
+		// return the view
+		return view;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Sets the text of a view, hiding the view if there is no text.
+	 * @param view - the TextView.
+	 * @param text - the text (null = hide the view).
+	 */
+	private static void setOptionalText(TextView view, CharSequence text) {
+		if (text == null) {
+			view.setVisibility(View.GONE);
 		} else {
-			String cost = String.format("<b>%s</b>: %s (%s %s)",
-					App.getContext().getString(R.string.cost_label),
-					CurrencyManager.getInstance().getSymbolicFormatter().format(record.getCost()),
-					CurrencyManager.getInstance().getSymbolicFractionalFormatter().format(record.getPrice()),
-					units.getLiquidVolumeRatioLabel());
-			rowCost.setText(Html.fromHtml(cost));
-			rowCost.setVisibility(View.VISIBLE);
+			view.setText(text);
+			view.setVisibility(View.VISIBLE);
 		}
-
-		// notes (don't display if blank)
-		String notes = record.getNotes();
-		if (!isNotesDisplayable || (notes == null) || notes.trim().isEmpty()) {
-			rowNotes.setVisibility(View.GONE);
-		} else {
-			notes = String.format("<b>%s</b>: %s",
-					App.getContext().getString(R.string.notes_label),
-					notes);
-			rowNotes.setText(Html.fromHtml(notes));
-			rowNotes.setVisibility(View.VISIBLE);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the display text of a row for a record, building it now if 
+	 * it has not been built in the background.
+	 * @param record - the GasRecord.
+	 * @return the Row.
+	 */
+	private Row getRow(GasRecord record) {
+		Row row = cache.get(record.getID());
+		if (!isCurrent(row,record)) {
+			row = format.build(record);
+			cache.put(record.getID(),row);
 		}
+		return row;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Determines if a cached row still displays the current content of a
+	 * record. Each read of the log returns copies of the records, so rows
+	 * are compared by value and by their (shared) mileage calculation.
+	 * @param row - the cached Row (may be null).
+	 * @param record - the GasRecord.
+	 * @return true if the row is up to date.
+	 */
+	private static boolean isCurrent(Row row, GasRecord record) {
+		return (row != null) && 
+				row.record.equals(record) && 
+				(row.record.getCalculation() == record.getCalculation());
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Builds the rows for the records in the current window that are not
+	 * cached yet on a background thread, and adds them to the cache.
+	 */
+	private void buildRows() {
 		
-		// return the view
-		return view;
+		final List<GasRecord> pending = new ArrayList<GasRecord>();
+		for (GasRecord record : records.getWindow()) {
+			Row row = cache.get(record.getID());
+			if (!isCurrent(row,record)) {
+				pending.add(record);
+			}
+		}
+		if (pending.isEmpty()) return;
+		
+		final RowFormat format = this.format;
+		final int generation = this.generation;
+		builder.execute(new Runnable() {
+			@Override
+			public void run() {
+				final List<Row> rows = new ArrayList<Row>(pending.size());
+				for (GasRecord record : pending) {
+					rows.add(format.build(record));
+				}
+				handler.post(new Runnable() {
+					@Override
+					public void run() {
+						if (generation != GasLogListAdapter.this.generation) return;
+						for (Row row : rows) {
+							Integer id = row.record.getID();
+							if (!cache.containsKey(id)) {
+								cache.put(id,row);
+							}
+						}
+					}
+				});
+			}
+		});
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Discards the cached row for a record that has been modified.
+	 * @param record - the modified GasRecord.
+	 */
+	public void notifyRecordChanged(GasRecord record) {
+		cache.remove(record.getID());
+		generation++;
+		super.notifyDataSetChanged();
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Returns the month labels of the sections for fast scrolling.
+	 * @see android.widget.SectionIndexer#getSections()
+	 */
+	@Override
+	public Object[] getSections() {
+		return records.getSectionIndex().getSections();
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Returns the position of the first row in a section.
+	 * @see android.widget.SectionIndexer#getPositionForSection(int)
+	 */
+	@Override
+	public int getPositionForSection(int section) {
+		return records.getSectionIndex().getPositionForSection(section);
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Returns the section containing a row.
+	 * @see android.widget.SectionIndexer#getSectionForPosition(int)
+	 */
+	@Override
+	public int getSectionForPosition(int position) {
+		return records.getSectionIndex().getSectionForPosition(position);
 	}
 
 	/**
 	 * DESCRIPTION:
 	 * Called by parent when the underlying data set changes.
-	 * @see android.widget.ArrayAdapter#notifyDataSetChanged()
+	 * @see android.widget.BaseAdapter#notifyDataSetChanged()
 	 */
 	@Override
 	public void notifyDataSetChanged() {
@@ -169,6 +495,9 @@ public class GasLogListAdapter extends ArrayAdapter<GasRecord> {
 		// configuration may have changed - get current settings
 		getSettings();
 		
+		// build rows for new records before they are displayed
+		buildRows();
+		
 		super.notifyDataSetChanged();
 	}
 }
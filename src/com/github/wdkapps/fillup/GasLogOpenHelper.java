@@ -68,6 +68,12 @@ class GasLogOpenHelper extends SQLiteOpenHelper {
 		
 		LinkedList<String> sql = new LinkedList<String>();
 		
+		// true if stored mileage calculations need to be populated
+		boolean backfill = false;
+		
+		// true if stored monthly totals need to be populated
+		boolean totals = false;
+		
 		while (oldVersion < newVersion) {
 			
 			switch (oldVersion) {
@@ -83,6 +89,21 @@ class GasLogOpenHelper extends SQLiteOpenHelper {
 				sql.add("ALTER TABLE Records ADD COLUMN cost real not null default 0.0;");
 				sql.add("ALTER TABLE Records ADD COLUMN notes text;");
 				break;
+				
+			case 5:
+				sql.add("ALTER TABLE Records ADD COLUMN segstart integer;");
+				sql.add("ALTER TABLE Records ADD COLUMN segvolume real;");
+				backfill = true;
+				break;
+				
+			case 6:
+				sql.add(GasLog.RECORDS_TIME_INDEX);
+				break;
+				
+			case 7:
+				sql.add(GasLog.MONTHLY_TABLE_CREATE);
+				totals = true;
+				break;
 			}
 			
 			oldVersion++;
@@ -90,6 +111,14 @@ class GasLogOpenHelper extends SQLiteOpenHelper {
 
 		try {
 			execSQL(db,(String[])sql.toArray(new String[sql.size()]));
+			
+			// note: onUpgrade() is called within a single transaction
+			if (backfill) {
+				GasLog.updateMileageSegments(db);
+			}
+			if (totals) {
+				GasLog.updateMonthlyTotals(db);
+			}
 		} catch (Throwable t) {
 			String message = App.getContext().getString(R.string.toast_database_update_failed);
 			Utilities.toast(App.getContext(),message );
@@ -21,10 +21,7 @@ package com.github.wdkapps.fillup;
 
 import java.io.Serializable;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Arrays;
 import java.util.Date;
-import java.util.Locale;
 
 /**
  * DESCRIPTION:
@@ -39,7 +36,7 @@ import java.util.Locale;
  */
 public class GasRecord implements Serializable {
 
-	private static final long serialVersionUID = -2409546847119346248L;
+	private static final long serialVersionUID = 4716245210935802745L;
 	
 	// define maximum values (for display reasons)
 	public static final int MAX_ODOMETER = 9999999;
@@ -47,20 +44,6 @@ public class GasRecord implements Serializable {
 	public static final double MAX_COST = 999999.999d;
 	public static final double MAX_PRICE = 999999.999d;
 	
-    /// get a locale specific date formatter 
-    private static final java.text.DateFormat dateFormatter = 
-    		android.text.format.DateFormat.getDateFormat(App.getContext());
-    
-    /// get a locale specific time formatter 
-    private static final java.text.DateFormat timeFormatter = 
-    		android.text.format.DateFormat.getTimeFormat(App.getContext());
-    
-    /// get non-locale specific date/time formatters for internal CSV use
-    private static final SimpleDateFormat csvDateFormatter = 
-    		new SimpleDateFormat("MM/dd/yyyy",Locale.US);
-    private static final SimpleDateFormat csvDateTimeFormatter = 
-    		new SimpleDateFormat("MM/dd/yyyy HH:mm",Locale.US);
-    
     /// record id for database use (primary key)
     private Integer id;
     
@@ -71,32 +54,29 @@ public class GasRecord implements Serializable {
     private Date date;
 	
     /// odometer reading at the time of purchase 
-    private Integer odometer;
+    private int odometer;
     
     /// gasoline price per gallon 
-    private Double price;
+    private double price;
     
     /// amount of gasoline purchased 
-    private Float gallons;
+    private float gallons;
     
     /// the total cost of the gasoline purchased
-    private Double cost;
+    private double cost;
     
     /// textual notes about the purchase 
     private String notes;
     
     /// flag to indicate whether gas tank was full after purchase 
-    private Boolean fulltank;
+    private boolean fulltank;
     
     /// flag to indicate whether the calculation for this record is hidden 
-    private Boolean hidden;
+    private boolean hidden;
     
     ///  gas mileage calculation (if the tank was full, null otherwise) 
     private MileageCalculation calc;
     
-    /// array of record attributes included in hash code calculations
-    private Object[] hash;
-    
 	/**
 	 * DESCRIPTION:
 	 * Constructs a 'blank' instance of GasRecord.
@@ -105,10 +85,10 @@ public class GasRecord implements Serializable {
 		id = null;
 		vid = null;
         date = new Date();
-    	gallons = Float.valueOf(0.0f);
-    	odometer = Integer.valueOf(0);
-    	cost = Double.valueOf(0.0d);
-    	price = Double.valueOf(0.0d);
+    	gallons = 0f;
+    	odometer = 0;
+    	cost = 0d;
+    	price = 0d;
     	notes = "";
         fulltank = false;
         hidden = false;
@@ -125,13 +105,13 @@ public class GasRecord implements Serializable {
 		this.vid = that.vid;
 		this.date = new Date();
 		this.date.setTime(that.date.getTime());
-		this.gallons = Float.valueOf(that.gallons);
-		this.odometer = Integer.valueOf(that.odometer);
-		this.cost = Double.valueOf(that.cost);
-		this.price = Double.valueOf(that.price);
-		this.notes = new String(that.notes);
-		this.fulltank = Boolean.valueOf(that.fulltank);
-		this.hidden = Boolean.valueOf(that.hidden);
+		this.gallons = that.gallons;
+		this.odometer = that.odometer;
+		this.cost = that.cost;
+		this.price = that.price;
+		this.notes = that.notes;
+		this.fulltank = that.fulltank;
+		this.hidden = that.hidden;
 		this.calc = null;
 	}
 	
@@ -170,36 +150,7 @@ public class GasRecord implements Serializable {
 	 */
 	public GasRecord(String csv) throws ParseException, NumberFormatException {
 		this();
-		String[] values = csv.split(",");
-
-		switch(values.length){
-		case 8:  // db_version=5 with calculation
-		case 7:  // db_version=5
-			setCsvDateTime(values[0]);
-			setOdometer(values[1]);
-			setGallons(values[2]);
-			setFullTank(values[3]);
-			setHiddenCalculation(values[4]);
-			setCost(values[5]);
-			setNotes(values[6]);
-			calculatePrice();
-			break;
-			
-		case 6:  // db_version<5 with calculation
-		case 5:  // db_version<5
-			setCsvDateTime(values[0]);
-			setOdometer(values[1]);
-			setGallons(values[2]);
-			setFullTank(values[3]);
-			setHiddenCalculation(values[4]);
-			setCost(0d);
-			setNotes("");
-			calculatePrice();
-			break;
-			
-		default:
-			throw new ParseException("Invalid CSV length",values.length);
-		}
+		RecordCsvReader.parse(csv,this);
 	}
 	
 	/**
@@ -208,11 +159,11 @@ public class GasRecord implements Serializable {
  	 * @throws NumberFormatException if the calculated value is not a valid price value.
 	 */
 	public void calculatePrice() {
-		Double value = 0d;
+		double value = 0d;
 		if (gallons != 0) {
-			value = (double)(cost/gallons);
+			value = cost/gallons;
 		}
-		setPrice(value.toString());
+		setValidPrice(value);
 	}
 	
 	/**
@@ -221,11 +172,11 @@ public class GasRecord implements Serializable {
 	 * @throws NumberFormatException if the calculated value is not a valid gallons value.
 	 */
 	public void calculateGallons() {
-		Float value = 0f;
+		float value = 0f;
 		if (price != 0) {
 			value = (float)(cost/price);
 		}
-		setGallons(value.toString());
+		setValidGallons(value);
 	}
 
 	/**
@@ -234,8 +185,8 @@ public class GasRecord implements Serializable {
 	 * @throws NumberFormatException if the calculated value is not a valid cost value.
 	 */
 	public void calculateCost() {
-		Double value = price * gallons;
-		setCost(value.toString());
+		double value = price * gallons;
+		setValidCost(value);
 	}
 	
 	/**
@@ -289,7 +240,7 @@ public class GasRecord implements Serializable {
 	 * @return String - the date value (MM/dd/yyyy).
 	 */
 	public String getDateString() {
-		return dateFormatter.format(date);
+		return ValueFormatter.getInstance().formatDate(date);
 	}
 	
 	/**
@@ -298,20 +249,8 @@ public class GasRecord implements Serializable {
 	 * @return String - the date/time value.
 	 */
 	public String getDateTimeString() {
-		StringBuffer sb = new StringBuffer();
-		sb.append(dateFormatter.format(date));
-		sb.append(" ");
-		sb.append(timeFormatter.format(date));
-		return sb.toString();
-	}
-	
-	/**
-	 * DESCRIPTION:
-	 * Getter method for the date attribute as a String value.
-	 * @return String - the date/time value (MM/dd/yyyy HH:mm).
-	 */
-	private String getCsvDateTimeString() {
-		return csvDateTimeFormatter.format(date);
+		ValueFormatter formatter = ValueFormatter.getInstance();
+		return formatter.formatDate(date) + " " + formatter.formatTime(date);
 	}
 
 	/**
@@ -323,28 +262,12 @@ public class GasRecord implements Serializable {
 		this.date = date;
 	}
 	
-	/**
-	 * DESCRIPTION:
-	 * Setter method for the date attribute.
-	 * @param date - the date/time as a String value.
-	 * @throws ParseException if the String is not a valid date/time or date.
-	 */
-	private void setCsvDateTime(String date) throws ParseException {
-		try {
-			// assume date & time specified in string
-			this.date = csvDateTimeFormatter.parse(date);
-		} catch (ParseException e) {
-			//...but also allow just date 
-			this.date = csvDateFormatter.parse(date);
-		}
-	}
-	
 	/**
 	 * DESCRIPTION:
 	 * Getter method for the odometer attribute.
-	 * @return Integer - the odometer value.
+	 * @return int - the odometer value.
 	 */
-	public Integer getOdometer() {
+	public int getOdometer() {
 		return odometer;
 	}
 	
@@ -354,15 +277,15 @@ public class GasRecord implements Serializable {
 	 * @return String - the odometer value. 
 	 */
 	public String getOdometerString() {
-		return odometer.toString();
+		return Integer.toString(odometer);
 	}
 
 	/**
 	 * DESCRIPTION:
 	 * Setter method for the odometer attribute.
-	 * @param odometer - the odometer value as an Integer.
+	 * @param odometer - the odometer value as an int.
 	 */
-	public void setOdometer(Integer odometer) {
+	public void setOdometer(int odometer) {
 		this.odometer = odometer;
 	}
 	
@@ -373,7 +296,7 @@ public class GasRecord implements Serializable {
 	 * @throws NumberFormatException if the String is not a valid odometer value.
 	 */
 	public void setOdometer(String odometer) throws NumberFormatException {
-		Integer value = Integer.valueOf(odometer);
+		int value = Integer.parseInt(odometer);
 		if ((value < 0) || (value > MAX_ODOMETER)) {
 			throw new NumberFormatException("Value out of range.");
 		}
@@ -383,9 +306,9 @@ public class GasRecord implements Serializable {
 	/**
 	 * DESCRIPTION:
 	 * Getter method for the gallons attribute.
-	 * @return Float - the gallons value.
+	 * @return float - the gallons value.
 	 */
-	public Float getGallons() {
+	public float getGallons() {
 		return gallons;
 	}
 	
@@ -395,15 +318,15 @@ public class GasRecord implements Serializable {
 	 * @return String - the gallons value.
 	 */
 	public String getGallonsString() {
-		return String.format(App.getLocale(),"%.3f",gallons);
+		return ValueFormatter.getInstance().formatFixed(gallons,3);
 	}
 
 	/**
 	 * DESCRIPTION:
 	 * Setter method for the gallons attribute.
-	 * @param gallons - the gallons value as a Float.
+	 * @param gallons - the gallons value as a float.
 	 */
-	public void setGallons(Float gallons) {
+	public void setGallons(float gallons) {
 		this.gallons = gallons;
 	}
 	
@@ -415,7 +338,17 @@ public class GasRecord implements Serializable {
 	 */
 	public void setGallons(String gallons) throws NumberFormatException {
 		this.gallons = 0f;
-		Float value = Float.valueOf(gallons.replace(',','.'));
+		setValidGallons(Float.parseFloat(gallons.replace(',','.')));
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Setter method for the gallons attribute with range checking.
+	 * @param value - the gallons value.
+	 * @throws NumberFormatException if the value is not a valid gallons value.
+	 */
+	private void setValidGallons(float value) throws NumberFormatException {
+		this.gallons = 0f;
 		if ((value <= 0) || (value > MAX_GALLONS)) {
 			throw new NumberFormatException("Value out of range.");
 		}
@@ -425,9 +358,9 @@ public class GasRecord implements Serializable {
 	/**
 	 * DESCRIPTION:
 	 * Getter method for the cost attribute.
-	 * @return Double - the cost value.
+	 * @return double - the cost value.
 	 */
-	public Double getCost() {
+	public double getCost() {
 		return cost;
 	}
 	
@@ -443,9 +376,9 @@ public class GasRecord implements Serializable {
 	/**
 	 * DESCRIPTION:
 	 * Setter method for the cost attribute.
-	 * @param cost - the cost value as a Double.
+	 * @param cost - the cost value as a double.
 	 */
-	public void setCost(Double cost) {
+	public void setCost(double cost) {
 		this.cost = cost;
 	}
 	
@@ -457,7 +390,17 @@ public class GasRecord implements Serializable {
 	 */
 	public void setCost(String cost) throws NumberFormatException {
 		this.cost = 0d;
-		Double value = Double.valueOf(cost.replace(',','.'));
+		setValidCost(Double.parseDouble(cost.replace(',','.')));
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Setter method for the cost attribute with range checking.
+	 * @param value - the cost value.
+	 * @throws NumberFormatException if the value is not a valid cost value.
+	 */
+	private void setValidCost(double value) throws NumberFormatException {
+		this.cost = 0d;
 		if ((value < 0) || (value > MAX_COST)) {
 			throw new NumberFormatException("Value out of range.");
 		}
@@ -467,9 +410,9 @@ public class GasRecord implements Serializable {
 	/**
 	 * DESCRIPTION:
 	 * Getter method for the calculated price per gallon value.
-	 * @return Double - the cost per gallon value.
+	 * @return double - the cost per gallon value.
 	 */
-	public Double getPrice() {
+	public double getPrice() {
 		return price;
 	}
 	
@@ -491,9 +434,9 @@ public class GasRecord implements Serializable {
 	 * ratio of cost and gallons. This setter method is provided
 	 * to assist data entry.
 	 * </p>
-	 * @param price - the price attribute as a Double.
+	 * @param price - the price attribute as a double.
 	 */
-	private void setPrice(Double price) {
+	private void setPrice(double price) {
 		this.price = price;
 	}
 	
@@ -511,7 +454,17 @@ public class GasRecord implements Serializable {
 	 */
 	public void setPrice(String price) {
 		this.price = 0d;
-		Double value = Double.valueOf(price.replace(',','.'));
+		setValidPrice(Double.parseDouble(price.replace(',','.')));
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Setter method for the price per gallon attribute with range checking.
+	 * @param value - the price value.
+	 * @throws NumberFormatException if the value is not a valid price value.
+	 */
+	private void setValidPrice(double value) throws NumberFormatException {
+		this.price = 0d;
 		if ((value < 0) || (value > MAX_PRICE)) {
 			throw new NumberFormatException("Value out of range.");
 		}
@@ -540,18 +493,18 @@ public class GasRecord implements Serializable {
 	/**
 	 * DESCRIPTION:
 	 * Getter method for the full tank attribute. 
-	 * @return Boolean indicating whether the tank was full after purchase (true=full)
+	 * @return boolean indicating whether the tank was full after purchase (true=full)
 	 */
-	public Boolean isFullTank() {
+	public boolean isFullTank() {
 		return fulltank;
 	}
 
 	/**
 	 * DESCRIPTION:
 	 * Setter method for the full tank attribute.
-	 * @param fulltank - the Boolean full tank value.
+	 * @param fulltank - the boolean full tank value.
 	 */
-	public void setFullTank(Boolean fulltank) {
+	public void setFullTank(boolean fulltank) {
 		this.fulltank = fulltank;
 	}
 
@@ -567,18 +520,18 @@ public class GasRecord implements Serializable {
 	/**
 	 * DESCRIPTION:
 	 * Getter method for the calculation hidden attribute. 
-	 * @return Boolean indicating whether the calculation is hidden (true=hidden)
+	 * @return boolean indicating whether the calculation is hidden (true=hidden)
 	 */
-	public Boolean isCalculationHidden() {
+	public boolean isCalculationHidden() {
 		return hidden;
 	}
 
 	/**
 	 * DESCRIPTION:
 	 * Setter method for the calculation hidden attribute. 
-	 * @param hidden - the Boolean hidden value.
+	 * @param hidden - the boolean hidden value.
 	 */
-	public void setHiddenCalculation(Boolean hidden) {
+	public void setHiddenCalculation(boolean hidden) {
 		this.hidden = hidden;
 	}
 
@@ -618,29 +571,6 @@ public class GasRecord implements Serializable {
 		return (calc != null);
 	}
 
-	/**
-	 * DESCRIPTION:
-	 * Returns an ASCII CSV String representation of the record.
-	 * @return String reflecting record attribute values.
-	 */
-	public String toStringCSV() {
-		
-		String csv = 
-				getCsvDateTimeString() + "," + 
-				getOdometerString() + "," + 
-				getGallonsString().replace(',','.') + "," + 
-				isFullTank() + "," + 
-				isCalculationHidden() + "," +
-				getCostString().replace(',','.') + "," + 
-				getNotes().replace(',',' ').replace('\n',' ');
-		
-		if (hasCalculation()) {
-			csv += "," + calc.getMileageString().replace(',','.');
-		}
-		
-		return csv;
-	}
-	
 	/**
 	 * DESCRIPTION:
 	 * Returns a String representation of the record for debug/logging purposes.
@@ -662,33 +592,6 @@ public class GasRecord implements Serializable {
 				"]";
 	}
 
-	/**
-	 * DESCRIPTION:
-	 * Constructs an array of all attributes to be considered in
-	 * hash code calculations for this record.
-	 * @return an Object[] of attributes to be hashed.
-	 */
-	private Object[] getHashArray() {
-
-		// create the array (only once for performance)
-		if (hash == null) {
-			hash = new Object[10];
-		}
-		
-		// populate the array
-		hash[0] = id;
-		hash[1] = vid;
-        hash[2] = date;
-    	hash[3] = gallons;
-    	hash[4] = odometer;
-    	hash[5] = cost;
-    	hash[6] = notes;
-        hash[7] = fulltank;
-        hash[8] = hidden;
-        hash[9] = price;
-        return hash;
-	}
-
 	/**
 	 * DESCRIPTION:
 	 * Calculates an integer hash code for this record. 
@@ -697,7 +600,21 @@ public class GasRecord implements Serializable {
 	 */
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(getHashArray());
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((id == null) ? 0 : id.hashCode());
+		result = prime * result + ((vid == null) ? 0 : vid.hashCode());
+		result = prime * result + ((date == null) ? 0 : date.hashCode());
+		result = prime * result + Float.floatToIntBits(gallons);
+		result = prime * result + odometer;
+		long bits = Double.doubleToLongBits(cost);
+		result = prime * result + (int)(bits ^ (bits >>> 32));
+		result = prime * result + ((notes == null) ? 0 : notes.hashCode());
+		result = prime * result + (fulltank ? 1231 : 1237);
+		result = prime * result + (hidden ? 1231 : 1237);
+		bits = Double.doubleToLongBits(price);
+		result = prime * result + (int)(bits ^ (bits >>> 32));
+		return result;
 	}
 
 	/**
@@ -717,6 +634,26 @@ public class GasRecord implements Serializable {
 			return false;
 
 		GasRecord that = (GasRecord)obj;
-		return Arrays.equals(this.getHashArray(),that.getHashArray());
+		return equals(this.id,that.id) &&
+				equals(this.vid,that.vid) &&
+				equals(this.date,that.date) &&
+				(Float.floatToIntBits(this.gallons) == Float.floatToIntBits(that.gallons)) &&
+				(this.odometer == that.odometer) &&
+				(Double.doubleToLongBits(this.cost) == Double.doubleToLongBits(that.cost)) &&
+				equals(this.notes,that.notes) &&
+				(this.fulltank == that.fulltank) &&
+				(this.hidden == that.hidden) &&
+				(Double.doubleToLongBits(this.price) == Double.doubleToLongBits(that.price));
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Compares two (possibly null) attribute values for equality.
+	 * @param lhs - the first value.
+	 * @param rhs - the second value.
+	 * @return true if both are null or equal.
+	 */
+	private static boolean equals(Object lhs, Object rhs) {
+		return (lhs == null) ? (rhs == null) : lhs.equals(rhs);
 	}
 }
\ No newline at end of file
@@ -84,6 +84,117 @@ public class GasRecordList {
     	}
     }
 	
+    /**
+     * DESCRIPTION:
+     * Re-calculates gas mileage for only the portion of a List of GasRecords
+     * affected by a change at a specified location. Calculation starts at the 
+     * previous full tank before the location and ends at the first full tank 
+     * after it. The results are identical to calculateMileage(list).
+     * NOTE: Assumes the list is already sorted by odometer value.
+     * @param list - the GasRecord List.
+     * @param location - index of the first record affected by the change.
+     */
+    protected static void calculateMileage(List<GasRecord> list, int location) {
+    	
+    	// do nothing if list is empty
+    	if ((list == null) || list.isEmpty())
+    		return;
+    	
+    	// get currently selected units of measurement for calculation
+    	Units units = new Units(Settings.KEY_UNITS);
+
+    	// start at the previous full tank (or start of list if none)
+    	MileageCalculation calc = null;
+    	int start = findPreviousFullTank(list,Math.min(location,list.size()));
+    	if (start < 0) {
+    		start = 0;
+    	} else {
+    		calc = new MileageCalculation(list.get(start), units);
+    		start++;
+    	}
+    	
+    	// calculate until a full tank beyond the location ends the segment
+    	for (int n=start; n<list.size(); n++) {
+    		GasRecord record = list.get(n);
+    		if (calc == null) {
+    			record.setCalculation(null);
+    			if (record.isFullTank()) {
+    				calc = new MileageCalculation(record, units);
+    			}
+    			continue;
+    		}
+    		calc.add(record);
+    		if (record.isFullTank()) {
+    			record.setCalculation(calc);
+    			if (n > location) break;
+    			calc = new MileageCalculation(record, units);
+    		} else {
+    			record.setCalculation(null);
+    		}
+    	}
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Inserts a record into a List of GasRecords sorted by odometer value
+     * and re-calculates gas mileage for the affected records only.
+     * @param list - the GasRecord List (sorted by odometer value).
+     * @param record - the record to insert.
+     * @return the index of the inserted record in the list.
+     */
+    public static int insert(List<GasRecord> list, GasRecord record) {
+    	int location = find(list,record);
+    	if (location < 0) {
+    		location = -(location + 1);
+    	}
+    	list.add(location,record);
+    	calculateMileage(list,location);
+    	return location;
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Replaces a record in a List of GasRecords sorted by odometer value
+     * and re-calculates gas mileage for the affected records only. The
+     * record is moved within the list if its odometer value changed.
+     * @param list - the GasRecord List (sorted by odometer value).
+     * @param location - the index of the record to replace.
+     * @param record - the replacement record.
+     * @return the index of the replacement record in the list.
+     */
+    public static int update(List<GasRecord> list, int location, GasRecord record) {
+    	
+    	// simple case: record stays at the same location in the list
+    	OdometerComparator comparator = new OdometerComparator();
+    	boolean afterPrevious = (location == 0) || 
+    			(comparator.compare(list.get(location-1),record) < 0);
+    	boolean beforeNext = (location == list.size()-1) || 
+    			(comparator.compare(record,list.get(location+1)) < 0);
+    	if (afterPrevious && beforeNext) {
+    		list.set(location,record);
+    		calculateMileage(list,location);
+    		return location;
+    	}
+    	
+    	// otherwise remove the old record and insert the new one
+    	remove(list,location);
+    	return insert(list,record);
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Removes a record from a List of GasRecords sorted by odometer value
+     * and re-calculates gas mileage for the affected records only.
+     * @param list - the GasRecord List (sorted by odometer value).
+     * @param location - the index of the record to remove.
+     * @return the removed record.
+     */
+    public static GasRecord remove(List<GasRecord> list, int location) {
+    	GasRecord record = list.remove(location);
+    	calculateMileage(list,location);
+    	return record;
+    }
+	
     /**
      * DESCRIPTION:
      * Locates a record in the list. 
@@ -0,0 +1,357 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+package com.github.wdkapps.fillup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * DESCRIPTION:
+ * The gas records for a vehicle, ordered by odometer value, keeping only 
+ * a window of decoded records in memory. The window
+ * is read from the gas log in the background and can be moved ahead of a 
+ * scrolling list via prefetch(). A Listener is notified each time the 
+ * window contents change. A MonthSectionIndex of the dates of all records
+ * is kept along with the window. Records are never read from the log on 
+ * the calling thread, so records outside the window are not available 
+ * until the Listener is notified (see peek()).
+ * <p>
+ * NOTE: not a java.util.List, since a record at a valid position may not 
+ * be available.
+ * <p>
+ * NOTE: 
+ * Mileage calculations are stored in the log database, so records in the 
+ * window have valid calculations without reading the entire log.
+ */
+public class GasRecordWindow {
+	
+	/// the maximum number of decoded records kept in memory
+	private static final int WINDOW_SIZE = 300;
+	
+	/// distance from the edge of the window that triggers a prefetch
+	private static final int PREFETCH_MARGIN = WINDOW_SIZE / 4;
+	
+	/**
+	 * DESCRIPTION:
+	 * Interface for notification that the window contents have changed.
+	 */
+	public interface Listener {
+		public void onRecordWindowChanged(GasRecordWindow window);
+	}
+	
+	/// the gas log containing the records
+	private final AsyncGasLog gaslog;
+
+	/// the vehicle to read records for
+	private final Vehicle vehicle;
+	
+	/// notified when the window contents change
+	private final Listener listener;
+	
+	/// the total number of records in the log for the vehicle
+	private int count;
+	
+	/// the position of the first record in the window
+	private int offset;
+	
+	/// the decoded records in the window
+	private List<GasRecord> window = new ArrayList<GasRecord>();
+	
+	/// identifies the most recent background read (older results are discarded)
+	private int serial;
+	
+	/// true while a background read is in progress
+	private boolean busy;
+	
+	/// index of all records by month
+	private MonthSectionIndex index = new MonthSectionIndex();
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of GasRecordWindow. The list is empty until 
+	 * a window of records has been read from the log via reload().
+	 * @param vehicle - the Vehicle to read records for.
+	 * @param listener - notified when the window contents change.
+	 */
+	public GasRecordWindow(Vehicle vehicle, Listener listener) {
+		this.gaslog = AsyncGasLog.getInstance();
+		this.vehicle = vehicle;
+		this.listener = listener;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads the record count and the records in the current window again. 
+	 * Call when the log data has changed.
+	 */
+	public void reload() {
+		reload(offset + (window.size() / 2));
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads the record count again and moves the window to contain a
+	 * specified position. Call when the log data has changed.
+	 * @param position - the position of the record to include in the window.
+	 */
+	public void reload(int position) {
+		reload(position,null);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads the record count again and moves the window to contain a
+	 * specified position. Call when the log data has changed.
+	 * @param position - the position of the record to include in the window.
+	 * @param callback - called once the window has been read (can be null).
+	 */
+	public void reload(int position, AsyncGasLog.Callback<GasRecordWindow> callback) {
+		reload(position,-1,callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Adds a record that has been added to the log to the index, then reads
+	 * the record count again and moves the window to contain the record.
+	 * @param position - the position of the added record.
+	 * @param record - the added GasRecord.
+	 * @param callback - called once the window has been read (can be null).
+	 */
+	public void insert(int position, GasRecord record, AsyncGasLog.Callback<GasRecordWindow> callback) {
+		index.insert(position,record.getDate());
+		reload(position,index.size(),callback);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Removes a record that has been deleted from the log from the index, 
+	 * then reads the record count and the records in the current window again.
+	 * @param position - the position of the deleted record.
+	 */
+	public void delete(int position) {
+		index.delete(position);
+		reload(offset + (window.size() / 2),index.size(),null);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the index of all records by month.
+	 * @return the MonthSectionIndex.
+	 */
+	public MonthSectionIndex getSectionIndex() {
+		return index;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads the record count again and moves the window to contain a
+	 * specified position. The index is read again only if the record 
+	 * count is not the expected value.
+	 * @param position - the position of the record to include in the window.
+	 * @param expected - the expected record count (-1 = read the index).
+	 * @param callback - called once the window has been read (can be null).
+	 */
+	private void reload(final int position, final int expected, final AsyncGasLog.Callback<GasRecordWindow> callback) {
+		final int id = ++serial;
+		busy = true;
+		gaslog.read(new Callable<Contents>() {
+			@Override
+			public Contents call() {
+				RecordRepository repository = RecordRepository.getInstance();
+				Contents contents = new Contents();
+				contents.count = repository.readRecordCount(vehicle);
+				contents.offset = getWindowOffset(position,contents.count);
+				contents.records = repository.readRecords(vehicle,contents.offset,WINDOW_SIZE);
+				if (contents.count != expected) {
+					contents.times = repository.readRecordTimes(vehicle);
+				}
+				return contents;
+			}
+		},new AsyncGasLog.Callback<Contents>() {
+			@Override
+			public void onResult(Contents contents) {
+				if (id != serial) return;
+				busy = false;
+				count = contents.count;
+				offset = contents.offset;
+				window = contents.records;
+				if (contents.times != null) {
+					index = new MonthSectionIndex(contents.times);
+				}
+				
+				// log may have been modified elsewhere
+				if (window.size() < Math.min(WINDOW_SIZE,count - offset)) {
+					count = offset + window.size();
+				}
+				
+				listener.onRecordWindowChanged(GasRecordWindow.this);
+				if (callback != null) {
+					callback.onResult(GasRecordWindow.this);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Moves the window ahead of a scrolling list in the background if a 
+	 * specified position is close to the edge of the current window.
+	 * @param position - the position of the record being displayed.
+	 */
+	public void prefetch(int position) {
+		
+		if (busy) return;
+		
+		int end = offset + window.size();
+		boolean nearStart = (offset > 0) && (position - offset < PREFETCH_MARGIN);
+		boolean nearEnd = (end < count) && (end - position < PREFETCH_MARGIN);
+		
+		if (nearStart || nearEnd) {
+			move(getWindowOffset(position,count),false);
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the number of records for the vehicle.
+	 * @return the number of records.
+	 */
+	public int size() {
+		return count;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Determines if there are no records for the vehicle.
+	 * @return true if there are no records.
+	 */
+	public boolean isEmpty() {
+		return (count == 0);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the record at the specified position if it is in the current 
+	 * window. Otherwise starts moving the window to the position in the 
+	 * background; the Listener is notified once the record is available.
+	 * @param location - the position of the record.
+	 * @return the GasRecord (null if not yet read from the log).
+	 */
+	public GasRecord peek(int location) {
+		checkLocation(location);
+		if (!isInWindow(location)) {
+			move(getWindowOffset(location,count),true);
+			return null;
+		}
+		return window.get(location - offset);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the records in the current window (already read from the log).
+	 * @return an unmodifiable List of GasRecords.
+	 */
+	public List<GasRecord> getWindow() {
+		return Collections.unmodifiableList(window);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads a window of records in the background, replacing the current
+	 * window. Ignored if a background read is already in progress.
+	 * @param start - the position of the first record to read.
+	 * @param notify - true to notify the Listener once the window is read.
+	 */
+	private void move(final int start, final boolean notify) {
+		
+		if (busy) return;
+		
+		final int id = ++serial;
+		busy = true;
+		gaslog.read(new Callable<List<GasRecord>>() {
+			@Override
+			public List<GasRecord> call() {
+				return RecordRepository.getInstance().readRecords(vehicle,start,WINDOW_SIZE);
+			}
+		},new AsyncGasLog.Callback<List<GasRecord>>() {
+			@Override
+			public void onResult(List<GasRecord> result) {
+				if (id != serial) return;
+				busy = false;
+				if (!result.isEmpty()) {
+					offset = start;
+					window = result;
+				}
+				if (notify) {
+					listener.onRecordWindowChanged(GasRecordWindow.this);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Determines if a specified position is within the current window.
+	 * @param location - the position of the record.
+	 * @return true if the record is in the window.
+	 */
+	private boolean isInWindow(int location) {
+		return (location >= offset) && (location < offset + window.size());
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Range checks a specified position.
+	 * @param location - the position of the record.
+	 * @throws IndexOutOfBoundsException if the position is not in the list.
+	 */
+	private void checkLocation(int location) {
+		if ((location < 0) || (location >= count)) {
+			throw new IndexOutOfBoundsException("size=" + count + " location=" + location);
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Determines the offset of a window centered on a specified position.
+	 * @param position - the position of the record to include in the window.
+	 * @param count - the total number of records.
+	 * @return the position of the first record in the window.
+	 */
+	private static int getWindowOffset(int position, int count) {
+		int start = Math.min(position,count - 1) - (WINDOW_SIZE / 2);
+		start = Math.min(start,count - WINDOW_SIZE);
+		return Math.max(start,0);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * The results of reading the record count and a window of records.
+	 */
+	private static class Contents {
+		int count;
+		int offset;
+		List<GasRecord> records;
+		long[] times;
+	}
+}
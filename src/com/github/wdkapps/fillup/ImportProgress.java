@@ -0,0 +1,222 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+package com.github.wdkapps.fillup;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * DESCRIPTION:
+ * Reports the progress and results of a CSV data import and allows the 
+ * import to be canceled. Values are updated by the background threads performing the 
+ * import. Each change is published to a Callback on the main (UI) thread;
+ * changes made while a previous one is still waiting to be delivered are
+ * combined, so the main thread is never flooded with updates.
+ */
+public class ImportProgress {
+
+	/// delivers progress to the main thread
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	/// receives progress (main thread, can be null)
+	private final AsyncGasLog.Callback<ImportProgress> callback;
+
+	/// true if an update has been posted but not yet delivered
+	private final AtomicBoolean posted = new AtomicBoolean();
+	
+	/// true if the import has been canceled
+	private volatile boolean canceled;
+	
+	/// number of CSV lines read and parsed
+	private volatile int lines;
+	
+	/// number of records written to the log
+	private volatile int records;
+	
+	/// number of records inserted, existing records updated, and 
+	/// duplicate records skipped
+	private volatile int inserted;
+	private volatile int updated;
+	private volatile int skipped;
+	
+	/// the CSV line number of the first error (0 = no error)
+	private volatile int errorLine;
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of ImportProgress.
+	 * @param callback - receives progress updates (main thread, can be null).
+	 */
+	public ImportProgress(AsyncGasLog.Callback<ImportProgress> callback) {
+		this.callback = callback;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Requests that the import be canceled. Records already written by the
+	 * import are rolled back.
+	 */
+	public void cancel() {
+		canceled = true;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Indicates whether the import has been canceled.
+	 * @return true if canceled.
+	 */
+	public boolean isCanceled() {
+		return canceled;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the number of CSV lines read and parsed.
+	 * @return the number of lines.
+	 */
+	public int getLineCount() {
+		return lines;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the number of records written to the log.
+	 * @return the number of records.
+	 */
+	public int getRecordCount() {
+		return records;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the number of records inserted into the log.
+	 * @return the number of records.
+	 */
+	public int getInsertedCount() {
+		return inserted;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the number of existing records updated with 
+	 * imported values.
+	 * @return the number of records.
+	 */
+	public int getUpdatedCount() {
+		return updated;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the number of imported records skipped (duplicate
+	 * odometer value, or same values as the existing record).
+	 * @return the number of records.
+	 */
+	public int getSkippedCount() {
+		return skipped;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the CSV line number of the first error.
+	 * @return the line number (0 = no error).
+	 */
+	public int getErrorLine() {
+		return errorLine;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Setter method for the number of CSV lines read and parsed.
+	 * @param lines - the number of lines.
+	 */
+	void setLineCount(int lines) {
+		this.lines = lines;
+		publish();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Setter method for the number of records written to the log.
+	 * @param records - the number of records.
+	 */
+	void setRecordCount(int records) {
+		this.records = records;
+		publish();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Setter method for the number of records inserted into the log.
+	 * @param count - the number of records.
+	 */
+	void setInsertedCount(int count) {
+		this.inserted = count;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Setter method for the number of existing records updated.
+	 * @param count - the number of records.
+	 */
+	void setUpdatedCount(int count) {
+		this.updated = count;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Setter method for the number of imported records skipped.
+	 * @param count - the number of records.
+	 */
+	void setSkippedCount(int count) {
+		this.skipped = count;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Setter method for the CSV line number of the first error.
+	 * @param line - the line number.
+	 */
+	void setErrorLine(int line) {
+		this.errorLine = line;
+		publish();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Posts the current progress to the callback on the main thread, unless
+	 * an update is already waiting to be delivered.
+	 */
+	private void publish() {
+		if (callback == null) return;
+		if (posted.compareAndSet(false,true)) {
+			handler.post(new Runnable() {
+				@Override
+				public void run() {
+					posted.set(false);
+					callback.onResult(ImportProgress.this);
+				}
+			});
+		}
+	}
+}
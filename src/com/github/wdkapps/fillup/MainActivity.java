@@ -19,11 +19,19 @@
 
 package com.github.wdkapps.fillup;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import android.app.Activity;
 import android.app.Dialog;
+import android.app.ProgressDialog;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
@@ -46,8 +54,17 @@ public class MainActivity
 extends Activity 
 implements VehicleDialog.Listener, ConfirmationDialog.Listener, View.OnClickListener {
 	
+	/// name of the binary backup file (stored in the download directory)
+	private static final String BACKUP_FILE = "FillUp.backup";
+	
+	/// name of the database snapshot file (stored in the download directory)
+	private static final String SNAPSHOT_FILE = "FillUp.db";
+	
+	/// name of the archive of all vehicles exported (stored in the download directory)
+	private static final String EXPORT_ALL_FILE = "FillUp.zip";
+	
 	/// the gas log
-	private GasLog gaslog;
+	private AsyncGasLog gaslog;
 	
 	/// a list of vehicles from the log
 	private List<Vehicle> vehicles;
@@ -64,6 +81,9 @@ implements VehicleDialog.Listener, ConfirmationDialog.Listener, View.OnClickList
 	/// an adapter to populate the spinner with vehicle names
 	private ArrayAdapter<Vehicle> adapter;
 	
+	/// displays the progress of an export of all vehicles (null if none)
+	private ProgressDialog exportDialog;
+	
     /**
      * DESCRIPTION
      * Called when the activity is starting.
@@ -103,26 +123,48 @@ implements VehicleDialog.Listener, ConfirmationDialog.Listener, View.OnClickList
         listViewsThatNeedVehicle.add(buttonViewStatistics);
 
         // create a log instance for use by this application
-        gaslog = GasLog.getInstance();
-        
-        // get a list of all vehicles currently documented in the log
-        vehicles = GasLog.getInstance().readAllVehicles();
+        gaslog = AsyncGasLog.getInstance();
         
         // create a drop down list for vehicle selection
+        vehicles = new ArrayList<Vehicle>();
         adapter = new ArrayAdapter<Vehicle>(this,android.R.layout.simple_spinner_item,vehicles);
         adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         spinnerVehicles = (Spinner)findViewById(R.id.spinnerVehicles);
         spinnerVehicles.setAdapter(adapter);
         updateVehiclesSpinnerState();
         
-        // if the activity is not being re-initialized (for example after screen rotate)
-        // start by adding a vehicle if there are none currently defined
-        if ((savedInstanceState == null) && vehicles.isEmpty()) {
-        	showDialog(DIALOG_ADD_VEHICLE_ID);
-        }
+        // determine if the activity is being re-initialized (for example after screen rotate)
+        final boolean restoring = (savedInstanceState != null);
+        final int position = restoring ? savedInstanceState.getInt("selectedPosition") : 0;
+        
+        // get a list of all vehicles currently documented in the log
+        gaslog.readAllVehicles(new AsyncGasLog.Callback<List<Vehicle>>() {
+        	@Override
+        	public void onResult(List<Vehicle> result) {
+        		setVehicles(result);
+        		setSelectedVehicle(position);
+        		
+        		// start by adding a vehicle if there are none currently defined
+        		if (!restoring && vehicles.isEmpty() && !isFinishing()) {
+        			showDialog(DIALOG_ADD_VEHICLE_ID);
+        		}
+        	}
+        });
         
     }
     
+    /**
+     * DESCRIPTION:
+     * Replaces the vehicles displayed in the "drop down list".
+     * @param list - the vehicles read from the log.
+     */
+    private void setVehicles(List<Vehicle> list) {
+    	vehicles.clear();
+    	vehicles.addAll(list);
+    	adapter.notifyDataSetChanged();
+    	updateVehiclesSpinnerState();
+    }
+    
     /**
      * DESCRIPTION:
      * Enable/disable the "drop down list" of vehicles and all
@@ -176,6 +218,38 @@ implements VehicleDialog.Listener, ConfirmationDialog.Listener, View.OnClickList
     		}
     		return true;
 
+    	case R.id.itemExportAll:
+    		exportAllData();
+    		return true;
+    		
+    	case R.id.itemBackup:
+    		backupData();
+    		return true;
+    		
+    	case R.id.itemRestore:
+    		if (!ExternalStorage.isReadable()) {
+    			Utilities.toast(this,getString(R.string.toast_external_storage_not_readable));
+    		} else if (!getBackupFile().exists()) {
+    			Utilities.toast(this,getString(R.string.toast_backup_not_found));
+    		} else {
+    			showDialog(DIALOG_CONFIRM_RESTORE_ID);
+    		}
+    		return true;
+    		
+    	case R.id.itemSnapshot:
+    		snapshotData();
+    		return true;
+    		
+    	case R.id.itemRestoreSnapshot:
+    		if (!ExternalStorage.isReadable()) {
+    			Utilities.toast(this,getString(R.string.toast_external_storage_not_readable));
+    		} else if (!getSnapshotFile().exists()) {
+    			Utilities.toast(this,getString(R.string.toast_backup_not_found));
+    		} else {
+    			showDialog(DIALOG_CONFIRM_RESTORE_SNAPSHOT_ID);
+    		}
+    		return true;
+
     	case R.id.itemHelp:
 			intent = new Intent(this, HtmlViewerActivity.class);
 			intent.putExtra(HtmlViewerActivity.URL,getString(R.string.url_help_html));
@@ -314,16 +388,24 @@ implements VehicleDialog.Listener, ConfirmationDialog.Listener, View.OnClickList
     	// get the selected vehicle
         if (getSelectedVehicle() == null) return;
 
-        // prepare input for GasRecordActivity
-    	GasRecord record = new GasRecord(selectedVehicle);
-        int current_odometer = gaslog.readCurrentOdometer(selectedVehicle);
-        
-        // start a GasRecordActivity to get a new gas record for the vehicle
-    	Intent intent = new Intent(this, GasRecordActivity.class);
-    	intent.putExtra(GasRecordActivity.RECORD, record);
-        intent.putExtra(GasRecordActivity.CURRENT_ODOMETER, current_odometer);
-        intent.putExtra(GasRecordActivity.TANK_SIZE, selectedVehicle.getTankSize());
-    	startActivityForResult(intent,GET_GAS_REQUEST);
+        // read the current odometer value for the vehicle from the log
+        final Vehicle vehicle = selectedVehicle;
+        gaslog.readCurrentOdometer(vehicle,new AsyncGasLog.Callback<Integer>() {
+        	@Override
+        	public void onResult(Integer current_odometer) {
+        		if (isFinishing()) return;
+        		
+        		// prepare input for GasRecordActivity
+        		GasRecord record = new GasRecord(vehicle);
+
+        		// start a GasRecordActivity to get a new gas record for the vehicle
+        		Intent intent = new Intent(MainActivity.this, GasRecordActivity.class);
+        		intent.putExtra(GasRecordActivity.RECORD, record);
+        		intent.putExtra(GasRecordActivity.CURRENT_ODOMETER, current_odometer.intValue());
+        		intent.putExtra(GasRecordActivity.TANK_SIZE, vehicle.getTankSize());
+        		startActivityForResult(intent,GET_GAS_REQUEST);
+        	}
+        });
     }
     
     /**
@@ -362,26 +444,16 @@ implements VehicleDialog.Listener, ConfirmationDialog.Listener, View.OnClickList
      * DESCRIPTION:
      * Adds a new vehicle to the log.
      * @param vehicle - the new Vehicle.
-     * @return boolean - true if successful.
      */
-    protected boolean addVehicle(Vehicle vehicle) {
+    protected void addVehicle(final Vehicle vehicle) {
 
-    	// attempt to add the vehicle to the log
-    	if (!gaslog.createVehicle(vehicle)) {
-    		Utilities.toast(this,getString(R.string.toast_add_failed));
-    		return false;
-    	}
-    	
-    	// read updated list of vehicles from the log
-    	vehicles.clear();
-    	vehicles.addAll(gaslog.readAllVehicles());
-        adapter.notifyDataSetChanged();
-    	
-        // select the new vehicle by its name
-        setSelectedVehicle(vehicle.getName());
-
-        // success
-        return true;
+    	// attempt to add the vehicle to the log, then select it by its name
+    	changeVehicles(new Callable<Boolean>() {
+    		@Override
+    		public Boolean call() {
+    			return GasLog.getInstance().createVehicle(vehicle);
+    		}
+    	},R.string.toast_add_failed,vehicle.getName());
     }
     
     /**
@@ -389,52 +461,291 @@ implements VehicleDialog.Listener, ConfirmationDialog.Listener, View.OnClickList
      * Updates data for a specified vehicle in the log.
      *
      * @param vehicle - the edited vehicle.
-     * @return boolean - true if successful.
      */
-    protected boolean editVehicle(Vehicle vehicle) {
+    protected void editVehicle(final Vehicle vehicle) {
     	
-    	// attempt to update the vehicle data in the log
-    	if (!gaslog.updateVehicle(vehicle)) {
-    		Utilities.toast(this,getString(R.string.toast_edit_failed));
-    		return false;
-    	}
-
-    	// read updated list of vehicles from the log
-    	vehicles.clear();
-    	vehicles.addAll(gaslog.readAllVehicles());
-        adapter.notifyDataSetChanged();
-        
-        // select the edited vehicle by its new name
-        setSelectedVehicle(vehicle.getName());
-        
-        // success
-        return true;
+    	// attempt to update the vehicle data in the log, then select it by its new name
+    	changeVehicles(new Callable<Boolean>() {
+    		@Override
+    		public Boolean call() {
+    			return GasLog.getInstance().updateVehicle(vehicle);
+    		}
+    	},R.string.toast_edit_failed,vehicle.getName());
     }
     
     /**
      * DESCRIPTION:
      * Removes the selected vehicle and all its gas records from
      * the log.
-     * @return boolean - true if successful.
      */
-    protected boolean deleteVehicle() {
+    protected void deleteVehicle() {
 
-    	// attempt to update the vehicle data in the log
-    	if (!gaslog.deleteVehicle(selectedVehicle)) {
-    		Utilities.toast(this,getString(R.string.toast_delete_failed));
-    		return false;
+    	// attempt to delete the vehicle from the log, then select the first vehicle
+    	final Vehicle vehicle = selectedVehicle;
+    	changeVehicles(new Callable<Boolean>() {
+    		@Override
+    		public Boolean call() {
+    			return GasLog.getInstance().deleteVehicle(vehicle);
+    		}
+    	},R.string.toast_delete_failed,null);
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Performs a change to the vehicles in the log in the background, then
+     * displays the updated list of vehicles read from the log.
+     * @param change - the change to perform (returns true if successful).
+     * @param failed - resource id of the message to display if the change fails.
+     * @param name - the name of the vehicle to select (null = first vehicle).
+     */
+    private void changeVehicles(final Callable<Boolean> change, final int failed, final String name) {
+    	gaslog.write(new Callable<List<Vehicle>>() {
+    		@Override
+    		public List<Vehicle> call() throws Exception {
+    			return change.call() ? GasLog.getInstance().readAllVehicles() : null;
+    		}
+    	},new AsyncGasLog.Callback<List<Vehicle>>() {
+    		@Override
+    		public void onResult(List<Vehicle> result) {
+    			if (result == null) {
+    				Utilities.toast(MainActivity.this,getString(failed));
+    				return;
+    			}
+    			setVehicles(result);
+    			if (name == null) {
+    				setSelectedVehicle(0);
+    			} else {
+    				setSelectedVehicle(name);
+    			}
+    		}
+    	});
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Returns the archive file for an export of all vehicles.
+     * @return the File.
+     */
+    protected File getExportAllFile() {
+    	File dir = ExternalStorage.getPublicDownloadDirectory();
+    	return new File(dir,EXPORT_ALL_FILE);
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Exports the log data for all vehicles to a ZIP archive of ASCII CSV
+     * files, displaying the progress of each vehicle being exported.
+     */
+    protected void exportAllData() {
+    	
+    	if (!ExternalStorage.isWritable()) {
+    		Utilities.toast(this,getString(R.string.toast_external_storage_not_writable));
+    		return;
     	}
     	
-    	// read updated list of vehicles from the log
-    	vehicles.clear();
-    	vehicles.addAll(gaslog.readAllVehicles());
-        adapter.notifyDataSetChanged();
-        
-    	// select the first vehicle in the list
-       	setSelectedVehicle(0);
-
-        // success
-        return true;
+    	// display progress, allowing the user to cancel the export
+    	final ExportProgress progress = new ExportProgress(new AsyncGasLog.Callback<ExportProgress>() {
+    		@Override
+    		public void onResult(ExportProgress progress) {
+    			if (exportDialog != null) {
+    				exportDialog.setMax(progress.getVehicleCount());
+    				exportDialog.setProgress(progress.getCompletedCount());
+    				exportDialog.setMessage(getExportMessage(progress));
+    			}
+    		}
+    	});
+    	exportDialog = new ProgressDialog(this);
+    	exportDialog.setTitle(getString(R.string.export_label));
+    	exportDialog.setMessage(getExportMessage(progress));
+    	exportDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+    	exportDialog.setCancelable(false);
+    	exportDialog.setButton(DialogInterface.BUTTON_NEGATIVE,getString(R.string.cancel_label),
+    			new DialogInterface.OnClickListener() {
+    		@Override
+    		public void onClick(DialogInterface dialog, int which) {
+    			progress.cancel();
+    		}
+    	});
+    	exportDialog.show();
+    	
+    	final File file = getExportAllFile();
+    	gaslog.exportAllData(file,progress,new AsyncGasLog.Callback<Boolean>() {
+    		@Override
+    		public void onResult(Boolean success) {
+    			dismissExportDialog();
+    			if (progress.isCanceled()) {
+    				Utilities.toast(MainActivity.this,getString(R.string.toast_canceled));
+    			} else if (!success) {
+    				Utilities.toast(MainActivity.this,getString(R.string.toast_export_failed));
+    			} else {
+    				Utilities.toast(MainActivity.this,getString(R.string.toast_export_complete));
+    				Utilities.toast(MainActivity.this,file.getAbsolutePath());
+    			}
+    		}
+    	});
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Returns a message listing the vehicles currently being exported.
+     * @param progress - the export progress.
+     * @return the message.
+     */
+    private String getExportMessage(ExportProgress progress) {
+    	String format = getString(R.string.message_export_progress);
+    	StringBuilder message = new StringBuilder();
+    	for (Vehicle vehicle : progress.getActiveVehicles()) {
+    		if (message.length() > 0) message.append('\n');
+    		message.append(String.format(format,vehicle.getName(),progress.getRecordCount(vehicle)));
+    	}
+    	return message.toString();
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Dismisses the export progress dialog (if displayed).
+     */
+    private void dismissExportDialog() {
+    	if (exportDialog != null) {
+    		exportDialog.dismiss();
+    		exportDialog = null;
+    	}
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Returns the binary backup file for the log.
+     * @return the File.
+     */
+    protected File getBackupFile() {
+    	File dir = ExternalStorage.getPublicDownloadDirectory();
+    	return new File(dir,BACKUP_FILE);
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Copies all vehicles and records in the log to the backup file.
+     */
+    protected void backupData() {
+    	
+    	if (!ExternalStorage.isWritable()) {
+    		Utilities.toast(this,getString(R.string.toast_external_storage_not_writable));
+    		return;
+    	}
+    	
+    	final File file = getBackupFile();
+    	gaslog.backupData(file,new AsyncGasLog.Callback<Boolean>() {
+    		@Override
+    		public void onResult(Boolean success) {
+    			if (!success) {
+    				Utilities.toast(MainActivity.this,getString(R.string.toast_backup_failed));
+    				return;
+    			}
+    			String format = getString(R.string.toast_backup_complete);
+    			Utilities.toast(MainActivity.this,String.format(format,file.getAbsolutePath()));
+    		}
+    	});
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Replaces all vehicles and records in the log with the contents of the
+     * backup file, then displays the restored vehicles.
+     */
+    protected void restoreData() {
+    	
+    	InputStream file;
+    	try {
+    		file = new FileInputStream(getBackupFile());
+    	} catch (FileNotFoundException e) {
+    		Utilities.toast(this,getString(R.string.toast_backup_not_found));
+    		return;
+    	}
+    	
+    	gaslog.restoreData(file,new AsyncGasLog.Callback<Boolean>() {
+    		@Override
+    		public void onResult(Boolean success) {
+    			int message = success ? R.string.toast_restore_complete : R.string.toast_restore_failed;
+    			Utilities.toast(MainActivity.this,getString(message));
+    		}
+    	});
+    	
+    	// display the vehicles in the log after the restore
+    	gaslog.readAllVehicles(new AsyncGasLog.Callback<List<Vehicle>>() {
+    		@Override
+    		public void onResult(List<Vehicle> result) {
+    			setVehicles(result);
+    			setSelectedVehicle(0);
+    		}
+    	});
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Returns the database snapshot file for the log.
+     * @return the File.
+     */
+    protected File getSnapshotFile() {
+    	File dir = ExternalStorage.getPublicDownloadDirectory();
+    	return new File(dir,SNAPSHOT_FILE);
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Copies the log database file to the snapshot file.
+     */
+    protected void snapshotData() {
+    	
+    	if (!ExternalStorage.isWritable()) {
+    		Utilities.toast(this,getString(R.string.toast_external_storage_not_writable));
+    		return;
+    	}
+    	
+    	final File file = getSnapshotFile();
+    	gaslog.snapshotData(file,new AsyncGasLog.Callback<Boolean>() {
+    		@Override
+    		public void onResult(Boolean success) {
+    			if (!success) {
+    				Utilities.toast(MainActivity.this,getString(R.string.toast_backup_failed));
+    				return;
+    			}
+    			String format = getString(R.string.toast_backup_complete);
+    			Utilities.toast(MainActivity.this,String.format(format,file.getAbsolutePath()));
+    		}
+    	});
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Replaces the log database file with the snapshot file, then restarts
+     * to display the restored vehicles.
+     */
+    protected void restoreSnapshot() {
+    	
+    	gaslog.restoreSnapshot(getSnapshotFile(),new AsyncGasLog.Callback<Boolean>() {
+    		@Override
+    		public void onResult(Boolean success) {
+    			int message = success ? R.string.toast_restore_complete : R.string.toast_restore_failed;
+    			Utilities.toast(MainActivity.this,getString(message));
+    			if (success) {
+    				restartActivities();
+    			}
+    		}
+    	});
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Restarts this Activity to display the vehicles in the log after it 
+     * has been replaced. Any other activities of the application are 
+     * finished, since they hold vehicles and records read from the 
+     * replaced log.
+     */
+    private void restartActivities() {
+    	if (isFinishing()) return;
+    	Intent intent = new Intent(this,MainActivity.class);
+    	intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+    	startActivity(intent);
     }
     
     /**
@@ -448,6 +759,8 @@ implements VehicleDialog.Listener, ConfirmationDialog.Listener, View.OnClickList
     protected static final int DIALOG_SHOW_CALCULATION_ID = 4;
     protected static final int DIALOG_SHOW_ESTIMATE_ID = 5;
     protected static final int DIALOG_TANK_NEVER_FILLED_ID = 6;
+    protected static final int DIALOG_CONFIRM_RESTORE_ID = 7;
+    protected static final int DIALOG_CONFIRM_RESTORE_SNAPSHOT_ID = 8;
 
     /**
      * DESCRIPTION:
@@ -489,6 +802,18 @@ implements VehicleDialog.Listener, ConfirmationDialog.Listener, View.OnClickList
    			dialog = TankNeverFilledDialog.create(this,id);
             break;
             
+    	case DIALOG_CONFIRM_RESTORE_ID:
+    		title = getString(R.string.title_confirm_restore);
+    		message = String.format(getString(R.string.message_confirm_restore),getBackupFile().getName());
+   			dialog = ConfirmationDialog.create(this,this,id,title,message);
+        	break;
+            
+    	case DIALOG_CONFIRM_RESTORE_SNAPSHOT_ID:
+    		title = getString(R.string.title_confirm_restore);
+    		message = String.format(getString(R.string.message_confirm_restore),getSnapshotFile().getName());
+   			dialog = ConfirmationDialog.create(this,this,id,title,message);
+        	break;
+            
         default:
         	Utilities.toast(this,"Invalid dialog id.");
     	}
@@ -543,6 +868,14 @@ implements VehicleDialog.Listener, ConfirmationDialog.Listener, View.OnClickList
 			deleteVehicle();
 			break;
 			
+		case DIALOG_CONFIRM_RESTORE_ID:
+			restoreData();
+			break;
+			
+		case DIALOG_CONFIRM_RESTORE_SNAPSHOT_ID:
+			restoreSnapshot();
+			break;
+			
 		default:
 			Utilities.toast(this,"Invalid dialog id.");
 		}
@@ -553,13 +886,41 @@ implements VehicleDialog.Listener, ConfirmationDialog.Listener, View.OnClickList
      * Adds a gas record to the log for the selected vehicle.
      * @param record - the GasRecord data entered by the user.
      */
-    protected void addGasRecord(GasRecord record) {
+    protected void addGasRecord(final GasRecord record) {
+    	
+    	final Vehicle vehicle = selectedVehicle;
+    	
+    	gaslog.write(new Callable<List<GasRecord>>() {
+    		@Override
+    		public List<GasRecord> call() {
+    			GasLog log = GasLog.getInstance();
 
-    	// get a list of records from the log before adding new record
-		List<GasRecord> list = gaslog.readAllRecords(selectedVehicle);
+    			// get a list of records from the log before adding new record
+    			List<GasRecord> list = log.readAllRecords(vehicle);
+    			
+    			// attempt to add the new record to the log
+    			return log.createRecord(vehicle,record) ? list : null;
+    		}
+    	},new AsyncGasLog.Callback<List<GasRecord>>() {
+    		@Override
+    		public void onResult(List<GasRecord> list) {
+    			if (!isFinishing()) {
+    				onAddGasRecordResult(vehicle,record,list);
+    			}
+    		}
+    	});
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Called when an attempt to add a gas record to the log has finished.
+     * @param vehicle - the Vehicle the record was added for.
+     * @param record - the GasRecord data entered by the user.
+     * @param list - the records in the log before the record was added (null if failed).
+     */
+    private void onAddGasRecordResult(Vehicle vehicle, GasRecord record, List<GasRecord> list) {
     	
-		// attempt to add the new record to the log
-    	if (!gaslog.createRecord(selectedVehicle,record)) { 
+    	if (list == null) { 
 			Utilities.toast(this,getString(R.string.toast_error_saving_data));
     		return;
 		}
@@ -573,14 +934,8 @@ implements VehicleDialog.Listener, ConfirmationDialog.Listener, View.OnClickList
     		return;
     	}
     	
-    	// add the new record to the list
-    	list.add(record);
-    	
-    	// recalculate mileage
-    	GasRecordList.calculateMileage(list);
-    	
-    	// find the new location of the record in the list (after sort)
-    	int location = GasRecordList.find(list,record);
+    	// add the new record to the list, recalculating only the affected mileage
+    	int location = GasRecordList.insert(list,record);
 			
     	// display mileage calculation if possible
     	if (MileageCalculationDialog.isDisplayable(record)) {
@@ -590,8 +945,8 @@ implements VehicleDialog.Listener, ConfirmationDialog.Listener, View.OnClickList
     	} 
 
     	// display mileage estimate if possible
-    	if (MileageEstimateDialog.isDisplayable(selectedVehicle,list,location)) {
-    		MileageEstimateDialog.init(selectedVehicle,list,location);
+    	if (MileageEstimateDialog.isDisplayable(vehicle,list,location)) {
+    		MileageEstimateDialog.init(vehicle,list,location);
     		showDialog(DIALOG_SHOW_ESTIMATE_ID);
     	} 
     
@@ -642,6 +997,7 @@ implements VehicleDialog.Listener, ConfirmationDialog.Listener, View.OnClickList
 	protected void onSaveInstanceState(Bundle outState) {
 		super.onSaveInstanceState(outState);
 		outState.putSerializable("selectedVehicle", selectedVehicle);
+		outState.putInt("selectedPosition", spinnerVehicles.getSelectedItemPosition());
 	}
 
 	/**
@@ -654,5 +1010,17 @@ implements VehicleDialog.Listener, ConfirmationDialog.Listener, View.OnClickList
 		super.onRestoreInstanceState(savedInstanceState);
 		selectedVehicle = (Vehicle)savedInstanceState.getSerializable("selectedVehicle");
 	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Called when the activity is being destroyed. An export in progress
+	 * continues in the background, but its progress is no longer displayed.
+	 * @see android.app.Activity#onDestroy()
+	 */
+	@Override
+	protected void onDestroy() {
+		dismissExportDialog();
+		super.onDestroy();
+	}
 
 }
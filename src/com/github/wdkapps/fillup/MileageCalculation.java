@@ -66,6 +66,23 @@ public class MileageCalculation implements Serializable {
 		this.units = units;
 	}
 	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of MileageCalculation from previously 
+	 * calculated values (as stored in the log database).
+	 *
+	 * @param startOdometer - odometer value for the previous full tank of gas.
+	 * @param endOdometer - odometer value for the current full tank of gas.
+	 * @param gasolineUsed - amount of gasoline used between fill ups.
+	 * @param units - the Units of measurement to use for calculations.
+	 */
+	public MileageCalculation(int startOdometer, int endOdometer, float gasolineUsed, Units units) {
+		this.startOdometer = startOdometer;
+		this.endOdometer = endOdometer;
+		this.gasolineUsed = gasolineUsed;
+		this.units = units;
+	}
+	
 	/**
 	 * DESCRIPTION:
 	 * Adds a gas record to the set of records used for calculation.
@@ -101,8 +118,19 @@ public class MileageCalculation implements Serializable {
 	 * @return float - calculated fuel efficiency (mileage) 
 	 */
 	public float getMileage() {
+		return getMileage(getDistanceDriven(),gasolineUsed,units);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Calculates the quantity of gasoline consumed per distance driven.
+	 * @param distance - distance driven.
+	 * @param gasolineUsed - amount of gasoline used.
+	 * @param units - the Units of measurement for the result.
+	 * @return float - calculated fuel efficiency (mileage) 
+	 */
+	static float getMileage(int distance, float gasolineUsed, Units units) {
 		float mileage = 0;
-		int distance = getDistanceDriven();
 		
 		// avoid division by zero!
 		if ((gasolineUsed > 0) && (distance > 0)) {
@@ -139,13 +167,35 @@ public class MileageCalculation implements Serializable {
 		return mileage;
 	}
 	
+	/**
+	 * DESCRIPTION:
+	 * Converts a ratio of distance driven per quantity of gasoline used
+	 * (as calculated from the odometer and gasoline values recorded) to
+	 * a fuel efficiency (mileage) in the specified units.
+	 * @param ratio - distance driven per quantity of gasoline used (must be > 0).
+	 * @param units - the Units of measurement for the result.
+	 * @return double - fuel efficiency (mileage)
+	 */
+	static double getMileage(double ratio, Units units) {
+		switch (units.getValue()) {
+		case Units.LITERS_PER_100_KILOMETERS:
+			return 100d/ratio;
+		case Units.UK_MPG_MILES_LITERS:
+			return ratio/IMPERIAL_GALLONS_PER_LITER;
+		case Units.UK_MPG_KILOMETERS_LITERS:
+			return (ratio * MILES_PER_KILOMETER)/IMPERIAL_GALLONS_PER_LITER;
+		default:
+			return ratio;
+		}
+	}
+	
 	/**
 	 * DESCRIPTION:
 	 * Returns quantity of gasoline used as a formatted String.
 	 * @return String - quantity of gas used.
 	 */
 	public String getGasolineUsedString() {
-		return String.format(App.getLocale(),"%.3f", getGasolineUsed());
+		return ValueFormatter.getInstance().formatFixed(getGasolineUsed(),3);
 	}
 	
 	/**
@@ -154,7 +204,7 @@ public class MileageCalculation implements Serializable {
 	 * @return String - calculated gas mileage
 	 */
 	public String getMileageString() {
-		return String.format(App.getLocale(),"%.2f", getMileage());
+		return ValueFormatter.getInstance().formatFixed(getMileage(),2);
 	}
 	
 	/**
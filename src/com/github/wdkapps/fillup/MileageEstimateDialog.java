@@ -68,11 +68,6 @@ public class MileageEstimateDialog {
 	 */
 	public static boolean isDisplayable(Vehicle _vehicle, List<GasRecord> _records, int location) {
 		
-		// need valid vehicle tank size for estimates
-		if ((_vehicle == null) || (_vehicle.getTankSize() <= 0.0f)) {  
-			return false;
-		}
-
 		// need at least 2 gas records...the record being evaluated and a previous fill up
 		if ((_records == null) || (_records.size() < 2)) {
 			return false;
@@ -83,8 +78,8 @@ public class MileageEstimateDialog {
 			return false;
 		}
 		
-		// the record being evaluated should not be a full tank
-		if (_records.get(location).isFullTank()) { 
+		// check the vehicle and the record being evaluated
+		if (!isEstimable(_vehicle, _records.get(location), location)) {
 			return false;
 		}
 
@@ -97,6 +92,31 @@ public class MileageEstimateDialog {
 		return true;
 	}
 	
+	/**
+	 * DESCRIPTION:
+	 * Determines if mileage can be estimated for a specific gas record, 
+	 * without searching the records for a previous full tank. 
+	 * @param _vehicle - the Vehicle to calculate estimates for.
+	 * @param record - the gas record to estimate mileage for.
+	 * @param location - the index of the gas record in the odometer ordered list of records.
+	 * @return true if the vehicle and record allow an estimate, false otherwise. 
+	 */
+	public static boolean isEstimable(Vehicle _vehicle, GasRecord record, int location) {
+		
+		// need valid vehicle tank size for estimates
+		if ((_vehicle == null) || (_vehicle.getTankSize() <= 0.0f)) {  
+			return false;
+		}
+		
+		// a previous fill up must be able to exist
+		if (location < 1) {
+			return false;
+		}
+		
+		// the record being evaluated should not be a full tank
+		return !record.isFullTank();
+	}
+	
 	/**
 	 * DESCRIPTION:
 	 * Initializes the data required to perform mileage estimate calculations. 
@@ -269,10 +289,8 @@ public class MileageEstimateDialog {
 		estimate.setFullTank(true);
 		
 		// replace saved record with the estimate at the end of the list
-		records.set(end,estimate);
-		
-		// calculate estimated mileage
-		GasRecordList.calculateMileage(records);
+		// and calculate estimated mileage (for the estimate's segment only)
+		GasRecordList.update(records,end,estimate);
 		
 		// restore the real record to the list
 		records.set(end,record);
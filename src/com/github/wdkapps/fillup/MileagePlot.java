@@ -21,8 +21,6 @@ package com.github.wdkapps.fillup;
 
 import java.text.DecimalFormat;
 import java.text.Format;
-import java.util.LinkedList;
-import java.util.List;
 
 import com.androidplot.xy.XYSeries;
 import com.androidplot.util.PaintUtils;
@@ -31,7 +29,6 @@ import com.androidplot.xy.BoundaryMode;
 import com.androidplot.xy.LineAndPointFormatter;
 import com.androidplot.xy.PointLabelFormatter;
 import com.androidplot.xy.PointLabeler;
-import com.androidplot.xy.SimpleXYSeries;
 import com.androidplot.xy.XYPlot;
 import com.androidplot.xy.XYStepMode;
 
@@ -100,6 +97,14 @@ public class MileagePlot implements OnSharedPreferenceChangeListener {
     /// formatter for y-axis labels
 	private static final Format ylabels = new DecimalFormat("###0.0");
 
+    /**
+     * DESCRIPTION:
+     * Draws the plot again after the data to plot has been read from the log.
+     */
+    public void onDataChanged() {
+    	redrawPlot();
+    }
+    
     /**
      * DESCRIPTION:
      * Creates the graph.
@@ -286,86 +291,49 @@ public class MileagePlot implements OnSharedPreferenceChangeListener {
     /**
      * DESCRIPTION:
      * Obtains (x,y) values from the current data set for plotting. Also
-     * calculates the average y-value for the series.
-     * @return a SimpleXYSeries instance containing (x,y) values to plot.
+     * calculates the average y-value for the series (from all of the data,
+     * before the series is downsampled for display).
+     * @return an XYSeries instance containing (x,y) values to plot.
      */
-    private SimpleXYSeries getPlotSeries() {
+    private XYSeries getPlotSeries() {
     	
     	final String tag = TAG + ".getPlotSeries()";
     	
-    	// get plot date range from preferences
-    	range = new PlotDateRange(activity,Settings.KEY_PLOT_DATE_RANGE); 
-
-    	// create lists of x-axis, and y-axis numbers to plot
-    	List<Number> xNumbers = new LinkedList<Number>();
-    	List<Number> yNumbers = new LinkedList<Number>();
-
-    	// get numbers to plot from gas record data, where (x,y) is:
+    	// get the mileage calculations to plot, where (x,y) is:
     	// x = time in milliseconds (from date) plus an index to avoid duplicate values
     	// y = calculated mileage at that date
-    	float sumy = 0;
-    	miny = Float.MAX_VALUE; 
-    	maxy = Float.MIN_VALUE;
-    	minx = Long.MAX_VALUE; 
-    	maxx = Long.MIN_VALUE;
-    	for (GasRecord record : PlotActivity.records) {
-    		if (record.hasCalculation() && 
-    			!record.isCalculationHidden() && 
-    			range.contains(record.getDate())) {
-    			
-    			long x = record.getDate().getTime() + (long)xNumbers.size();
-    			float y = record.getCalculation().getMileage();
-   				Log.d(tag,"date="+record.getDateString()+" x="+x+" y="+y);
-    			minx = Math.min(minx, x);
-    			maxx = Math.max(maxx, x);
-    			miny = Math.min(miny, y);
-    			maxy = Math.max(maxy, y);
-   				xNumbers.add(x);
-   				yNumbers.add(y);
-   				sumy += y;
-    		}
-    	}
-    	
-    	// adjust min/max values if no data
-    	if (xNumbers.isEmpty()) minx = maxx = 0;
-    	if (yNumbers.isEmpty()) miny = maxy = 0;
-    	
-    	// calculate average for the series
-    	average = 0;
-    	if (!yNumbers.isEmpty()) {
-    		average = sumy / yNumbers.size();
-    	}
+    	PlotData.Series series = PlotActivity.data.getMileage();
+    	range = PlotActivity.data.getRange();
+    	minx = series.getMinX();
+    	maxx = series.getMaxX();
+    	miny = (float)series.getMinY();
+    	maxy = (float)series.getMaxY();
+    	average = (float)series.getAverage();
 
     	Log.d(tag,"minx="+minx+" maxx="+maxx);
     	Log.d(tag,"miny="+miny+" maxy="+maxy);
-    	Log.d(tag,"sumy="+sumy+" size="+yNumbers.size()+" average="+average);
-    	
+    	Log.d(tag,"sumy="+series.getSum()+" size="+series.size()+" average="+average);
+
         // create a new series from the x and y axis numbers
-    	String title = "";
-        return new SimpleXYSeries(xNumbers,yNumbers,title);
+        // (reduced to the level of detail that can be displayed)
+    	int maxPoints = PlotDownsampler.getMaxPoints(plot);
+        return PlotDownsampler.createSeries(series.getValues(),maxPoints);
     }
 
     /**
      * DESCRIPTION:
      * Obtains (x,y) values for a line reflecting the average value
      * for the current data set.
-     * @return a SimpleXYSeries instance containing (x,y) values to plot.
+     * @return an XYSeries instance containing (x,y) values to plot.
      */
-    private SimpleXYSeries getAverageSeries() {
+    private XYSeries getAverageSeries() {
     	
-    	// create lists of x-axis, and y-axis numbers to plot
-    	List<Number> xNumbers = new LinkedList<Number>();
-    	List<Number> yNumbers = new LinkedList<Number>();
-
     	// line at average, across the x-axis
-    	xNumbers.add(lowerboundx);
-    	yNumbers.add(average);
-    	xNumbers.add(upperboundx);
-    	yNumbers.add(average);
-
-    	// create a new series from the x and y axis numbers
     	String title = "";
-        return new SimpleXYSeries(xNumbers,yNumbers,title);
+    	ArrayXYSeries series = new ArrayXYSeries(2,title);
+    	series.add(lowerboundx,(float)average);
+    	series.add(upperboundx,(float)average);
+        return series;
     }
 
 	/**
@@ -376,11 +344,9 @@ public class MileagePlot implements OnSharedPreferenceChangeListener {
 	@Override
 	public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
 		
-		if (key.equals(Settings.KEY_PLOT_DATE_RANGE)) {
-			// plot date range changed
-			redrawPlot();
-		} 
-			
+		// note: a plot date range or units change is drawn once the plot
+		// data has been derived again (see onDataChanged())
+		
 		if (key.equals(Settings.KEY_PLOT_FONT_SIZE)) {
 			// plot font size changed
 			redrawPlot();
@@ -391,11 +357,8 @@ public class MileagePlot implements OnSharedPreferenceChangeListener {
 	        // get new units of measurement
 	        units = new Units(Settings.KEY_UNITS);
 	        
-	        // update the plot to reflect new units
+	        // update the plot labels to reflect new units
 	        plot.setRangeLabel(units.getMileageLabel());
-
-	        // redraw the plot
-			redrawPlot();
 		}
 
 	}
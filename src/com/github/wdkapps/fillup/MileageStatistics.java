@@ -0,0 +1,228 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+package com.github.wdkapps.fillup;
+
+/**
+ * DESCRIPTION:
+ * Accumulates statistics (minimum, maximum, average) for a set of mileage 
+ * calculations. The values are accumulated as distance driven per quantity
+ * of gasoline used so that they do not depend on the units of measurement
+ * and can be stored in the log. Mileage values in specific units are
+ * derived from the accumulated values on request.
+ */
+public class MileageStatistics {
+
+	/// number of mileage calculations
+	private int count;
+	
+	/// number of calculations with no distance or gasoline (mileage = 0)
+	private int zeros;
+	
+	/// minimum distance per quantity of gasoline 
+	private double minimum;
+	
+	/// maximum distance per quantity of gasoline 
+	private double maximum;
+	
+	/// sum of distance per quantity of gasoline
+	private double sum;
+	
+	/// sum of quantity of gasoline per distance
+	private double inverseSum;
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an empty instance of MileageStatistics.
+	 */
+	public MileageStatistics() {
+		this(0,0,Double.MAX_VALUE,0d,0d,0d);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of MileageStatistics from previously
+	 * accumulated values (as stored in the log database).
+	 * @param count - number of mileage calculations.
+	 * @param zeros - number of calculations with no distance or gasoline.
+	 * @param minimum - minimum distance per quantity of gasoline.
+	 * @param maximum - maximum distance per quantity of gasoline.
+	 * @param sum - sum of distance per quantity of gasoline.
+	 * @param inverseSum - sum of quantity of gasoline per distance.
+	 */
+	public MileageStatistics(int count, int zeros, double minimum, double maximum, double sum, double inverseSum) {
+		this.count = count;
+		this.zeros = zeros;
+		this.minimum = minimum;
+		this.maximum = maximum;
+		this.sum = sum;
+		this.inverseSum = inverseSum;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Adds a mileage calculation to the statistics.
+	 * @param calculation - the MileageCalculation to add.
+	 */
+	public void add(MileageCalculation calculation) {
+		add(calculation.getDistanceDriven(),calculation.getGasolineUsed());
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Adds a mileage calculation to the statistics.
+	 * @param distance - distance driven.
+	 * @param gasoline - quantity of gasoline used.
+	 */
+	public void add(int distance, float gasoline) {
+		count++;
+		if ((distance > 0) && (gasoline > 0)) {
+			double ratio = (double)distance/gasoline;
+			minimum = Math.min(minimum,ratio);
+			maximum = Math.max(maximum,ratio);
+			sum += ratio;
+			inverseSum += 1d/ratio;
+		} else {
+			zeros++;
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Appends the values of another instance to this instance, such that
+	 * this instance now reflects the statistics for both.
+	 * @param that - the MileageStatistics to append.
+	 */
+	public void append(MileageStatistics that) {
+		this.count += that.count;
+		this.zeros += that.zeros;
+		this.minimum = Math.min(this.minimum,that.minimum);
+		this.maximum = Math.max(this.maximum,that.maximum);
+		this.sum += that.sum;
+		this.inverseSum += that.inverseSum;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Determines if mileage is expressed as gasoline used per distance 
+	 * (lower value is better) for specified units of measurement.
+	 * @param units - the Units of measurement.
+	 * @return true if the mileage is a quantity of gasoline per distance.
+	 */
+	private boolean isInverse(Units units) {
+		return (units.getValue() == Units.LITERS_PER_100_KILOMETERS);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the average mileage.
+	 * @param units - the Units of measurement to use for calculations.
+	 * @return the average mileage (0 if no calculations).
+	 */
+	public float getAverage(Units units) {
+		if (count == 0) return 0f;
+		double total;
+		if (isInverse(units)) {
+			total = (inverseSum > 0) ? MileageCalculation.getMileage(1d/inverseSum,units) : 0d;
+		} else {
+			total = MileageCalculation.getMileage(sum,units);
+		}
+		return (float)(total/count);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the minimum mileage.
+	 * @param units - the Units of measurement to use for calculations.
+	 * @return the minimum mileage (0 if no calculations).
+	 */
+	public float getMinimum(Units units) {
+		if ((count == 0) || (zeros > 0)) return 0f;
+		double ratio = isInverse(units) ? maximum : minimum;
+		return (float)MileageCalculation.getMileage(ratio,units);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the maximum mileage.
+	 * @param units - the Units of measurement to use for calculations.
+	 * @return the maximum mileage (0 if no calculations).
+	 */
+	public float getMaximum(Units units) {
+		if (count == zeros) return 0f;
+		double ratio = isInverse(units) ? minimum : maximum;
+		return (float)MileageCalculation.getMileage(ratio,units);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the calculation count attribute.
+	 * @return the number of mileage calculations.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the zero count attribute.
+	 * @return the number of calculations with no distance or gasoline.
+	 */
+	public int getZeros() {
+		return zeros;
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the minimum attribute.
+	 * @return the minimum distance per quantity of gasoline.
+	 */
+	public double getMinimumRatio() {
+		return minimum;
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the maximum attribute.
+	 * @return the maximum distance per quantity of gasoline.
+	 */
+	public double getMaximumRatio() {
+		return maximum;
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the sum attribute.
+	 * @return the sum of distance per quantity of gasoline.
+	 */
+	public double getSum() {
+		return sum;
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the inverse sum attribute.
+	 * @return the sum of quantity of gasoline per distance.
+	 */
+	public double getInverseSum() {
+		return inverseSum;
+	}
+	
+}
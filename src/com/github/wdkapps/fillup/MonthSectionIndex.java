@@ -0,0 +1,293 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+package com.github.wdkapps.fillup;
+
+import java.util.Date;
+
+/**
+ * DESCRIPTION:
+ * An index of the gas records for a vehicle by calendar month, used to 
+ * provide the sections for fast scrolling a list of records and to find 
+ * the position of a record by date. 
+ * <p>
+ * Each section is a run of consecutive records (in odometer order) dated 
+ * within the same Month. The index keeps only the record dates, so it can 
+ * cover all records in the log while the list itself keeps only a window 
+ * of records in memory. When a record is added or deleted, only the 
+ * sections adjacent to its position are scanned again.
+ * <p>
+ * NOTE: 
+ * Records are expected to be dated in odometer order. If they are not, a 
+ * month may appear as more than one section, and finding a position by 
+ * date returns an approximate position.
+ */
+public class MonthSectionIndex {
+	
+	/// initial capacity of the record date array
+	private static final int INITIAL_CAPACITY = 64;
+	
+	/// the record dates (milliseconds) in odometer order
+	private long[] times;
+	
+	/// the number of records
+	private int count;
+	
+	/// the month (year * 12 + month) of each section
+	private int[] months = new int[0];
+	
+	/// the position of the first record in each section
+	private int[] starts = new int[0];
+	
+	/// the number of sections
+	private int sections;
+	
+	/// the section labels (null if not yet created)
+	private Object[] labels;
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an empty instance of MonthSectionIndex.
+	 */
+	public MonthSectionIndex() {
+		this(new long[0]);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of MonthSectionIndex, building the sections 
+	 * in one pass over the record dates.
+	 * @param times - the record dates (milliseconds) in odometer order.
+	 */
+	public MonthSectionIndex(long[] times) {
+		this.count = times.length;
+		this.times = new long[Math.max(count,INITIAL_CAPACITY)];
+		System.arraycopy(times,0,this.times,0,count);
+		resection(0,-1,count,0);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the number of records in the index.
+	 * @return the number of records.
+	 */
+	public int size() {
+		return count;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the date of the record at a specified position.
+	 * @param position - the position of the record.
+	 * @return the record Date.
+	 * @throws IndexOutOfBoundsException if the position is not in the index.
+	 */
+	public Date getDate(int position) {
+		if ((position < 0) || (position >= count)) {
+			throw new IndexOutOfBoundsException("size=" + count + " position=" + position);
+		}
+		return new Date(times[position]);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the section labels as "MMM YYYY".
+	 * @return an array of section label Strings.
+	 */
+	public Object[] getSections() {
+		if (labels == null) {
+			labels = new Object[sections];
+			for (int n = 0; n < sections; n++) {
+				Date date = new Date((months[n] / 12) - 1900, months[n] % 12, 1);
+				labels[n] = new Month(date).getLongLabel();
+			}
+		}
+		return labels;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the position of the first record in a specified section.
+	 * @param section - the section index (clamped to the valid range).
+	 * @return the record position (0 if the index is empty).
+	 */
+	public int getPositionForSection(int section) {
+		if (sections == 0) return 0;
+		section = Math.max(0,Math.min(section,sections - 1));
+		return starts[section];
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the section containing the record at a specified position.
+	 * @param position - the record position (clamped to the valid range).
+	 * @return the section index (0 if the index is empty).
+	 */
+	public int getSectionForPosition(int position) {
+		
+		// binary search for the last section starting at or before position
+		int low = 0;
+		int high = sections - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (starts[mid] <= position) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		
+		return low;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Finds the position of the first record dated on or after a 
+	 * specified date.
+	 * @param date - the Date to find.
+	 * @return the record position (the last record if all records are 
+	 * dated before the date, 0 if the index is empty).
+	 */
+	public int getPosition(Date date) {
+		
+		// binary search for the first record dated at or after the date
+		long time = date.getTime();
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		
+		return Math.max(0,Math.min(low,count - 1));
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Adds a record to the index.
+	 * @param position - the position of the new record.
+	 * @param date - the Date of the new record.
+	 * @throws IndexOutOfBoundsException if the position is not valid.
+	 */
+	public void insert(int position, Date date) {
+		if ((position < 0) || (position > count)) {
+			throw new IndexOutOfBoundsException("size=" + count + " position=" + position);
+		}
+		
+		// sections containing the records before and after the new record
+		int first = (position > 0) ? getSectionForPosition(position - 1) : 0;
+		int last = (position < count) ? getSectionForPosition(position) : sections - 1;
+		int end = (last + 1 < sections) ? starts[last + 1] : count;
+		
+		if (count == times.length) {
+			long[] larger = new long[times.length * 2];
+			System.arraycopy(times,0,larger,0,count);
+			times = larger;
+		}
+		System.arraycopy(times,position,times,position + 1,count - position);
+		times[position] = date.getTime();
+		count++;
+		
+		resection(first,last,end + 1,1);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Removes a record from the index.
+	 * @param position - the position of the deleted record.
+	 * @throws IndexOutOfBoundsException if the position is not in the index.
+	 */
+	public void delete(int position) {
+		if ((position < 0) || (position >= count)) {
+			throw new IndexOutOfBoundsException("size=" + count + " position=" + position);
+		}
+		
+		// sections containing the records before and after the deleted record
+		// (the sections on either side may merge if the section it was in empties)
+		int first = (position > 0) ? getSectionForPosition(position - 1) : 0;
+		int last = Math.min(getSectionForPosition(position) + 1,sections - 1);
+		int end = (last + 1 < sections) ? starts[last + 1] : count;
+		
+		System.arraycopy(times,position + 1,times,position,count - position - 1);
+		count--;
+		
+		resection(first,last,end - 1,-1);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Replaces a range of sections by scanning the records they contain.
+	 * The records on either side of the range must be unchanged.
+	 * @param first - the first section to replace.
+	 * @param last - the last section to replace (first - 1 = none).
+	 * @param end - the position following the last record to scan.
+	 * @param shift - the change in position of the records after the range.
+	 */
+	private void resection(int first, int last, int end, int shift) {
+		
+		int start = (first < sections) ? starts[first] : 0;
+		
+		// scan the records for runs of the same month
+		int[] runMonths = new int[end - start];
+		int[] runStarts = new int[end - start];
+		int runs = 0;
+		int previous = -1;
+		for (int position = start; position < end; position++) {
+			Date date = new Date(times[position]);
+			int month = (date.getYear() + 1900) * 12 + date.getMonth();
+			if ((runs == 0) || (month != previous)) {
+				runMonths[runs] = month;
+				runStarts[runs] = position;
+				runs++;
+				previous = month;
+			}
+		}
+		
+		// splice the runs in place of the replaced sections
+		int tail = sections - (last + 1);
+		int total = first + runs + tail;
+		if (total > months.length) {
+			int capacity = Math.max(total,months.length * 2);
+			int[] largerMonths = new int[capacity];
+			int[] largerStarts = new int[capacity];
+			System.arraycopy(months,0,largerMonths,0,first);
+			System.arraycopy(starts,0,largerStarts,0,first);
+			System.arraycopy(months,last + 1,largerMonths,first + runs,tail);
+			System.arraycopy(starts,last + 1,largerStarts,first + runs,tail);
+			months = largerMonths;
+			starts = largerStarts;
+		} else {
+			System.arraycopy(months,last + 1,months,first + runs,tail);
+			System.arraycopy(starts,last + 1,starts,first + runs,tail);
+		}
+		System.arraycopy(runMonths,0,months,first,runs);
+		System.arraycopy(runStarts,0,starts,first,runs);
+		for (int n = first + runs; n < total; n++) {
+			starts[n] += shift;
+		}
+		
+		sections = total;
+		labels = null;
+	}
+}
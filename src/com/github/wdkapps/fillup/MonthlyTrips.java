@@ -39,6 +39,14 @@ public class MonthlyTrips implements Iterable<Month>{
 	/// the earliest date recorded in the map
 	Date earliest = new Date();
 	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an empty instance of MonthlyTrips. Monthly totals 
+	 * (as read from the log) are then added via add().
+	 */
+	MonthlyTrips() {
+	}
+	
 	/**
 	 * DESCRIPTION:
 	 * Constructs an instance of MonthlyAggregate.
@@ -66,7 +74,7 @@ public class MonthlyTrips implements Iterable<Month>{
 	 * Adds a trip record to the map.
 	 * @param trip - the trip record to add.
 	 */
-	private void add(TripRecord trip) {
+	void add(TripRecord trip) {
 		
 		// get key reflecting the trip date (month)
 		Month key = new Month(trip.getEndDate());
@@ -109,7 +117,17 @@ public class MonthlyTrips implements Iterable<Month>{
 	public Iterator<Month> iterator() {
 
 		// iterate over the configured plot range
-		PlotDateRange range = new PlotDateRange(App.getContext(),Settings.KEY_PLOT_DATE_RANGE);
+		return iterator(new PlotDateRange(App.getContext(),Settings.KEY_PLOT_DATE_RANGE));
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns a MonthIterator spanning the data contained in the map
+	 * within a specified plot date range.
+	 * @param range - the plot date range.
+	 * @return the Iterator.
+	 */
+	public Iterator<Month> iterator(PlotDateRange range) {
 		Date start = range.getStartDate();
 		Date end = range.getEndDate();
 		
@@ -35,7 +35,9 @@ public class OdometerComparator implements Comparator<GasRecord>{
 	 */
 	@Override
 	public int compare(GasRecord lhs, GasRecord rhs) {
-		return lhs.getOdometer().compareTo(rhs.getOdometer());
+		int l = lhs.getOdometer();
+		int r = rhs.getOdometer();
+		return (l < r) ? -1 : ((l == r) ? 0 : 1);
 	}
 
 }
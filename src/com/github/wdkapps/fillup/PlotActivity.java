@@ -19,8 +19,8 @@
 
 package com.github.wdkapps.fillup;
 
-import java.util.Collections;
-import java.util.List;
+import java.util.Date;
+import java.util.concurrent.Callable;
 
 import com.androidplot.xy.XYPlot;
 
@@ -52,15 +52,15 @@ public class PlotActivity extends Activity implements OnSharedPreferenceChangeLi
 	/// gas records for this vehicle are the data that is plotted 
 	public final static String VEHICLE = PlotActivity.class.getName() + ".VEHICLE";
 	
-	/// the data to plot
-	public static List<GasRecord> records = null;
-	
-	/// the data aggregated per month
-	public static MonthlyTrips monthly = null;
+	/// the data to plot (shared by all of the plots)
+	public static PlotData data = null;
 	
 	/// the vehicle to display gas records for (obtained via Intent)
 	private Vehicle vehicle;
 	
+	/// identifies the most recent read of the data (older results are discarded)
+	private int serial;
+	
     /// the plots
     private MileagePlot plotMileage = new MileagePlot();
     private OdometerPlot plotOdometer = new OdometerPlot();
@@ -89,15 +89,9 @@ public class PlotActivity extends Activity implements OnSharedPreferenceChangeLi
         Intent intent = getIntent();
         vehicle = (Vehicle)intent.getSerializableExtra(VEHICLE);
         
-        // read the data from the gas log 
-        GasLog gaslog = GasLog.getInstance();
-        records = gaslog.readAllRecords(vehicle);
-        
-        // calculate monthly totals
-        monthly = new MonthlyTrips(records);
-        
-        // sort gas records by date
-    	Collections.sort(records,new DateComparator());
+        // no data to plot until read from the gas log
+        PlotDateRange range = new PlotDateRange(this,Settings.KEY_PLOT_DATE_RANGE);
+        data = new PlotData(range,new Units(Settings.KEY_UNITS));
 
     	// initialize the plot range buttons
     	rangeButtons = new PlotDateRangeButtons(this,Settings.KEY_PLOT_DATE_RANGE);
@@ -111,6 +105,9 @@ public class PlotActivity extends Activity implements OnSharedPreferenceChangeLi
 
 		// set font size for plot titles to reflect preferences
 		setTitlesFontSize();
+		
+        // read the data to plot from the gas log 
+        readPlotData();
     	
 		// setup to adjust plot height to fit on screen once layout size is known
 		scrollview = (ScrollView)findViewById(R.id.scrollviewPlots);
@@ -138,6 +135,57 @@ public class PlotActivity extends Activity implements OnSharedPreferenceChangeLi
 
     }
 
+    /**
+     * DESCRIPTION:
+     * Reads the data within the current plot date range from the gas log
+     * in the background (the records for the mileage plot and the stored
+     * monthly totals for the other plots), and derives the data for all 
+     * of the plots in the current units. The plots are drawn again once 
+     * the data is ready.
+     */
+    private void readPlotData() {
+    	
+        // read the data from the gas log 
+    	final int id = ++serial;
+    	final PlotDateRange range = new PlotDateRange(this,Settings.KEY_PLOT_DATE_RANGE);
+    	final Units units = new Units(Settings.KEY_UNITS);
+        AsyncGasLog.getInstance().read(new Callable<PlotData>() {
+        	@Override
+        	public PlotData call() {
+        		RecordRepository repository = RecordRepository.getInstance();
+        		Date start = range.getStartDate();
+        		Date end = range.getEndDate();
+        		RecordColumns records = repository.readRecordColumns(vehicle,start,end);
+        		MonthlyTrips monthly = repository.readMonthlyTrips(vehicle,start,end);
+        		return new PlotData(records,monthly,range,units);
+        	}
+        },new AsyncGasLog.Callback<PlotData>() {
+        	@Override
+        	public void onResult(PlotData result) {
+        		if (id == serial) {
+        			setPlotData(result);
+        		}
+        	}
+        });
+    }
+    
+    /**
+     * DESCRIPTION:
+     * Replaces the data to plot and draws the plots again.
+     * @param result - the data derived from the gas log.
+     */
+    private void setPlotData(PlotData result) {
+    	
+    	data = result;
+    	
+    	// draw the plots
+    	plotMileage.onDataChanged();
+    	plotOdometer.onDataChanged();
+    	plotGallons.onDataChanged();
+    	plotCost.onDataChanged();
+    	plotPrice.onDataChanged();
+    }
+
 	/**
      * DESCRIPTION:
      * Initialize the contents of the Activity's standard options menu. 
@@ -178,10 +226,10 @@ public class PlotActivity extends Activity implements OnSharedPreferenceChangeLi
 	@Override
 	public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
 		
-		// update the data to reflect new units
-		if (key.equals(Settings.KEY_UNITS)) {
-        	GasRecordList.calculateMileage(records);
-            monthly = new MonthlyTrips(records);
+		// read the data for a new plot date range or units
+		// note: the data read from the log is cached, so only the plot data is derived again
+		if (key.equals(Settings.KEY_PLOT_DATE_RANGE) || key.equals(Settings.KEY_UNITS)) {
+			readPlotData();
 		}
 		
 		// update title font size
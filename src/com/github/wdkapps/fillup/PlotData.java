@@ -0,0 +1,323 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+package com.github.wdkapps.fillup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * DESCRIPTION:
+ * The data displayed by the plots for one plot date range and units of 
+ * measurement. All of the plot series, with their range (min/max) of 
+ * values and averages, are derived in one pass over the records and one 
+ * pass over the monthly totals, so the plots only need to display them.
+ * <p>
+ * NOTE: 
+ * Instances are immutable once constructed, so they can be built in the 
+ * background and shared by the plots.
+ */
+public class PlotData {
+	
+	/**
+	 * DESCRIPTION:
+	 * A series of (x,y) values to plot, with the range of values and 
+	 * the average y-value.
+	 */
+	public static class Series {
+		
+		/// the (x,y) values
+		private final ArrayXYSeries values;
+		
+		/// range of x-axis values
+		private long minx = Long.MAX_VALUE;
+		private long maxx = Long.MIN_VALUE;
+		
+		/// range of y-axis values
+		private double miny = Double.MAX_VALUE;
+		private double maxy = -Double.MAX_VALUE;
+		
+		/// sum of the y-axis values
+		private double sumy = 0;
+		
+		/// average y-axis value
+		private double average = 0;
+		
+		/**
+		 * DESCRIPTION:
+		 * Constructs an empty instance of Series.
+		 * @param capacity - the expected number of values.
+		 */
+		private Series(int capacity) {
+			values = new ArrayXYSeries(capacity,"");
+		}
+		
+		/**
+		 * DESCRIPTION:
+		 * Appends an (x,y) value to the series.
+		 * @param xValue - the x-axis value.
+		 * @param yValue - the y-axis value.
+		 */
+		private void add(long xValue, double yValue) {
+			minx = Math.min(minx,xValue);
+			maxx = Math.max(maxx,xValue);
+			miny = Math.min(miny,yValue);
+			maxy = Math.max(maxy,yValue);
+			sumy += yValue;
+			values.add(xValue,(float)yValue);
+		}
+		
+		/**
+		 * DESCRIPTION:
+		 * Calculates the average once all values have been added.
+		 */
+		private void finish() {
+			if (values.size() == 0) {
+				minx = maxx = 0;
+				miny = maxy = 0;
+				average = 0;
+			} else {
+				average = sumy / values.size();
+			}
+		}
+		
+		/**
+		 * DESCRIPTION:
+		 * Returns the (x,y) values to plot.
+		 * NOTE: the values are shared and must not be modified.
+		 * @return the ArrayXYSeries of values.
+		 */
+		public ArrayXYSeries getValues() {
+			return values;
+		}
+		
+		/**
+		 * DESCRIPTION:
+		 * Returns the number of (x,y) values in the series.
+		 * @return the number of values.
+		 */
+		public int size() {
+			return values.size();
+		}
+		
+		/**
+		 * DESCRIPTION:
+		 * Returns the minimum x-axis value (0 if no data).
+		 */
+		public long getMinX() {
+			return minx;
+		}
+		
+		/**
+		 * DESCRIPTION:
+		 * Returns the maximum x-axis value (0 if no data).
+		 */
+		public long getMaxX() {
+			return maxx;
+		}
+		
+		/**
+		 * DESCRIPTION:
+		 * Returns the minimum y-axis value (0 if no data).
+		 */
+		public double getMinY() {
+			return miny;
+		}
+		
+		/**
+		 * DESCRIPTION:
+		 * Returns the maximum y-axis value (0 if no data).
+		 */
+		public double getMaxY() {
+			return maxy;
+		}
+		
+		/**
+		 * DESCRIPTION:
+		 * Returns the sum of the y-axis values.
+		 */
+		public double getSum() {
+			return sumy;
+		}
+		
+		/**
+		 * DESCRIPTION:
+		 * Returns the average y-axis value (0 if no data).
+		 */
+		public double getAverage() {
+			return average;
+		}
+	}
+	
+	/// the plot date range the data was selected for
+	private final PlotDateRange range;
+	
+	/// the units of measurement the data was calculated for
+	private final Units units;
+	
+	/// mileage calculations, where x = date (with an index to avoid duplicate values)
+	private final Series mileage;
+	
+	/// monthly totals, where x = sequential index [0..n] mapped to month labels
+	private final Series distance;
+	private final Series gallons;
+	private final Series cost;
+	private final Series price;
+	
+	/// the month label for each monthly x-axis value
+	private final List<String> monthLabels = new ArrayList<String>();
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of PlotData containing no records.
+	 * @param range - the plot date range.
+	 * @param units - the units of measurement.
+	 */
+	public PlotData(PlotDateRange range, Units units) {
+		this(new RecordColumns(),new MonthlyTrips(),range,units);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of PlotData, deriving all of the plot series.
+	 * @param records - the records to plot (sorted by date).
+	 * @param monthly - the monthly totals to plot.
+	 * @param range - the plot date range to select data within.
+	 * @param units - the units of measurement for mileage calculations.
+	 */
+	public PlotData(RecordColumns records, MonthlyTrips monthly, PlotDateRange range, Units units) {
+		this.range = range;
+		this.units = units;
+		
+		// mileage for each record, where (x,y) is:
+		// x = time in milliseconds (from date) plus an index to avoid duplicate values
+		// y = calculated mileage at that date
+		mileage = new Series(records.size());
+		long start = range.getStartDate().getTime();
+		long end = range.getEndDate().getTime();
+		for (int i = 0; i < records.size(); i++) {
+			long time = records.getTime(i);
+			if (records.hasCalculation(i) && 
+				!records.isCalculationHidden(i) && 
+				(time >= start) && (time <= end)) {
+				long x = time + (long)mileage.size();
+				mileage.add(x,records.getMileage(i,units));
+			}
+		}
+		mileage.finish();
+		
+		// totals for each month, where (x,y) is:
+		// x = sequential index [0..n] with labels mapped to specific months
+		// y = distance, gallons, cost, and price for that month
+		distance = new Series(0);
+		gallons = new Series(0);
+		cost = new Series(0);
+		price = new Series(0);
+		TripRecord total = new TripRecord(new Date());
+		long x = 0L;
+		Iterator<Month> iterator = monthly.iterator(range);
+		while (iterator.hasNext()) {
+			Month month = iterator.next();
+			TripRecord data = monthly.getTrips(month);
+			distance.add(x,data.getDistance());
+			gallons.add(x,data.getGallons());
+			cost.add(x,data.getCost());
+			price.add(x,data.getPrice());
+			total.append(data);
+			monthLabels.add(month.getLabel());
+			x++;
+		}
+		distance.finish();
+		gallons.finish();
+		cost.finish();
+		price.finish();
+		
+		// average price is for the total volume purchased (not per month)
+		price.average = total.getPrice();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the plot date range the data was selected for.
+	 */
+	public PlotDateRange getRange() {
+		return range;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the units of measurement the data was calculated for.
+	 */
+	public Units getUnits() {
+		return units;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the mileage calculation for each record.
+	 */
+	public Series getMileage() {
+		return mileage;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the distance driven for each month.
+	 */
+	public Series getDistance() {
+		return distance;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the gas purchased for each month.
+	 */
+	public Series getGallons() {
+		return gallons;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the cost of gas purchased for each month.
+	 */
+	public Series getCost() {
+		return cost;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the average price of gas purchased for each month.
+	 */
+	public Series getPrice() {
+		return price;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the month labels for the monthly x-axis values.
+	 * @return an unmodifiable List of labels as "MMM" (indexed by x-axis value).
+	 */
+	public List<String> getMonthLabels() {
+		return Collections.unmodifiableList(monthLabels);
+	}
+}
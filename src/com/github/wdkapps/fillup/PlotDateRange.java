@@ -77,6 +77,7 @@ public class PlotDateRange {
 		startCalendar.set(Calendar.HOUR_OF_DAY,0);
 		startCalendar.set(Calendar.MINUTE,0);
 		startCalendar.set(Calendar.SECOND,0);
+		startCalendar.set(Calendar.MILLISECOND,0);
 		switch (this.value){
 		case ALL:
 			// force maximum range to 2 years or plot gets ugly (too much data)
@@ -106,6 +107,7 @@ public class PlotDateRange {
 		endCalendar.set(Calendar.HOUR_OF_DAY,0);
 		endCalendar.set(Calendar.MINUTE,0);
 		endCalendar.set(Calendar.SECOND,0);
+		endCalendar.set(Calendar.MILLISECOND,0);
 		endCalendar.add(Calendar.MONTH,1);		
 		
 		// get Dates from Calendars
@@ -0,0 +1,188 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+package com.github.wdkapps.fillup;
+
+import java.util.Arrays;
+
+import com.androidplot.xy.XYPlot;
+import com.androidplot.xy.XYSeries;
+
+/**
+ * DESCRIPTION:
+ * Reduces the number of points in a plot series to a level of detail that 
+ * can be seen in the plot widget, so that drawing time does not grow with 
+ * the amount of data in the log.
+ * <p>
+ * Points are selected using the Largest-Triangle-Three-Buckets algorithm, 
+ * which divides the series into buckets and keeps the point from each 
+ * bucket that forms the largest triangle with the points selected for 
+ * its neighbors. The first and last points, and the points with the 
+ * minimum and maximum y-values, are always kept (so the series may have 
+ * one point more than the maximum if both extremes are in one bucket).
+ * <p>
+ * NOTE: 
+ * Values derived from the data (min, max, average) must be calculated
+ * from the full series, before it is downsampled.
+ */
+public class PlotDownsampler {
+	
+	/// the maximum number of points per pixel of plot width
+	private static final int POINTS_PER_PIXEL = 2;
+	
+	/**
+	 * DESCRIPTION:
+	 * Determines the maximum number of points to plot in a plot widget,
+	 * based on its width (or the display width if the widget has not 
+	 * been laid out yet).
+	 * @param plot - the plot widget.
+	 * @return the maximum number of points.
+	 */
+	public static int getMaxPoints(XYPlot plot) {
+		int width = plot.getWidth();
+		if (width <= 0) {
+			width = plot.getResources().getDisplayMetrics().widthPixels;
+		}
+		return width * POINTS_PER_PIXEL;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Downsamples a plot series to a maximum number of points.
+	 * @param series - the series of (x,y) values (x in ascending order).
+	 * @param maxPoints - the maximum number of points in the series.
+	 * @return the series if it does not exceed the maximum, otherwise a 
+	 * new series containing the selected points.
+	 */
+	public static XYSeries createSeries(ArrayXYSeries series, int maxPoints) {
+		
+		if (series.size() <= maxPoints) {
+			return series;
+		}
+		
+		// create the series from the selected points
+		int[] selected = select(series,maxPoints);
+		ArrayXYSeries sampled = new ArrayXYSeries(selected.length,series.getTitle());
+		for (int i : selected) {
+			sampled.add(series.getXValue(i),series.getYValue(i));
+		}
+		return sampled;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Selects the points to keep from a series using the 
+	 * Largest-Triangle-Three-Buckets algorithm.
+	 * @param series - the series of (x,y) values (x in ascending order).
+	 * @param threshold - the maximum number of points to select.
+	 * @return the indices of the selected points in ascending order.
+	 */
+	static int[] select(ArrayXYSeries series, int threshold) {
+		
+		// copy the values for the calculations
+		int count = series.size();
+		double[] x = new double[count];
+		double[] y = new double[count];
+		for (int i = 0; i < count; i++) {
+			x[i] = series.getXValue(i);
+			y[i] = series.getYValue(i);
+		}
+		
+		// need at least the first, last and one bucket
+		threshold = Math.max(threshold,3);
+		
+		// nothing to reduce
+		if (count <= threshold) {
+			int[] all = new int[count];
+			for (int i = 0; i < count; i++) all[i] = i;
+			return all;
+		}
+		
+		// find the extremes (always kept)
+		int imin = 0;
+		int imax = 0;
+		for (int i = 1; i < count; i++) {
+			if (y[i] < y[imin]) imin = i;
+			if (y[i] > y[imax]) imax = i;
+		}
+		
+		int[] selected = new int[threshold + 1];
+		int n = 0;
+		
+		// always keep the first point
+		int a = 0;
+		selected[n++] = a;
+		
+		// size of each bucket, excluding the first and last points
+		double every = (double)(count - 2) / (threshold - 2);
+		
+		for (int bucket = 0; bucket < threshold - 2; bucket++) {
+			
+			// average point of the next bucket (the last point for the final bucket)
+			int nextStart = (int)((bucket + 1) * every) + 1;
+			int nextEnd = Math.min((int)((bucket + 2) * every) + 1,count);
+			if (nextStart >= count - 1) {
+				nextStart = count - 1;
+				nextEnd = count;
+			}
+			double avgx = 0;
+			double avgy = 0;
+			for (int i = nextStart; i < nextEnd; i++) {
+				avgx += x[i];
+				avgy += y[i];
+			}
+			avgx /= (nextEnd - nextStart);
+			avgy /= (nextEnd - nextStart);
+			
+			// point in this bucket forming the largest triangle
+			// (an extreme replaces any other point in its bucket)
+			int start = (int)(bucket * every) + 1;
+			int end = Math.min((int)((bucket + 1) * every) + 1,count - 1);
+			int chosen = start;
+			boolean extreme = false;
+			double maxArea = -1;
+			if ((imin != imax) && 
+				(imin >= start) && (imin < end) && 
+				(imax >= start) && (imax < end)) {
+				// both extremes are in this bucket - keep both
+				selected[n++] = Math.min(imin,imax);
+				chosen = Math.max(imin,imax);
+				end = start;
+			}
+			for (int i = start; i < end; i++) {
+				double area = Math.abs((x[a] - avgx) * (y[i] - y[a]) - (x[a] - x[i]) * (avgy - y[a]));
+				boolean isExtreme = (i == imin) || (i == imax);
+				if ((isExtreme && !extreme) || ((isExtreme == extreme) && (area > maxArea))) {
+					maxArea = area;
+					chosen = i;
+					extreme = isExtreme;
+				}
+			}
+			
+			selected[n++] = chosen;
+			a = chosen;
+		}
+		
+		// always keep the last point
+		selected[n++] = count - 1;
+		
+		return Arrays.copyOf(selected,n);
+	}
+}
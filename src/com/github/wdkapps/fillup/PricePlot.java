@@ -20,8 +20,6 @@
 package com.github.wdkapps.fillup;
 
 import java.text.Format;
-import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 
 import android.app.Activity;
@@ -41,7 +39,6 @@ import com.androidplot.xy.BoundaryMode;
 import com.androidplot.xy.LineAndPointFormatter;
 import com.androidplot.xy.PointLabelFormatter;
 import com.androidplot.xy.PointLabeler;
-import com.androidplot.xy.SimpleXYSeries;
 import com.androidplot.xy.XYPlot;
 import com.androidplot.xy.XYSeries;
 import com.androidplot.xy.XYStepMode;
@@ -78,9 +75,6 @@ public class PricePlot implements OnSharedPreferenceChangeListener {
     /// average gas used per month for plot period
     private double average = 0;
     
-    /// total gas used for plot period
-    private TripRecord sumy;
-    
     /// range of y-axis data for the plot period (gas used)
     private double miny = 0;
     private double maxy = 0;
@@ -102,6 +96,14 @@ public class PricePlot implements OnSharedPreferenceChangeListener {
     /// formatter for y-axis labels
     private Format ylabels = CurrencyManager.getInstance().getSymbolicFormatter();  
     
+    /**
+     * DESCRIPTION:
+     * Draws the plot again after the data to plot has been read from the log.
+     */
+    public void onDataChanged() {
+    	redrawPlot();
+    }
+    
     /**
      * DESCRIPTION:
      * Creates the graph.
@@ -282,79 +284,55 @@ public class PricePlot implements OnSharedPreferenceChangeListener {
     /**
      * DESCRIPTION:
      * Obtains (x,y) values from the current data set for plotting. Also
-     * calculates the range (min/max) of x-axis and y-axis values for the series.
-     * @return a SimpleXYSeries instance containing (x,y) values to plot.
+     * calculates the range (min/max) of x-axis and y-axis values for the series
+     * (from all of the data, before the series is downsampled for display).
+     * @return an XYSeries instance containing (x,y) values to plot.
      */
-    private SimpleXYSeries getPlotSeries() {
+    private XYSeries getPlotSeries() {
     	
     	final String tag = TAG + ".getPlotSeries()";
     	
-    	// create lists of x-axis, and y-axis numbers to plot
-    	List<Number> xNumbers = new LinkedList<Number>();
-    	List<Number> yNumbers = new LinkedList<Number>();
-
-    	// get numbers to plot from gas record monthly data, where (x,y) is:
+    	// get the monthly totals to plot, where (x,y) is:
     	// x = sequential index [0..n] with labels mapped to specific months
-    	// y = calculated cost for that month
-    	sumy = new TripRecord(new Date());
-    	miny = Float.MAX_VALUE; 
-    	maxy = Float.MIN_VALUE;
-    	minx = Long.MAX_VALUE; 
-    	maxx = Long.MIN_VALUE;
+    	// y = average price for that month
+    	PlotData.Series series = PlotActivity.data.getPrice();
+    	minx = series.getMinX();
+    	maxx = series.getMaxX();
+    	miny = series.getMinY();
+    	maxy = series.getMaxY();
+    	average = series.getAverage();
+    	
+    	// map the x-axis values to month labels
     	xlabels.clear();
-    	long x = 0L;
-    	double y = 0f;
-    	for (Month month : PlotActivity.monthly) {
-    		TripRecord data = PlotActivity.monthly.getTrips(month);
-    		y = data.getPrice();
-    		Log.d(tag,"month="+month.toString()+" x="+x+" y="+y);
-    		minx = Math.min(minx, x);
-    		maxx = Math.max(maxx, x);
-    		miny = Math.min(miny, y);
-    		maxy = Math.max(maxy, y);
-    		xNumbers.add(x);
-    		yNumbers.add(y);
-    		sumy.append(data);
-    		xlabels.put(x++,month.getLabel());
+    	List<String> labels = PlotActivity.data.getMonthLabels();
+    	for (int x = 0; x < labels.size(); x++) {
+    		xlabels.put((long)x,labels.get(x));
     	}
 
-    	// adjust min/max values if no data
-    	if (xNumbers.isEmpty()) minx = maxx = 0;
-    	if (yNumbers.isEmpty()) miny = maxy = 0;
-    	
-    	// calculate average for the series
-    	average = sumy.getPrice();
-
     	Log.d(tag,"minx="+minx+" maxx="+maxx);
     	Log.d(tag,"miny="+miny+" maxy="+maxy);
-    	Log.d(tag,"average="+average);
+    	Log.d(tag,"sumy="+series.getSum()+" size="+series.size()+" average="+average);
 
         // create a new series from the x and y axis numbers
-    	String title = "";
-        return new SimpleXYSeries(xNumbers,yNumbers,title);
+        // (reduced to the level of detail that can be displayed)
+    	int maxPoints = PlotDownsampler.getMaxPoints(plot);
+        return PlotDownsampler.createSeries(series.getValues(),maxPoints);
     }
     
     /**
      * DESCRIPTION:
      * Obtains (x,y) values for a line reflecting the average value
      * for the current data set.
-     * @return a SimpleXYSeries instance containing (x,y) values to plot.
+     * @return an XYSeries instance containing (x,y) values to plot.
      */
-    private SimpleXYSeries getAverageSeries() {
+    private XYSeries getAverageSeries() {
     	
-    	// create lists of x-axis, and y-axis numbers to plot
-    	List<Number> xNumbers = new LinkedList<Number>();
-    	List<Number> yNumbers = new LinkedList<Number>();
-
     	// line at average, across x-axis
-    	xNumbers.add(lowerboundx);
-    	yNumbers.add(average);
-    	xNumbers.add(upperboundx);
-    	yNumbers.add(average);
-
-    	// create a new series from the x and y axis numbers
     	String title = "";
-        return new SimpleXYSeries(xNumbers,yNumbers,title);
+    	ArrayXYSeries series = new ArrayXYSeries(2,title);
+    	series.add(lowerboundx,(float)average);
+    	series.add(upperboundx,(float)average);
+        return series;
     }
     
 	/**
@@ -365,11 +343,9 @@ public class PricePlot implements OnSharedPreferenceChangeListener {
 	@Override
 	public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
 		
-		if (key.equals(Settings.KEY_PLOT_DATE_RANGE)) {
-			// plot date range changed
-			redrawPlot();
-		} 
-			
+		// note: a plot date range or units change is drawn once the plot
+		// data has been derived again (see onDataChanged())
+		
 		if (key.equals(Settings.KEY_PLOT_FONT_SIZE)) {
 			// plot font size changed
 			redrawPlot();
@@ -380,11 +356,8 @@ public class PricePlot implements OnSharedPreferenceChangeListener {
 	        // get new units of measurement
 	        units = new Units(Settings.KEY_UNITS);
 	        
-	        // update the plot to reflect new units
+	        // update the plot labels to reflect new units
 	        plot.setRangeLabel(units.getLiquidVolumeLabel());
-
-	        // redraw the plot
-			redrawPlot();
 		}
 
 	}
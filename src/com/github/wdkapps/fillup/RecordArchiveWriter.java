@@ -0,0 +1,323 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+
+package com.github.wdkapps.fillup;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * DESCRIPTION:
+ * Writes a ZIP archive from entries that have already been compressed.
+ * Each Entry is an OutputStream that compresses its contents in memory,
+ * so the entries of an archive can be compressed by several threads at
+ * once and then written to the archive in order (java.util.zip only 
+ * compresses entries one at a time, on the writing thread).
+ * <p>
+ * NOTE: 
+ * ZIP64 is not supported. An archive is limited to 65535 entries and 
+ * 4 GB, which is far beyond the size of any log.
+ */
+class RecordArchiveWriter implements Closeable {
+
+	/// size of the output buffer (bytes)
+	private static final int BUFFER_SIZE = 16384;
+	
+	/// ZIP record signatures
+	private static final int LOCAL_HEADER = 0x04034b50;
+	private static final int CENTRAL_HEADER = 0x02014b50;
+	private static final int END_HEADER = 0x06054b50;
+	
+	/// ZIP version 2.0 (deflate)
+	private static final int VERSION = 20;
+	
+	/// general purpose flag: entry name is UTF-8 encoded
+	private static final int FLAG_UTF8 = 0x0800;
+	
+	/// compression method: deflate
+	private static final int DEFLATED = 8;
+	
+	/// maximum value of 16/32 bit unsigned fields
+	private static final int MAX_SHORT = 0xFFFF;
+	private static final long MAX_INT = 0xFFFFFFFFL;
+	
+	/**
+	 * DESCRIPTION:
+	 * An archive entry that is compressed as it is written. Must be closed
+	 * before it is added to the archive.
+	 */
+	public static class Entry extends OutputStream {
+		
+		/// the entry name (UTF-8 encoded)
+		private final byte[] name;
+		
+		/// last modification time (MS-DOS format)
+		private final int dosTime;
+		private final int dosDate;
+		
+		/// compresses the entry contents
+		private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION,true);
+		
+		/// checksum of the uncompressed contents
+		private final CRC32 crc = new CRC32();
+		
+		/// the compressed contents
+		private final ByteArrayOutputStream data = new ByteArrayOutputStream(BUFFER_SIZE);
+		
+		/// receives output from the deflater
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+		
+		/// size of the uncompressed and compressed contents
+		private long size;
+		private long compressedSize;
+		
+		/// true once the entry has been closed
+		private boolean closed;
+		
+		/// offset of the local header within the archive
+		private long offset;
+		
+		/**
+		 * DESCRIPTION:
+		 * Constructs an instance of Entry.
+		 * @param name - the entry name (path within the archive).
+		 * @param time - the last modification time (milliseconds).
+		 */
+		public Entry(String name, long time) {
+			try {
+				this.name = name.getBytes("UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTimeInMillis(time);
+			int year = Math.max(1980,calendar.get(Calendar.YEAR));
+			this.dosDate = ((year - 1980) << 9) |
+					((calendar.get(Calendar.MONTH) + 1) << 5) |
+					calendar.get(Calendar.DAY_OF_MONTH);
+			this.dosTime = (calendar.get(Calendar.HOUR_OF_DAY) << 11) |
+					(calendar.get(Calendar.MINUTE) << 5) |
+					(calendar.get(Calendar.SECOND) / 2);
+		}
+		
+		/**
+		 * DESCRIPTION:
+		 * Compresses a byte of the entry contents.
+		 * @see java.io.OutputStream#write(int)
+		 */
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte)b},0,1);
+		}
+		
+		/**
+		 * DESCRIPTION:
+		 * Compresses bytes of the entry contents.
+		 * @see java.io.OutputStream#write(byte[], int, int)
+		 */
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (closed) throw new IOException("entry closed");
+			crc.update(b,off,len);
+			size += len;
+			deflater.setInput(b,off,len);
+			while (!deflater.needsInput()) {
+				deflate();
+			}
+		}
+		
+		/**
+		 * DESCRIPTION:
+		 * Completes compression of the entry contents.
+		 * @see java.io.OutputStream#close()
+		 */
+		@Override
+		public void close() {
+			if (closed) return;
+			closed = true;
+			deflater.finish();
+			while (!deflater.finished()) {
+				deflate();
+			}
+			deflater.end();
+		}
+		
+		/**
+		 * DESCRIPTION:
+		 * Moves compressed output from the deflater to the entry data.
+		 */
+		private void deflate() {
+			int count = deflater.deflate(buffer,0,buffer.length);
+			data.write(buffer,0,count);
+		}
+	}
+	
+	/// the archive output
+	private final OutputStream out;
+	
+	/// the entries written to the archive
+	private final List<Entry> entries = new ArrayList<Entry>();
+	
+	/// number of bytes written to the archive
+	private long written;
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of RecordArchiveWriter.
+	 * @param out - the stream to write the archive to.
+	 */
+	public RecordArchiveWriter(OutputStream out) {
+		this.out = new BufferedOutputStream(out,BUFFER_SIZE);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Writes a completed entry to the archive. The compressed contents of
+	 * the entry are released once written.
+	 * @param entry - the Entry (must be closed).
+	 * @throws IOException if the write fails or the archive is too large.
+	 */
+	public void add(Entry entry) throws IOException {
+		if (!entry.closed) {
+			throw new IllegalStateException("entry not closed");
+		}
+		if (entries.size() >= MAX_SHORT) {
+			throw new IOException("too many archive entries");
+		}
+		
+		entry.offset = written;
+		entry.compressedSize = entry.data.size();
+		writeInt(LOCAL_HEADER);
+		writeShort(VERSION);
+		writeShort(FLAG_UTF8);
+		writeShort(DEFLATED);
+		writeShort(entry.dosTime);
+		writeShort(entry.dosDate);
+		writeInt(entry.crc.getValue());
+		writeInt(entry.compressedSize);
+		writeInt(entry.size);
+		writeShort(entry.name.length);
+		writeShort(0);
+		write(entry.name);
+		
+		entry.data.writeTo(out);
+		written += entry.compressedSize;
+		entry.data.reset();
+		
+		entries.add(entry);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Writes the central directory that completes the archive.
+	 * @throws IOException if the write fails or the archive is too large.
+	 */
+	public void finish() throws IOException {
+		long start = written;
+		for (Entry entry : entries) {
+			writeInt(CENTRAL_HEADER);
+			writeShort(VERSION);
+			writeShort(VERSION);
+			writeShort(FLAG_UTF8);
+			writeShort(DEFLATED);
+			writeShort(entry.dosTime);
+			writeShort(entry.dosDate);
+			writeInt(entry.crc.getValue());
+			writeInt(entry.compressedSize);
+			writeInt(entry.size);
+			writeShort(entry.name.length);
+			writeShort(0); // extra field length
+			writeShort(0); // comment length
+			writeShort(0); // disk number
+			writeShort(0); // internal attributes
+			writeInt(0);   // external attributes
+			writeInt(entry.offset);
+			write(entry.name);
+		}
+		long size = written - start;
+		
+		writeInt(END_HEADER);
+		writeShort(0); // disk number
+		writeShort(0); // disk with central directory
+		writeShort(entries.size());
+		writeShort(entries.size());
+		writeInt(size);
+		writeInt(start);
+		writeShort(0); // comment length
+		out.flush();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Closes the archive output.
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Writes bytes to the archive.
+	 * @param b - the bytes.
+	 * @throws IOException if the write fails.
+	 */
+	private void write(byte[] b) throws IOException {
+		out.write(b);
+		written += b.length;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Writes a 16 bit unsigned value to the archive (little-endian).
+	 * @param value - the value.
+	 * @throws IOException if the write fails.
+	 */
+	private void writeShort(int value) throws IOException {
+		out.write(value & 0xFF);
+		out.write((value >>> 8) & 0xFF);
+		written += 2;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Writes a 32 bit unsigned value to the archive (little-endian).
+	 * @param value - the value.
+	 * @throws IOException if the write fails or the value is too large.
+	 */
+	private void writeInt(long value) throws IOException {
+		if ((value < 0) || (value > MAX_INT)) {
+			throw new IOException("archive too large");
+		}
+		writeShort((int)(value & MAX_SHORT));
+		writeShort((int)(value >>> 16));
+	}
+}
@@ -0,0 +1,353 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+package com.github.wdkapps.fillup;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * DESCRIPTION:
+ * Reads vehicles and their gas records from a binary backup file written
+ * by RecordBackupWriter. The records of one vehicle are decoded at a 
+ * time. The checksum is verified when the end of the file is reached; 
+ * data read from a file that fails verification must be discarded.
+ * @see RecordBackupWriter
+ */
+class RecordBackupReader implements Closeable {
+
+	/// maximum number of records per vehicle and string length in bytes 
+	/// (guards against corrupt files)
+	private static final int MAX_RECORDS = 10000000;
+	private static final int MAX_STRING = 1048576;
+	
+	/// the input (checksum of all bytes read)
+	private final CheckedInputStream in;
+	
+	/// the current vehicle
+	private int id;
+	private String name;
+	private Float tankSize;
+	
+	/// column values of the current vehicle's records
+	private int count = 0;
+	private long[] time = new long[0];
+	private int[] odometer = new int[0];
+	private float[] gallons = new float[0];
+	private double[] cost = new double[0];
+	private byte[] flags = new byte[0];
+	private String[] notes = new String[0];
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of RecordBackupReader and reads the file header.
+	 * @param in - the InputStream to read from.
+	 * @throws IOException if the read fails or the file is not a backup file.
+	 */
+	public RecordBackupReader(InputStream in) throws IOException {
+		this.in = new CheckedInputStream(new BufferedInputStream(in),new CRC32());
+		for (byte b : RecordBackupWriter.MAGIC) {
+			if (readByte() != (b & 0xFF)) {
+				throw new IOException("not a backup file");
+			}
+		}
+		long version = readVarint();
+		if (version != RecordBackupWriter.VERSION) {
+			throw new IOException("unsupported backup version " + version);
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads the next vehicle and its records.
+	 * @return false at the end of the file (the checksum has been verified).
+	 * @throws IOException if the read fails or the file is corrupt.
+	 */
+	public boolean nextVehicle() throws IOException {
+		long tag = readVarint();
+		if (tag == RecordBackupWriter.END) {
+			verifyChecksum();
+			return false;
+		}
+		if (tag != RecordBackupWriter.VEHICLE) {
+			throw new IOException("invalid backup section " + tag);
+		}
+
+		id = (int)readVarint();
+		name = readString();
+		long tank = readVarint();
+		tankSize = (tank == 0) ? null : (float)(tank - 1) / RecordBackupWriter.SCALE;
+		long records = readVarint();
+		if (records > MAX_RECORDS) {
+			throw new IOException("invalid record count " + records);
+		}
+		count = (int)records;
+		if (time.length < count) {
+			time = new long[count];
+			odometer = new int[count];
+			gallons = new float[count];
+			cost = new double[count];
+			flags = new byte[count];
+			notes = new String[count];
+		}
+		
+		// odometer (delta)
+		int previousOdometer = 0;
+		for (int i = 0; i < count; i++) {
+			previousOdometer += (int)readVarint();
+			odometer[i] = previousOdometer;
+		}
+		
+		// time (signed delta)
+		long previousTime = 0;
+		for (int i = 0; i < count; i++) {
+			long value = readVarint();
+			previousTime += (value >>> 1) ^ -(value & 1);
+			time[i] = previousTime;
+		}
+		
+		// gallons and cost (fixed-point)
+		for (int i = 0; i < count; i++) {
+			gallons[i] = (float)((double)readVarint() / RecordBackupWriter.SCALE);
+		}
+		for (int i = 0; i < count; i++) {
+			cost[i] = (double)readVarint() / RecordBackupWriter.SCALE;
+		}
+		
+		// flags (packed)
+		int bits = 0;
+		for (int i = 0; i < count; i++) {
+			if (i % 4 == 0) bits = readByte();
+			flags[i] = (byte)((bits >> ((i % 4) * 2)) & 3);
+		}
+		
+		// notes (dictionary)
+		long size = readVarint();
+		if (size > count) {
+			throw new IOException("invalid notes dictionary size " + size);
+		}
+		String[] dictionary = new String[(int)size];
+		for (int i = 0; i < dictionary.length; i++) {
+			dictionary[i] = readString();
+		}
+		for (int i = 0; i < count; i++) {
+			long index = readVarint();
+			if (index > dictionary.length) {
+				throw new IOException("invalid notes index " + index);
+			}
+			notes[i] = (index == 0) ? null : dictionary[(int)index - 1];
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the id of the current vehicle.
+	 * @return the vehicle id.
+	 */
+	public int getVehicleID() {
+		return id;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the name of the current vehicle.
+	 * @return the vehicle name.
+	 */
+	public String getVehicleName() {
+		return name;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the tank size of the current vehicle.
+	 * @return the tank size (null if not specified).
+	 */
+	public Float getTankSize() {
+		return tankSize;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the number of records of the current vehicle.
+	 * @return the number of records.
+	 */
+	public int getRecordCount() {
+		return count;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the date of a record (time in milliseconds).
+	 * @param i - the record index (records are in ascending odometer order).
+	 * @return the time value.
+	 */
+	public long getTime(int i) {
+		return time[i];
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the odometer value of a record.
+	 * @param i - the record index (records are in ascending odometer order).
+	 * @return the odometer value.
+	 */
+	public int getOdometer(int i) {
+		return odometer[i];
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the amount of gasoline purchased for a record.
+	 * @param i - the record index (records are in ascending odometer order).
+	 * @return the gallons value.
+	 */
+	public float getGallons(int i) {
+		return gallons[i];
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the cost of the gasoline purchased for a record.
+	 * @param i - the record index (records are in ascending odometer order).
+	 * @return the cost value.
+	 */
+	public double getCost(int i) {
+		return cost[i];
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Indicates whether the tank was filled for a record.
+	 * @param i - the record index (records are in ascending odometer order).
+	 * @return true if the tank was filled.
+	 */
+	public boolean isFullTank(int i) {
+		return (flags[i] & 1) != 0;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Indicates whether the mileage calculation is hidden for a record.
+	 * @param i - the record index (records are in ascending odometer order).
+	 * @return true if hidden.
+	 */
+	public boolean isHidden(int i) {
+		return (flags[i] & 2) != 0;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the notes for a record.
+	 * @param i - the record index (records are in ascending odometer order).
+	 * @return the notes (null if none).
+	 */
+	public String getNotes(int i) {
+		return notes[i];
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Closes the input.
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads the checksum at the end of the file and compares it to the 
+	 * checksum of the bytes read.
+	 * @throws IOException if the checksums differ.
+	 */
+	private void verifyChecksum() throws IOException {
+		long expected = in.getChecksum().getValue();
+		long actual = 0;
+		for (int i = 0; i < 4; i++) {
+			actual = (actual << 8) | readByte();
+		}
+		if (actual != expected) {
+			throw new IOException("backup checksum mismatch");
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads a byte.
+	 * @return the byte value (0-255).
+	 * @throws IOException if the read fails or at end of file.
+	 */
+	private int readByte() throws IOException {
+		int b = in.read();
+		if (b < 0) {
+			throw new EOFException("unexpected end of backup file");
+		}
+		return b;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads an unsigned varint.
+	 * @return the value.
+	 * @throws IOException if the read fails or the value is invalid.
+	 */
+	private long readVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readByte();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("invalid varint");
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads a string (varint length and UTF-8 bytes).
+	 * @return the string.
+	 * @throws IOException if the read fails or the length is invalid.
+	 */
+	private String readString() throws IOException {
+		long length = readVarint();
+		if (length > MAX_STRING) {
+			throw new IOException("invalid string length " + length);
+		}
+		byte[] bytes = new byte[(int)length];
+		int offset = 0;
+		while (offset < bytes.length) {
+			int n = in.read(bytes,offset,bytes.length - offset);
+			if (n < 0) {
+				throw new EOFException("unexpected end of backup file");
+			}
+			offset += n;
+		}
+		return new String(bytes,"UTF-8");
+	}
+}
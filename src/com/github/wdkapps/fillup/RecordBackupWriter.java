@@ -0,0 +1,307 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+package com.github.wdkapps.fillup;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * DESCRIPTION:
+ * Writes vehicles and their gas records to a compact binary backup file.
+ * The records of each vehicle are added in odometer order, then written
+ * column by column when the vehicle is written:
+ * <pre>
+ * file    = magic version vehicle* END checksum
+ * vehicle = VEHICLE id name tanksize count odometers times gallons costs flags notes
+ * </pre>
+ * <ul>
+ * <li>integers are unsigned varints (7 bits per byte, low order first).
+ * <li>odometer and time values are stored as the difference from the 
+ * previous record (times as zigzag encoded signed varints).
+ * <li>gallons, cost and tank size values are fixed-point (1/1000).
+ * <li>full tank and hidden flags are packed 2 bits per record.
+ * <li>notes are stored once in a dictionary and referenced by index 
+ * (0 = no notes).
+ * <li>strings are a varint length followed by UTF-8 bytes.
+ * <li>the checksum is the CRC32 of all preceding bytes (4 bytes, big-endian).
+ * </ul>
+ * @see RecordBackupReader
+ */
+class RecordBackupWriter implements Closeable {
+	
+	/// identifies a backup file
+	static final byte[] MAGIC = {'F','L','B','K'};
+	
+	/// the format version
+	static final int VERSION = 1;
+	
+	/// tags that precede each section of the file
+	static final int END = 0;
+	static final int VEHICLE = 1;
+	
+	/// scale of fixed-point values
+	static final int SCALE = 1000;
+	
+	/// the output
+	private final OutputStream out;
+	
+	/// checksum of all bytes written
+	private final CRC32 crc = new CRC32();
+
+	/// encoding buffer
+	private byte[] buffer = new byte[8192];
+	private int length = 0;
+	
+	/// column values of the records added for the current vehicle
+	private int count = 0;
+	private long[] time = new long[256];
+	private int[] odometer = new int[256];
+	private float[] gallons = new float[256];
+	private double[] cost = new double[256];
+	private boolean[] fulltank = new boolean[256];
+	private boolean[] hidden = new boolean[256];
+	private String[] notes = new String[256];
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of RecordBackupWriter and writes the file header.
+	 * @param out - the OutputStream to write to.
+	 * @throws IOException if the write fails.
+	 */
+	public RecordBackupWriter(OutputStream out) throws IOException {
+		this.out = new BufferedOutputStream(out);
+		for (byte b : MAGIC) putByte(b);
+		putVarint(VERSION);
+		flush();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Adds a record to the current vehicle. Records must be added in 
+	 * ascending odometer order.
+	 * @param time - the record date (time in milliseconds).
+	 * @param odometer - the odometer value.
+	 * @param gallons - the amount of gasoline purchased.
+	 * @param fulltank - true if the tank was filled.
+	 * @param hidden - true if the mileage calculation is hidden.
+	 * @param cost - the cost of the gasoline purchased.
+	 * @param notes - the notes (can be null).
+	 */
+	public void add(long time, int odometer, float gallons, boolean fulltank, boolean hidden, double cost, String notes) {
+		if ((count > 0) && (odometer <= this.odometer[count - 1])) {
+			throw new IllegalArgumentException("records must be in ascending odometer order");
+		}
+		if (count == this.time.length) {
+			int capacity = count * 2;
+			this.time = Arrays.copyOf(this.time,capacity);
+			this.odometer = Arrays.copyOf(this.odometer,capacity);
+			this.gallons = Arrays.copyOf(this.gallons,capacity);
+			this.cost = Arrays.copyOf(this.cost,capacity);
+			this.fulltank = Arrays.copyOf(this.fulltank,capacity);
+			this.hidden = Arrays.copyOf(this.hidden,capacity);
+			this.notes = Arrays.copyOf(this.notes,capacity);
+		}
+		this.time[count] = time;
+		this.odometer[count] = odometer;
+		this.gallons[count] = gallons;
+		this.cost[count] = cost;
+		this.fulltank[count] = fulltank;
+		this.hidden[count] = hidden;
+		this.notes[count] = notes;
+		count++;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Writes a vehicle and the records added for it, then starts a new
+	 * vehicle.
+	 * @param id - the vehicle id.
+	 * @param name - the vehicle name.
+	 * @param tankSize - the vehicle tank size (can be null).
+	 * @throws IOException if the write fails.
+	 */
+	public void writeVehicle(int id, String name, Float tankSize) throws IOException {
+		
+		putVarint(VEHICLE);
+		putVarint(id);
+		putString(name);
+		putVarint((tankSize == null) ? 0 : toFixed(tankSize) + 1);
+		putVarint(count);
+		
+		// odometer (delta)
+		int previousOdometer = 0;
+		for (int i = 0; i < count; i++) {
+			putVarint(odometer[i] - previousOdometer);
+			previousOdometer = odometer[i];
+		}
+		flush();
+
+		// time (signed delta)
+		long previousTime = 0;
+		for (int i = 0; i < count; i++) {
+			long delta = time[i] - previousTime;
+			putVarint((delta << 1) ^ (delta >> 63));
+			previousTime = time[i];
+		}
+		flush();
+		
+		// gallons and cost (fixed-point)
+		for (int i = 0; i < count; i++) {
+			putVarint(toFixed(gallons[i]));
+		}
+		flush();
+		for (int i = 0; i < count; i++) {
+			putVarint(toFixed(cost[i]));
+		}
+		flush();
+		
+		// flags (packed)
+		int bits = 0;
+		for (int i = 0; i < count; i++) {
+			int flags = (fulltank[i] ? 1 : 0) | (hidden[i] ? 2 : 0);
+			bits |= flags << ((i % 4) * 2);
+			if ((i % 4 == 3) || (i == count - 1)) {
+				putByte(bits);
+				bits = 0;
+			}
+		}
+		flush();
+		
+		// notes (dictionary)
+		Map<String,Integer> index = new HashMap<String,Integer>();
+		List<String> dictionary = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			if ((notes[i] != null) && !index.containsKey(notes[i])) {
+				dictionary.add(notes[i]);
+				index.put(notes[i],dictionary.size());
+			}
+		}
+		putVarint(dictionary.size());
+		for (String text : dictionary) {
+			putString(text);
+		}
+		for (int i = 0; i < count; i++) {
+			putVarint((notes[i] == null) ? 0 : index.get(notes[i]));
+			notes[i] = null;
+		}
+		flush();
+		
+		count = 0;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Writes the end of the file and its checksum. Must be called after
+	 * the last vehicle has been written, else the file is incomplete.
+	 * @throws IOException if the write fails.
+	 */
+	public void finish() throws IOException {
+		putVarint(END);
+		flush();
+		long value = crc.getValue();
+		out.write((int)(value >>> 24));
+		out.write((int)(value >>> 16));
+		out.write((int)(value >>> 8));
+		out.write((int)value);
+		out.flush();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Closes the output.
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Converts a value to fixed-point.
+	 * @param value - the value (not negative).
+	 * @return the fixed-point value.
+	 */
+	private static long toFixed(double value) {
+		return Math.round(value * SCALE);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Appends a byte to the encoding buffer.
+	 * @param b - the byte.
+	 */
+	private void putByte(int b) {
+		if (length == buffer.length) {
+			buffer = Arrays.copyOf(buffer,buffer.length * 2);
+		}
+		buffer[length++] = (byte)b;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Appends an unsigned varint to the encoding buffer.
+	 * @param value - the value.
+	 */
+	private void putVarint(long value) {
+		while ((value & ~0x7FL) != 0) {
+			putByte((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		putByte((int)value);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Appends a string (varint length and UTF-8 bytes) to the encoding buffer.
+	 * @param text - the string.
+	 */
+	private void putString(String text) {
+		byte[] bytes;
+		try {
+			bytes = text.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		putVarint(bytes.length);
+		for (byte b : bytes) putByte(b);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Writes the encoding buffer to the output and updates the checksum.
+	 * @throws IOException if the write fails.
+	 */
+	private void flush() throws IOException {
+		crc.update(buffer,0,length);
+		out.write(buffer,0,length);
+		length = 0;
+	}
+}
@@ -0,0 +1,287 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+package com.github.wdkapps.fillup;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * DESCRIPTION:
+ * A read-only, column oriented store of a vehicle's gas record data. 
+ * Each attribute is held in a primitive array (one element per record) 
+ * so that large record sets can be evaluated for calculations, plots 
+ * and statistics without creating a GasRecord instance (and the boxed 
+ * values it holds) for every record. Records are accessed by index:
+ * <pre>
+ *   for (int i = 0; i < columns.size(); i++) {
+ *       if (columns.hasCalculation(i)) {
+ *           float mileage = columns.getMileage(i,units);
+ *       }
+ *   }
+ * </pre>
+ * Mileage calculations are derived from the segment values stored in the
+ * log, so they do not depend on the other records in the store.
+ */
+public class RecordColumns {
+	
+	/// initial capacity when the number of records is not known
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/// the number of records in the store
+	private int size;
+	
+	/// the record dates (time in milliseconds)
+	private long[] time;
+	
+	/// the odometer values
+	private int[] odometer;
+	
+	/// the amount of gasoline purchased
+	private float[] gallons;
+	
+	/// the cost of the gasoline purchased
+	private double[] cost;
+	
+	/// the odometer value of the previous full tank (start of mileage calculation)
+	private int[] segstart;
+	
+	/// the amount of gasoline used since the previous full tank
+	private float[] segvolume;
+	
+	/// set bit for each record that is a full tank
+	private final BitSet fulltank = new BitSet();
+	
+	/// set bit for each record with a hidden mileage calculation
+	private final BitSet hidden = new BitSet();
+	
+	/// set bit for each record with a mileage calculation
+	private final BitSet calculated = new BitSet();
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an empty instance of RecordColumns.
+	 */
+	public RecordColumns() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an empty instance of RecordColumns with room for a 
+	 * specified number of records.
+	 * @param capacity - the expected number of records.
+	 */
+	RecordColumns(int capacity) {
+		capacity = Math.max(capacity,1);
+		time = new long[capacity];
+		odometer = new int[capacity];
+		gallons = new float[capacity];
+		cost = new double[capacity];
+		segstart = new int[capacity];
+		segvolume = new float[capacity];
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Appends a record to the store (as read from the log database).
+	 * @param time - the record date (time in milliseconds).
+	 * @param odometer - the odometer value.
+	 * @param gallons - the amount of gasoline purchased.
+	 * @param cost - the cost of the gasoline purchased.
+	 * @param fulltank - true if the tank was filled.
+	 * @param hidden - true if the mileage calculation is hidden.
+	 * @param calculated - true if the record has a mileage calculation.
+	 * @param segstart - the odometer value of the previous full tank.
+	 * @param segvolume - the amount of gasoline used since the previous full tank.
+	 */
+	void add(long time, int odometer, float gallons, double cost, boolean fulltank, 
+			boolean hidden, boolean calculated, int segstart, float segvolume) {
+		
+		// grow the arrays as needed
+		if (size == this.time.length) {
+			int capacity = size * 2;
+			this.time = Arrays.copyOf(this.time,capacity);
+			this.odometer = Arrays.copyOf(this.odometer,capacity);
+			this.gallons = Arrays.copyOf(this.gallons,capacity);
+			this.cost = Arrays.copyOf(this.cost,capacity);
+			this.segstart = Arrays.copyOf(this.segstart,capacity);
+			this.segvolume = Arrays.copyOf(this.segvolume,capacity);
+		}
+		
+		this.time[size] = time;
+		this.odometer[size] = odometer;
+		this.gallons[size] = gallons;
+		this.cost[size] = cost;
+		this.fulltank.set(size,fulltank);
+		this.hidden.set(size,hidden);
+		this.calculated.set(size,calculated);
+		this.segstart[size] = segstart;
+		this.segvolume[size] = segvolume;
+		size++;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the number of records in the store.
+	 * @return the record count.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Determines if the store contains no records.
+	 * @return true if empty.
+	 */
+	public boolean isEmpty() {
+		return (size == 0);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the date of a record.
+	 * @param index - the record index.
+	 * @return the date as time in milliseconds.
+	 */
+	public long getTime(int index) {
+		checkIndex(index);
+		return time[index];
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Returns the odometer value of a record.
+	 * @param index - the record index.
+	 * @return the odometer value.
+	 */
+	public int getOdometer(int index) {
+		checkIndex(index);
+		return odometer[index];
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Returns the amount of gasoline purchased for a record.
+	 * @param index - the record index.
+	 * @return the amount of gasoline.
+	 */
+	public float getGallons(int index) {
+		checkIndex(index);
+		return gallons[index];
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Returns the cost of gasoline purchased for a record.
+	 * @param index - the record index.
+	 * @return the cost.
+	 */
+	public double getCost(int index) {
+		checkIndex(index);
+		return cost[index];
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Determines if the tank was filled for a record.
+	 * @param index - the record index.
+	 * @return true if a full tank.
+	 */
+	public boolean isFullTank(int index) {
+		checkIndex(index);
+		return fulltank.get(index);
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Determines if the mileage calculation is hidden for a record.
+	 * @param index - the record index.
+	 * @return true if hidden.
+	 */
+	public boolean isCalculationHidden(int index) {
+		checkIndex(index);
+		return hidden.get(index);
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Determines if a record has a mileage calculation.
+	 * @param index - the record index.
+	 * @return true if the record has a mileage calculation.
+	 */
+	public boolean hasCalculation(int index) {
+		checkIndex(index);
+		return calculated.get(index);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the distance driven since the previous full tank for a record.
+	 * @param index - the record index.
+	 * @return the distance (0 if the record has no mileage calculation).
+	 */
+	public int getDistanceDriven(int index) {
+		if (!hasCalculation(index)) return 0;
+		return odometer[index] - segstart[index];
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the amount of gasoline used since the previous full tank for a record.
+	 * @param index - the record index.
+	 * @return the amount of gasoline (0 if the record has no mileage calculation).
+	 */
+	public float getGasolineUsed(int index) {
+		if (!hasCalculation(index)) return 0f;
+		return segvolume[index];
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Calculates the mileage for a record. The result is the same as 
+	 * GasRecord.getCalculation().getMileage() for the record.
+	 * @param index - the record index.
+	 * @param units - the Units of measurement to use for calculations.
+	 * @return the mileage (0 if the record has no mileage calculation).
+	 */
+	public float getMileage(int index, Units units) {
+		int distance = getDistanceDriven(index);
+		float gasoline = getGasolineUsed(index);
+		if ((distance > 0) && (gasoline > 0)) {
+			return (float)MileageCalculation.getMileage((double)distance/gasoline,units);
+		}
+		return 0f;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Verifies that an index refers to a record in the store.
+	 * @param index - the record index.
+	 * @throws IndexOutOfBoundsException if not.
+	 */
+	private void checkIndex(int index) {
+		if ((index < 0) || (index >= size)) {
+			throw new IndexOutOfBoundsException("index=" + index + " size=" + size);
+		}
+	}
+	
+}
@@ -0,0 +1,537 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+package com.github.wdkapps.fillup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * DESCRIPTION:
+ * Reads gas records from ASCII CSV text (RFC 4180). The text is parsed one 
+ * character at a time from a buffered stream; quoted fields may contain 
+ * commas, quotes (doubled) and line breaks. Each record is one of the 
+ * layouts written by current or previous versions of the application, 
+ * identified by the number of fields:
+ * <ul>
+ * <li>database version 5 or later (7 or 8 fields):<br>
+ * <pre>date,odometer,gallons,fulltank,hidden,cost,notes,[calculation]</pre>
+ * <li>prior to database version 5 (5 or 6 fields):<br>
+ * <pre>date,odometer,gallons,fulltank,hidden,[calculation]</pre>
+ * </ul>
+ * The date is MM/dd/yyyy with an optional HH:mm time (local time). The 
+ * calculation values are for user information only and are ignored. 
+ * Blank lines are skipped.
+ * <p>
+ * NOTE: not thread-safe (each thread should use its own instance).
+ */
+class RecordCsvReader implements Closeable {
+	
+	/// maximum number of fields in a record
+	private static final int MAX_FIELDS = 8;
+	
+	/// size of the input buffer (characters)
+	private static final int BUFFER_SIZE = 16384;
+	
+	/// indicates no character has been pushed back
+	private static final int NONE = -2;
+	
+	/// end of input
+	private static final int EOF = -1;
+
+	/// the input
+	private final Reader in;
+	
+	/// buffered input characters
+	private final char[] input = new char[BUFFER_SIZE];
+	
+	/// position of the next character in the input buffer
+	private int position;
+	
+	/// number of characters in the input buffer
+	private int limit;
+	
+	/// a character that was read ahead (NONE if none)
+	private int pushback = NONE;
+	
+	/// the characters of the fields of the current record (unquoted)
+	private char[] text = new char[256];
+	
+	/// number of characters in the current record
+	private int length;
+	
+	/// start and end offsets of each field in the current record
+	private final int[] starts = new int[MAX_FIELDS];
+	private final int[] ends = new int[MAX_FIELDS];
+	
+	/// number of fields in the current record
+	private int fields;
+	
+	/// number of lines read
+	private int lines;
+	
+	/// the time parsed by parseDateTime()
+	private long time;
+	
+	/// used to convert date/time fields to a time (local time)
+	private final Calendar calendar = Calendar.getInstance();
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of RecordCsvReader.
+	 * @param in - the Reader to read CSV text from.
+	 */
+	public RecordCsvReader(Reader in) {
+		this.in = in;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Parses a single line of CSV text into an existing GasRecord.
+	 * @param csv - the CSV text.
+	 * @param record - the GasRecord to set values for.
+	 * @throws ParseException if the text is not a valid record.
+	 * @throws NumberFormatException if the text contains invalid numeric values.
+	 */
+	static void parse(String csv, GasRecord record) throws ParseException, NumberFormatException {
+		RecordCsvReader reader = new RecordCsvReader(new StringReader(csv));
+		try {
+			if (!reader.readFields()) {
+				throw new ParseException("Invalid CSV length",0);
+			}
+		} catch (IOException e) {
+			throw new ParseException(e.getMessage(),0);
+		}
+		reader.setValues(record);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads the next record.
+	 * @return a new GasRecord (null at end of input).
+	 * @throws IOException if the read fails.
+	 * @throws ParseException if the text is not a valid record.
+	 * @throws NumberFormatException if the text contains invalid numeric values.
+	 */
+	public GasRecord read() throws IOException, ParseException, NumberFormatException {
+		while (readFields()) {
+			
+			// skip blank lines
+			if ((fields == 1) && (ends[0] == starts[0])) {
+				continue;
+			}
+			
+			GasRecord record = new GasRecord();
+			setValues(record);
+			return record;
+		}
+		return null;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads the unparsed text of the next records. Record boundaries are 
+	 * found using the same rules as read(), so the text can be parsed 
+	 * separately (by another RecordCsvReader) without splitting a quoted
+	 * field.
+	 * @param chunk - a StringBuilder to append the text to.
+	 * @param records - the maximum number of records to read.
+	 * @return the number of records read (0 at end of input).
+	 * @throws IOException if the read fails.
+	 */
+	int readChunk(StringBuilder chunk, int records) throws IOException {
+		int count = 0;
+		while (count < records) {
+			int c = next();
+			if (c == EOF) {
+				break;
+			}
+			lines++;
+			count++;
+			
+			boolean quoted = false;
+			boolean fieldStart = true;
+			while (c != EOF) {
+				chunk.append((char)c);
+				if (quoted) {
+					if (c == '"') {
+						c = next();
+						if (c != '"') {
+							// end of quoted text
+							quoted = false;
+							continue;
+						}
+						chunk.append((char)c);
+					} else if (c == '\n') {
+						lines++;
+					}
+				} else if (c == ',') {
+					fieldStart = true;
+					c = next();
+					continue;
+				} else if (c == '\n') {
+					break;
+				} else if (c == '\r') {
+					int d = next();
+					if (d == '\n') {
+						chunk.append((char)d);
+					} else {
+						pushback = d;
+					}
+					break;
+				} else if ((c == '"') && fieldStart) {
+					quoted = true;
+				}
+				fieldStart = false;
+				c = next();
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the number of lines read so far (the line number of the 
+	 * end of the last record read).
+	 * @return the number of lines.
+	 */
+	public int getLineNumber() {
+		return lines;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Closes the input.
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Returns the next input character.
+	 * @return the character (EOF at end of input).
+	 * @throws IOException if the read fails.
+	 */
+	private int next() throws IOException {
+		if (pushback != NONE) {
+			int c = pushback;
+			pushback = NONE;
+			return c;
+		}
+		if (position == limit) {
+			limit = in.read(input,0,input.length);
+			position = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return EOF;
+			}
+		}
+		return input[position++];
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Appends a character to the current field.
+	 * @param c - the character.
+	 */
+	private void append(int c) {
+		if (length == text.length) {
+			char[] larger = new char[text.length * 2];
+			System.arraycopy(text,0,larger,0,length);
+			text = larger;
+		}
+		text[length++] = (char)c;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Ends the current field and starts the next one.
+	 */
+	private void endField() {
+		if (fields < MAX_FIELDS) {
+			ends[fields] = length;
+		}
+		fields++;
+		if (fields < MAX_FIELDS) {
+			starts[fields] = length;
+		}
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Reads the fields of the next record (one line, unless a quoted field
+	 * contains line breaks).
+	 * @return false at end of input.
+	 * @throws IOException if the read fails.
+	 */
+	private boolean readFields() throws IOException {
+		length = 0;
+		fields = 0;
+		starts[0] = 0;
+		
+		int c = next();
+		if (c == EOF) {
+			return false;
+		}
+		lines++;
+		
+		boolean quoted = false;
+		boolean fieldStart = true;
+		while (true) {
+			if (c == EOF) {
+				endField();
+				return true;
+			}
+			if (quoted) {
+				if (c == '"') {
+					c = next();
+					if (c != '"') {
+						// end of quoted text
+						quoted = false;
+						continue;
+					}
+				} else if (c == '\n') {
+					lines++;
+				}
+				append(c);
+			} else if (c == ',') {
+				endField();
+				fieldStart = true;
+				c = next();
+				continue;
+			} else if ((c == '\n') || (c == '\r')) {
+				if (c == '\r') {
+					int d = next();
+					if (d != '\n') pushback = d;
+				}
+				endField();
+				return true;
+			} else if ((c == '"') && fieldStart) {
+				quoted = true;
+			} else {
+				append(c);
+			}
+			fieldStart = false;
+			c = next();
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the text of a field as a String.
+	 * @param field - the field index.
+	 * @return the field text.
+	 */
+	private String getString(int field) {
+		return new String(text,starts[field],ends[field] - starts[field]);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Parses a field as a boolean value ("true" in any case is true, 
+	 * anything else is false).
+	 * @param field - the field index.
+	 * @return the boolean value.
+	 */
+	private boolean getBoolean(int field) {
+		final String TRUE = "true";
+		int start = starts[field];
+		if (ends[field] - start != TRUE.length()) {
+			return false;
+		}
+		for (int i = 0; i < TRUE.length(); i++) {
+			if (Character.toLowerCase(text[start + i]) != TRUE.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Parses a field as an odometer value.
+	 * @param field - the field index.
+	 * @return the odometer value.
+	 * @throws NumberFormatException if the field is not a valid odometer value.
+	 */
+	private int getOdometer(int field) throws NumberFormatException {
+		int start = starts[field];
+		int end = ends[field];
+		if (start == end) {
+			throw new NumberFormatException("Invalid odometer value.");
+		}
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			char c = text[i];
+			if ((c < '0') || (c > '9')) {
+				throw new NumberFormatException("Invalid odometer value.");
+			}
+			value = (value * 10) + (c - '0');
+			if (value > GasRecord.MAX_ODOMETER) {
+				throw new NumberFormatException("Value out of range.");
+			}
+		}
+		return (int)value;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Parses a number of digits within a field.
+	 * @param index - offset of the first digit in the record text.
+	 * @param end - offset of the end of the field.
+	 * @param min - the minimum number of digits.
+	 * @param max - the maximum number of digits.
+	 * @return the value (-1 if the digits are not valid).
+	 */
+	private int getDigits(int index, int end, int min, int max) {
+		int value = 0;
+		int count = 0;
+		while ((index + count < end) && (count < max)) {
+			char c = text[index + count];
+			if ((c < '0') || (c > '9')) break;
+			value = (value * 10) + (c - '0');
+			count++;
+		}
+		return (count < min) ? -1 : value;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the number of digits at a position in the record text. 
+	 * @param index - offset of the first digit in the record text.
+	 * @param end - offset of the end of the field.
+	 * @return the number of consecutive digits.
+	 */
+	private int countDigits(int index, int end) {
+		int count = 0;
+		while ((index + count < end) && Character.isDigit(text[index + count])) {
+			count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Parses a field as a date/time in the format MM/dd/yyyy HH:mm or 
+	 * MM/dd/yyyy (local time). The result is stored in the time attribute.
+	 * Text following the date/time (such as seconds or spaces) is ignored, 
+	 * as it was by SimpleDateFormat.parse(). If the text following the date
+	 * is not a valid time, only the date is used.
+	 * @param field - the field index.
+	 * @return true if the field is a valid date/time.
+	 */
+	private boolean parseDateTime(int field) {
+		int i = starts[field];
+		int end = ends[field];
+		int n;
+		
+		// month
+		n = countDigits(i,end);
+		int month = getDigits(i,end,1,2);
+		if ((n > 2) || (month < 1) || (month > 12)) return false;
+		i += n;
+		if ((i >= end) || (text[i++] != '/')) return false;
+
+		// day
+		n = countDigits(i,end);
+		int day = getDigits(i,end,1,2);
+		if ((n > 2) || (day < 1) || (day > 31)) return false;
+		i += n;
+		if ((i >= end) || (text[i++] != '/')) return false;
+		
+		// year
+		n = countDigits(i,end);
+		int year = getDigits(i,end,1,4);
+		if ((n > 4) || (year < 0)) return false;
+		i += n;
+		
+		// optional time (any text that follows is ignored)
+		int hour = 0;
+		int minute = 0;
+		if ((i < end) && (text[i++] == ' ')) {
+			n = countDigits(i,end);
+			int h = getDigits(i,end,1,2);
+			i += n;
+			if ((n <= 2) && (h >= 0) && (h <= 23) && (i < end) && (text[i++] == ':')) {
+				n = countDigits(i,end);
+				int m = getDigits(i,end,1,2);
+				if ((n <= 2) && (m >= 0) && (m <= 59)) {
+					hour = h;
+					minute = m;
+				}
+			}
+		}
+		
+		calendar.clear();
+		calendar.set(year,month - 1,day,hour,minute,0);
+		time = calendar.getTimeInMillis();
+		return true;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Sets the values of a GasRecord from the fields of the current record.
+	 * @param record - the GasRecord.
+	 * @throws ParseException if the fields are not a valid record.
+	 * @throws NumberFormatException if the fields contain invalid numeric values.
+	 */
+	private void setValues(GasRecord record) throws ParseException, NumberFormatException {
+		
+		boolean current;
+		switch (fields) {
+		case 8:  // db_version=5 with calculation
+		case 7:  // db_version=5
+			current = true;
+			break;
+		case 6:  // db_version<5 with calculation
+		case 5:  // db_version<5
+			current = false;
+			break;
+		default:
+			throw new ParseException("Invalid CSV length",fields);
+		}
+		
+		if (!parseDateTime(0)) {
+			throw new ParseException("Unparseable date: \"" + getString(0) + "\"",0);
+		}
+		record.setDate(new Date(time));
+		record.setOdometer(getOdometer(1));
+		record.setGallons(getString(2));
+		record.setFullTank(getBoolean(3));
+		record.setHiddenCalculation(getBoolean(4));
+		if (current) {
+			record.setCost(getString(5));
+			record.setNotes(getString(6));
+		} else {
+			record.setCost(0d);
+			record.setNotes("");
+		}
+		record.calculatePrice();
+	}
+	
+}
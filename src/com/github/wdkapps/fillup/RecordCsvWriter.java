@@ -0,0 +1,172 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+package com.github.wdkapps.fillup;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * DESCRIPTION:
+ * Writes gas record values as lines of ASCII CSV text in the format 
+ * read by RecordCsvReader:
+ * <pre>date,odometer,gallons,fulltank,hidden,cost,notes,[calculation]</pre>
+ * Each line is assembled in a reusable buffer and written through a 
+ * buffered Writer, so no intermediate Strings are created per record. 
+ * Numeric values and dates are formatted by ValueFormatter, with '.' as 
+ * the decimal separator and ASCII digits.
+ */
+class RecordCsvWriter implements Closeable {
+
+	/// size of the output buffer (characters)
+	private static final int BUFFER_SIZE = 16384;
+	
+	/// maximum number of fraction digits written for cost values
+	private static final int MAX_COST_DIGITS = 6;
+	
+	/// end of line string
+	private static final String newline = System.getProperty("line.separator");
+	
+	/// the output
+	private final Writer out;
+	
+	/// number of fraction digits written for cost values
+	private final int costDigits;
+	
+	/// the line being assembled
+	private final StringBuilder line = new StringBuilder(128);
+	
+	/// the characters of the line being written
+	private char[] chars = new char[128];
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of RecordCsvWriter.
+	 * @param out - the Writer to write lines to.
+	 * @param costDigits - the number of fraction digits to write for cost values.
+	 */
+	public RecordCsvWriter(Writer out, int costDigits) {
+		this.out = new BufferedWriter(out,BUFFER_SIZE);
+		this.costDigits = Math.max(0,Math.min(costDigits,MAX_COST_DIGITS));
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Writes one record as a line of CSV text.
+	 * @param time - the record date (time in milliseconds).
+	 * @param odometer - the odometer value.
+	 * @param gallons - the amount of gasoline purchased.
+	 * @param fulltank - true if the tank was filled.
+	 * @param hidden - true if the mileage calculation is hidden.
+	 * @param cost - the cost of the gasoline purchased.
+	 * @param notes - the notes (can be null).
+	 * @param calculated - true to write the mileage calculation column.
+	 * @param mileage - the mileage calculation value.
+	 * @throws IOException if the write fails.
+	 */
+	public void write(long time, int odometer, float gallons, boolean fulltank, boolean hidden,
+			double cost, String notes, boolean calculated, float mileage) throws IOException {
+		ValueFormatter formatter = ValueFormatter.getCsvInstance();
+		line.setLength(0);
+		formatter.appendCsvDateTime(line,time).append(',');
+		line.append(odometer).append(',');
+		formatter.appendCsvFixed(line,gallons,3).append(',');
+		line.append(fulltank).append(',');
+		line.append(hidden).append(',');
+		formatter.appendCsvFixed(line,cost,costDigits).append(',');
+		appendText(notes);
+		if (calculated) {
+			line.append(',');
+			formatter.appendCsvFixed(line,mileage,2);
+		}
+		writeLine();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Writes a line of CSV text values, quoted as needed.
+	 * @param fields - the values (null values are written as empty fields).
+	 * @throws IOException if the write fails.
+	 */
+	public void writeFields(String... fields) throws IOException {
+		line.setLength(0);
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) line.append(',');
+			appendText(fields[i]);
+		}
+		writeLine();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Flushes and closes the output.
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Writes the assembled line followed by an end of line.
+	 * @throws IOException if the write fails.
+	 */
+	private void writeLine() throws IOException {
+		int length = line.length();
+		if (chars.length < length) {
+			chars = new char[Math.max(length,chars.length * 2)];
+		}
+		line.getChars(0,length,chars,0);
+		out.write(chars,0,length);
+		out.write(newline);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Appends text (notes, names) to the line. Text containing commas, 
+	 * quotes or line breaks is quoted (RFC 4180), with embedded quotes 
+	 * doubled.
+	 * @param text - the text (can be null).
+	 */
+	private void appendText(String text) {
+		if (text == null) return;
+		
+		boolean quote = false;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if ((c == ',') || (c == '"') || (c == '\n') || (c == '\r')) {
+				quote = true;
+				break;
+			}
+		}
+		
+		if (quote) line.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"') line.append(c);
+			line.append(c);
+		}
+		if (quote) line.append('"');
+	}
+	
+}
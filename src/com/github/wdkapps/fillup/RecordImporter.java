@@ -0,0 +1,318 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+package com.github.wdkapps.fillup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import android.util.Log;
+
+/**
+ * DESCRIPTION:
+ * Reads gas records from an ASCII CSV file using a pipeline of threads:
+ * <ol>
+ * <li>a reader thread splits the file into chunks of unparsed records,
+ * <li>a pool of parser threads converts each chunk to GasRecords,
+ * <li>the thread iterating over the importer (the writer) receives the
+ * records.
+ * </ol>
+ * Chunks are passed to the writer through a bounded queue, in file order,
+ * so the writer sees the records in the same order as a single-threaded 
+ * parse while the file is still being read. Iteration stops at the first 
+ * error (in file order) or when the import is canceled; isComplete() 
+ * indicates whether the entire file was read.
+ * <p>
+ * NOTE: must be closed after use to stop the background threads.
+ */
+class RecordImporter implements Iterable<GasRecord>, Closeable {
+	
+	/// a tag string for debug logging (the name of this class)
+	private static final String TAG = RecordImporter.class.getName();
+	
+	/// number of records per chunk
+	private static final int CHUNK_RECORDS = 500;
+	
+	/// maximum number of chunks queued for the writer
+	private static final int QUEUE_SIZE = 8;
+	
+	/// maximum number of parser threads
+	private static final int MAX_PARSERS = 4;
+	
+	/**
+	 * DESCRIPTION:
+	 * The parsed records of one chunk of the file.
+	 */
+	private static class Chunk {
+		
+		/// the records (null marks the end of the file)
+		final List<GasRecord> records;
+		
+		/// number of CSV lines in the chunk
+		final int lines;
+		
+		Chunk(List<GasRecord> records, int lines) {
+			this.records = records;
+			this.lines = lines;
+		}
+	}
+	
+	/// marks the end of the file
+	private static final Chunk END = new Chunk(null,0);
+
+	/// the file to import
+	private final InputStream file;
+	
+	/// reports progress and requests cancellation
+	private final ImportProgress progress;
+	
+	/// parsed chunks (pending or complete) in file order
+	private final BlockingQueue<Future<Chunk>> queue = new ArrayBlockingQueue<Future<Chunk>>(QUEUE_SIZE);
+	
+	/// parses chunks
+	private final ExecutorService parsers;
+	
+	/// splits the file into chunks
+	private final Thread reader;
+	
+	/// true if the end of the file has been reached without error
+	private boolean complete = false;
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of RecordImporter and starts reading the file.
+	 * @param file - the ASCII CSV data file to import.
+	 * @param progress - reports progress and requests cancellation.
+	 */
+	RecordImporter(InputStream file, ImportProgress progress) {
+		this.file = file;
+		this.progress = progress;
+		
+		int threads = Runtime.getRuntime().availableProcessors();
+		threads = Math.max(1, Math.min(threads, MAX_PARSERS));
+		parsers = Executors.newFixedThreadPool(threads);
+		
+		reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				read();
+			}
+		},TAG);
+		reader.start();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Indicates whether all records in the file have been returned by
+	 * the iterator (no errors occurred and the import was not canceled).
+	 * @return true if complete.
+	 */
+	boolean isComplete() {
+		return complete && !progress.isCanceled();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Stops the background threads and closes the file.
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+		final String tag = TAG+".close()";
+		reader.interrupt();
+		parsers.shutdownNow();
+		try {
+			file.close();
+		} catch (IOException e) {
+			Log.e(tag,"close() failed",e);
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Splits the file into chunks and queues them for parsing (reader 
+	 * thread). 
+	 */
+	private void read() {
+		RecordCsvReader in = new RecordCsvReader(new InputStreamReader(file));
+		try {
+			try {
+				while (!progress.isCanceled()) {
+					final int first = in.getLineNumber();
+					StringBuilder text = new StringBuilder();
+					if (in.readChunk(text,CHUNK_RECORDS) == 0) {
+						break;
+					}
+					final int lines = in.getLineNumber() - first;
+					final String chunk = text.toString();
+					queue.put(parsers.submit(new Callable<Chunk>() {
+						@Override
+						public Chunk call() throws Exception {
+							return parse(chunk,first,lines);
+						}
+					}));
+				}
+				queue.put(done(END,null));
+			} catch (IOException e) {
+				queue.put(done(null,new ParseException(e.getMessage(),in.getLineNumber() + 1)));
+			} 
+		} catch (InterruptedException e) {
+			// closed by the writer
+		} catch (RejectedExecutionException e) {
+			// closed by the writer (parsers shut down before the interrupt was seen)
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Parses a chunk of the file (parser thread).
+	 * @param chunk - the unparsed text.
+	 * @param first - the number of lines in the file before the chunk.
+	 * @param lines - the number of lines in the chunk.
+	 * @return the parsed chunk.
+	 * @throws ParseException if a record is invalid (the error offset is
+	 * the line number in the file).
+	 */
+	private static Chunk parse(String chunk, int first, int lines) throws ParseException {
+		List<GasRecord> records = new ArrayList<GasRecord>(CHUNK_RECORDS);
+		RecordCsvReader in = new RecordCsvReader(new StringReader(chunk));
+		try {
+			GasRecord record;
+			while ((record = in.read()) != null) {
+				records.add(record);
+			}
+		} catch (Exception e) {
+			ParseException error = new ParseException(e.getMessage(),first + in.getLineNumber());
+			error.initCause(e);
+			throw error;
+		}
+		return new Chunk(records,lines);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns a completed Future.
+	 * @param chunk - the result.
+	 * @param error - the exception to throw instead (can be null).
+	 * @return the Future.
+	 */
+	private static Future<Chunk> done(final Chunk chunk, final Exception error) {
+		FutureTask<Chunk> future = new FutureTask<Chunk>(new Callable<Chunk>() {
+			@Override
+			public Chunk call() throws Exception {
+				if (error != null) throw error;
+				return chunk;
+			}
+		});
+		future.run();
+		return future;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns an iterator over the records in the file, in file order 
+	 * (the iterator blocks until the next record has been parsed).
+	 * @see java.lang.Iterable#iterator()
+	 */
+	@Override
+	public Iterator<GasRecord> iterator() {
+		return new Iterator<GasRecord>() {
+			
+			/// records of the current chunk
+			private Iterator<GasRecord> current = Collections.<GasRecord>emptyList().iterator();
+			
+			/// true when no more records will be returned
+			private boolean done = false;
+			
+			/// number of lines and records returned
+			private int lines = 0;
+			private int records = 0;
+			
+			@Override
+			public boolean hasNext() {
+				final String tag = TAG+".hasNext()";
+				while (!current.hasNext()) {
+					if (done) return false;
+					if (progress.isCanceled()) {
+						done = true;
+						return false;
+					}
+					try {
+						Chunk chunk = queue.take().get();
+						if (chunk == END) {
+							complete = true;
+							done = true;
+							return false;
+						}
+						current = chunk.records.iterator();
+						lines += chunk.lines;
+						progress.setLineCount(lines);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						done = true;
+						return false;
+					} catch (ExecutionException e) {
+						Log.e(tag,"import failed",e.getCause());
+						int line = lines + 1;
+						if (e.getCause() instanceof ParseException) {
+							line = ((ParseException)e.getCause()).getErrorOffset();
+						}
+						progress.setErrorLine(line);
+						done = true;
+						return false;
+					}
+				}
+				return true;
+			}
+
+			@Override
+			public GasRecord next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				progress.setRecordCount(++records);
+				return current.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
@@ -0,0 +1,291 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+package com.github.wdkapps.fillup;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.util.Log;
+
+/**
+ * DESCRIPTION:
+ * An in-process cache of data read from the GasLog, shared by all 
+ * activities. Results are cached per vehicle and stamped with the 
+ * vehicle's data version; the GasLog increments the version each time 
+ * the vehicle's records are written, so results read before a write are 
+ * never returned after it. The number of vehicles (and the number of 
+ * results per vehicle) cached is limited, discarding the least recently
+ * used first.
+ * <p>
+ * NOTE: Methods read from the GasLog on a cache miss so should not be 
+ * called on the main thread (see AsyncGasLog).
+ */
+public class RecordRepository {
+	
+	/// a tag string for debug logging (the name of this class)
+	private static final String TAG = RecordRepository.class.getName();
+	
+	/// maximum number of vehicles to cache results for
+	private static final int MAX_VEHICLES = 3;
+	
+	/// maximum number of results to cache per vehicle
+	private static final int MAX_RESULTS = 16;
+	
+	/// singleton instance
+	private static RecordRepository instance;
+	
+	/**
+	 * DESCRIPTION:
+	 * A read operation performed on the GasLog on a cache miss.
+	 * @param <T> - the type of the result.
+	 */
+	private interface Query<T> {
+		public T read(GasLog log);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * The cached results for one vehicle.
+	 */
+	private static class Entry {
+		
+		/// the vehicle data version the results were read at
+		int version;
+		
+		/// the results, by key (least recently used first)
+		final Map<String,Object> results = new LinkedHashMap<String,Object>(MAX_RESULTS,0.75f,true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,Object> eldest) {
+				return size() > MAX_RESULTS;
+			}
+		};
+	}
+	
+	/// the cached results by vehicle id (least recently used first)
+	private final Map<Integer,Entry> entries = new LinkedHashMap<Integer,Entry>(MAX_VEHICLES,0.75f,true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer,Entry> eldest) {
+			return size() > MAX_VEHICLES;
+		}
+	};
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the singleton instance of RecordRepository.
+	 * @return the RecordRepository instance.
+	 */
+	public static synchronized RecordRepository getInstance() {
+		if (instance == null) {
+			instance = new RecordRepository();
+		}
+		return instance;
+	}
+
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of RecordRepository (private to enforce singleton).
+	 */
+	private RecordRepository() {
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns a cached result for a vehicle if it is current, otherwise
+	 * reads the result from the GasLog and caches it.
+	 * @param vehicle - the Vehicle the result is for.
+	 * @param key - a String identifying the result.
+	 * @param query - the operation to read the result.
+	 * @return the result.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T get(Vehicle vehicle, String key, Query<T> query) {
+		final String tag = TAG+".get()";
+		GasLog log = GasLog.getInstance();
+		int vid = vehicle.getID();
+		
+		// note: version is read first, a write during the read makes the result stale
+		int version = log.getDataVersion(vehicle);
+		synchronized (this) {
+			Entry entry = entries.get(vid);
+			if ((entry != null) && (entry.version == version)) {
+				Object result = entry.results.get(key);
+				if (result != null) {
+					return (T)result;
+				}
+			}
+		}
+		
+		// cache miss - read outside the lock so other reads are not delayed
+		Log.d(tag,"vehicle=" + vid + " key=" + key + " version=" + version);
+		T result = query.read(log);
+		
+		// cache the result unless the log has changed since
+		synchronized (this) {
+			if (version == log.getDataVersion(vehicle)) {
+				Entry entry = entries.get(vid);
+				if ((entry == null) || (entry.version != version)) {
+					entry = new Entry();
+					entry.version = version;
+					entries.put(vid,entry);
+				}
+				entry.results.put(key,result);
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Discards all cached results.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the number of records in the log for a specific vehicle.
+	 * @see GasLog#readRecordCount(Vehicle)
+	 */
+	public int readRecordCount(final Vehicle vehicle) {
+		return get(vehicle,"count",new Query<Integer>() {
+			@Override
+			public Integer read(GasLog log) {
+				return log.readRecordCount(vehicle);
+			}
+		});
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the records for a vehicle within a range of dates.
+	 * @see GasLog#readRecords(Vehicle, Date, Date)
+	 * @return a copy of the cached GasRecords (the list and records may be modified).
+	 */
+	public List<GasRecord> readRecords(final Vehicle vehicle, final Date start, final Date end) {
+		String key = "range:" + start.getTime() + ":" + end.getTime() + ":" + getUnits();
+		return copy(get(vehicle,key,new Query<List<GasRecord>>() {
+			@Override
+			public List<GasRecord> read(GasLog log) {
+				return log.readRecords(vehicle,start,end);
+			}
+		}));
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns a window of consecutive records for a vehicle.
+	 * @see GasLog#readRecords(Vehicle, int, int)
+	 * @return a copy of the cached GasRecords (the list and records may be modified).
+	 */
+	public List<GasRecord> readRecords(final Vehicle vehicle, final int offset, final int limit) {
+		String key = "window:" + offset + ":" + limit + ":" + getUnits();
+		return copy(get(vehicle,key,new Query<List<GasRecord>>() {
+			@Override
+			public List<GasRecord> read(GasLog log) {
+				return log.readRecords(vehicle,offset,limit);
+			}
+		}));
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Copies a cached List of records so that callers can modify the 
+	 * records without changing the cached results seen by other callers.
+	 * NOTE: the mileage calculations are shared; they are not modified 
+	 * once they have been read from the log.
+	 * @param records - the cached List of GasRecords.
+	 * @return a new List containing a copy of each record.
+	 */
+	private static List<GasRecord> copy(List<GasRecord> records) {
+		List<GasRecord> list = new ArrayList<GasRecord>(records.size());
+		for (GasRecord record : records) {
+			GasRecord copy = new GasRecord(record);
+			copy.setCalculation(record.getCalculation());
+			list.add(copy);
+		}
+		return list;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the dates of all records for a vehicle in odometer order.
+	 * NOTE: the array is shared and must not be modified.
+	 * @see GasLog#readRecordTimes(Vehicle)
+	 */
+	public long[] readRecordTimes(final Vehicle vehicle) {
+		return get(vehicle,"times",new Query<long[]>() {
+			@Override
+			public long[] read(GasLog log) {
+				return log.readRecordTimes(vehicle);
+			}
+		});
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the records for a vehicle within a range of dates in a 
+	 * column oriented store.
+	 * NOTE: the store is shared (read-only) and does not depend on units.
+	 * @see GasLog#readRecordColumns(Vehicle, Date, Date)
+	 */
+	public RecordColumns readRecordColumns(final Vehicle vehicle, final Date start, final Date end) {
+		String key = "columns:" + start.getTime() + ":" + end.getTime();
+		return get(vehicle,key,new Query<RecordColumns>() {
+			@Override
+			public RecordColumns read(GasLog log) {
+				return log.readRecordColumns(vehicle,start,end);
+			}
+		});
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the monthly trip totals for a vehicle within a range of dates.
+	 * @see GasLog#readMonthlyTrips(Vehicle, Date, Date)
+	 */
+	public MonthlyTrips readMonthlyTrips(final Vehicle vehicle, final Date start, final Date end) {
+		String key = "monthly:" + start.getTime() + ":" + end.getTime();
+		return get(vehicle,key,new Query<MonthlyTrips>() {
+			@Override
+			public MonthlyTrips read(GasLog log) {
+				return log.readMonthlyTrips(vehicle,start,end);
+			}
+		});
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the current units of measurement preference value. Records 
+	 * are read with mileage calculated in these units.
+	 * @return the units value.
+	 */
+	private int getUnits() {
+		return new Units(Settings.KEY_UNITS).getValue();
+	}
+	
+}
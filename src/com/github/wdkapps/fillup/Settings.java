@@ -49,6 +49,7 @@ public class Settings extends PreferenceActivity implements OnSharedPreferenceCh
 	public static final String KEY_PLOT_FONT_SIZE = "plot_font_size";
 	public static final String KEY_DATA_ENTRY_MODE = "data_entry_mode";
 	public static final String KEY_CURRENCY = "currency";
+	public static final String KEY_IMPORT_MODE = "import_mode";
 	
 	/// tag string for logging
 	private static final String TAG = Settings.class.getName(); 
@@ -85,10 +86,15 @@ public class Settings extends PreferenceActivity implements OnSharedPreferenceCh
 		preference = (Preference)findPreference(key);
 		preference.setSummary(getPackageVersion());
 		
-		// display the database version
+		// display the database version (read from the log in the background)
 		key = getResources().getString(R.string.pref_key_database_version);
-		preference = (Preference)findPreference(key);
-		preference.setSummary(getDatabaseVersion());
+		final Preference prefDatabaseVersion = (Preference)findPreference(key);
+		AsyncGasLog.getInstance().getDatabaseVersion(new AsyncGasLog.Callback<Integer>() {
+			@Override
+			public void onResult(Integer actual) {
+				prefDatabaseVersion.setSummary(getDatabaseVersion(actual));
+			}
+		});
 		
 		// display the package build date
 		key = getResources().getString(R.string.pref_key_build_date);
@@ -127,6 +133,7 @@ public class Settings extends PreferenceActivity implements OnSharedPreferenceCh
 		onSharedPreferenceChanged(sharedPreferences,KEY_UNITS);
 		onSharedPreferenceChanged(sharedPreferences,KEY_PLOT_FONT_SIZE);
 		onSharedPreferenceChanged(sharedPreferences,KEY_CURRENCY);
+		onSharedPreferenceChanged(sharedPreferences,KEY_IMPORT_MODE);
 	}
 	
 	/**
@@ -155,6 +162,9 @@ public class Settings extends PreferenceActivity implements OnSharedPreferenceCh
             pref.setSummary(size.getSummary());
         } else if (key.equals(KEY_CURRENCY)) {
         	pref.setSummary(CurrencyManager.getInstance().getPrefSummary());
+        } else if (key.equals(KEY_IMPORT_MODE)) {
+        	ImportMode mode = new ImportMode(this,key);
+        	pref.setSummary(mode.getSummary());
         }
 		
 	}
@@ -202,13 +212,12 @@ public class Settings extends PreferenceActivity implements OnSharedPreferenceCh
     /**
      * DESCRIPTION:
      * Returns the database version for this application (actual and desired).
+     * @param actual - the database version reported by sqlite.
      * @return the database version formatted as a String.
      */
-    private String getDatabaseVersion() {
+    private String getDatabaseVersion(int actual) {
     	String value = null;
     	try {
-    		GasLog gaslog = GasLog.getInstance();
-    		int actual = gaslog.getDatabaseVersion();  // reported by sqlite
     		int desired = GasLog.DATABASE_VERSION;
     		value = String.format(App.getLocale(),"%d (%d)",actual,desired);
     	} catch (Throwable t) {
@@ -22,7 +22,6 @@ package com.github.wdkapps.fillup;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
-import java.util.List;
 
 import android.net.Uri;
 import android.os.Bundle;
@@ -52,9 +51,6 @@ public class StatisticsActivity extends Activity implements OnSharedPreferenceCh
 	/// the vehicle (obtained via Intent)
 	private Vehicle vehicle;
 	
-	/// the data to plot
-	public static List<GasRecord> records = null;
-
 	/// the data to display statistics for
 	private MonthlyTrips monthly;
 	
@@ -67,6 +63,9 @@ public class StatisticsActivity extends Activity implements OnSharedPreferenceCh
 	/// the report
 	private HtmlData report;
 	
+	/// identifies the most recent read of the data (older results are discarded)
+	private int serial;
+	
     /**
      * DESCRIPTION:
      * Called when the Activity is created.
@@ -81,15 +80,12 @@ public class StatisticsActivity extends Activity implements OnSharedPreferenceCh
         Intent intent = getIntent();
         vehicle = (Vehicle)intent.getSerializableExtra(VEHICLE);
         
-        // read the data from the gas log 
-        GasLog gaslog = GasLog.getInstance();
-        records = gaslog.readAllRecords(vehicle);
-
-        // calculate monthly totals
-        monthly = new MonthlyTrips(records);
-        
     	// initialize the layout
     	rangeButtons = new PlotDateRangeButtons(this,Settings.KEY_PLOT_DATE_RANGE);
+
+        // no data until read from the gas log
+        monthly = new MonthlyTrips();
+        
 		webview = (WebView)findViewById(R.id.webviewStats);
     	webview.getSettings().setDefaultTextEncodingName("utf-8");
     	webview.setScrollBarStyle(View.SCROLLBARS_INSIDE_OVERLAY);
@@ -110,9 +106,33 @@ public class StatisticsActivity extends Activity implements OnSharedPreferenceCh
 		
 		// display the report
 		displayReport();
+		
+        // read the data from the gas log 
+        readMonthlyTrips();
 	}
 	
 	
+	/**
+	 * DESCRIPTION:
+	 * Reads the monthly totals within the current plot date range from the 
+	 * gas log in the background, then displays the report.
+	 */
+	private void readMonthlyTrips() {
+		final int id = ++serial;
+		PlotDateRange range = rangeButtons.getPlotDateRange();
+        AsyncGasLog gaslog = AsyncGasLog.getInstance();
+        gaslog.readMonthlyTrips(vehicle,range.getStartDate(),range.getEndDate(),
+        		new AsyncGasLog.Callback<MonthlyTrips>() {
+        	@Override
+        	public void onResult(MonthlyTrips result) {
+        		if (id != serial) return;
+        		monthly = result;
+        		generateReport();
+        		displayReport();
+        	}
+        });
+	}
+	
 	/**
 	 * DESCRIPTION:
 	 * Generates the statistics report from the monthly data.
@@ -239,14 +259,12 @@ public class StatisticsActivity extends Activity implements OnSharedPreferenceCh
 		
 		// update the display when the plot date range changes
 		if (key.equals(Settings.KEY_PLOT_DATE_RANGE)) {
-			generateReport();
-			displayReport();
+			readMonthlyTrips();
 		} 
 
 		// update the display when units of measurement change
+		// note: the monthly totals do not depend on units
 		if (key.equals(Settings.KEY_UNITS)) {
-        	GasRecordList.calculateMileage(records);
-            monthly = new MonthlyTrips(records);
 			generateReport();
 			displayReport();
 		} 
@@ -19,9 +19,6 @@
 
 package com.github.wdkapps.fillup;
 
-import java.util.ArrayList;
-import java.util.Collections;
-
 /**
  * DESCRIPTION:
  * A table for display of statistics derived from one month of trip data.
@@ -43,9 +40,6 @@ public class StatisticsMonthTable implements HtmlData {
 	/// current units of measurement for display of labels
 	private Units units;
 	
-	/// gas records data was derived from
-	private ArrayList<GasRecord> records = new ArrayList<GasRecord>();
-
 	/// a row index used during creation
 	private int row;
 	
@@ -61,8 +55,6 @@ public class StatisticsMonthTable implements HtmlData {
 	public StatisticsMonthTable(TripRecord data, String title) {
 		this.data = data;
 		this.title = title;
-		records.addAll(data.getGasRecords());
-		Collections.sort(records,new OdometerComparator());
 		createTable();
 	}
 
@@ -183,9 +175,8 @@ public class StatisticsMonthTable implements HtmlData {
 		String value = "-";
 		if (data.getGallons() > 0) {
 			double price = data.getCost()/data.getGallons();
-			value = String.format("%s %s",
-					CurrencyManager.getInstance().getSymbolicFormatter().format(price),
-					units.getLiquidVolumeRatioLabel());
+			value = CurrencyManager.getInstance().getSymbolicFormatter().format(price) + " " +
+					units.getLiquidVolumeRatioLabel();
 		}
 		appendTableRow(new String[]{label,value});
 	}
@@ -196,19 +187,11 @@ public class StatisticsMonthTable implements HtmlData {
 	 */
 	private void appendMileageData() {
 		
-		float min = Float.MAX_VALUE;
-		float max = 0f;
-		float sum = 0f;
-		int count = 0;
-		for (GasRecord record : records) {
-			if (!record.hasCalculation()) continue;
-			if (record.isCalculationHidden()) continue;
-			float mileage = record.getCalculation().getMileage();
-			min = Math.min(min,mileage);
-			max = Math.max(max,mileage);
-			sum += mileage;
-			count++;
-		}
+		MileageStatistics mileage = data.getMileage();
+		int count = mileage.getCount();
+		float average = mileage.getAverage(units);
+		float min = mileage.getMinimum(units);
+		float max = mileage.getMaximum(units);
 		
 		String label;
 		String value;
@@ -216,19 +199,19 @@ public class StatisticsMonthTable implements HtmlData {
 		// average
 		label = getString(R.string.stats_label_mileage_avg);
 		value = "-";
-		if (count > 0) 	value = String.format(App.getLocale(),"%.2f %s",sum/count,units.getMileageLabel());
+		if (count > 0) 	value = formatMileage(average);
 		appendTableRow(new String[]{label,value});
 		
 		// minimum
 		label = getString(R.string.stats_label_mileage_min);
 		value = "-";
-		if (count > 0) 	value = String.format(App.getLocale(),"%.2f %s",min,units.getMileageLabel());
+		if (count > 0) 	value = formatMileage(min);
 		appendTableRow(new String[]{label,value});
 
 		// maximum
 		label = getString(R.string.stats_label_mileage_max);
 		value = "-";
-		if (count > 0) 	value = String.format(App.getLocale(),"%.2f %s",max,units.getMileageLabel());
+		if (count > 0) 	value = formatMileage(max);
 		appendTableRow(new String[]{label,value});
 	}
 	
@@ -240,7 +223,20 @@ public class StatisticsMonthTable implements HtmlData {
 	 * @return the property definition String.
 	 */
 	private String property(String attribute, String value) {
-		return String.format(" %s=\"%s\"", attribute, value);
+		return " " + attribute + "=\"" + value + "\"";
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns a mileage value with its units label (i.e. "25.20 mpg").
+	 * @param mileage - the mileage value.
+	 * @return the formatted String.
+	 */
+	private String formatMileage(float mileage) {
+		ValueFormatter formatter = ValueFormatter.getInstance();
+		StringBuilder sb = formatter.getBuilder();
+		formatter.appendFixed(sb,mileage,2).append(' ').append(units.getMileageLabel());
+		return sb.toString();
 	}
 	
 	/**
@@ -45,6 +45,12 @@ public class TripRecord {
     /// the cost of the gasoline purchased
     private Double cost;
     
+    /// the number of gas records (fill ups) the trip represents
+    private int fills;
+    
+    /// statistics for the mileage calculations of the gas records 
+    private MileageStatistics mileage = new MileageStatistics();
+    
     // the set of gas records that the trip represents
     private Set<GasRecord> records = new HashSet<GasRecord>();
     
@@ -59,6 +65,28 @@ public class TripRecord {
     	distance = 0;
     	gallons = 0f;
     	cost = 0d;
+    	fills = 0;
+    }
+
+    /**
+     * DESCRIPTION:
+     * Constructs an instance of TripRecord from previously calculated 
+     * totals (as stored in the log database).
+     * @param date - the start/end date for the trip.
+     * @param distance - the distance driven.
+     * @param gallons - the amount of gasoline purchased.
+     * @param cost - the cost of the gasoline purchased.
+     * @param fills - the number of gas records the trip represents.
+     * @param mileage - statistics for the mileage calculations.
+     */
+    public TripRecord(Date date, int distance, float gallons, double cost, int fills, MileageStatistics mileage) {
+    	this.startDate = date;
+    	this.endDate = date;
+    	this.distance = distance;
+    	this.gallons = gallons;
+    	this.cost = cost;
+    	this.fills = fills;
+    	this.mileage = mileage;
     }
 
     /**
@@ -74,6 +102,10 @@ public class TripRecord {
     	distance = end.getOdometer() - start.getOdometer();
     	gallons = end.getGallons();
     	cost = end.getCost();
+    	fills = 1;
+    	if (end.hasCalculation() && !end.isCalculationHidden()) {
+    		mileage.add(end.getCalculation());
+    	}
     	//records.add(start);
     	records.add(end);
     }
@@ -100,6 +132,8 @@ public class TripRecord {
     	this.distance += that.distance;
     	this.gallons += that.gallons;
     	this.cost += that.cost;
+    	this.fills += that.fills;
+    	this.mileage.append(that.mileage);
     	this.records.addAll(that.records);
     }
     
@@ -148,9 +182,28 @@ public class TripRecord {
 		return cost;
 	}
 	
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the fill count attribute.
+	 * @return the number of gas records the trip represents.
+	 */
+	public int getFills() {
+		return fills;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Getter method for the mileage statistics attribute.
+	 * @return statistics for the mileage calculations of the gas records.
+	 */
+	public MileageStatistics getMileage() {
+		return mileage;
+	}
+	
 	/**
 	 * DESCRIPTION:
 	 * Getter method for the gas record set attribute.
+	 * NOTE: empty when the trip was read from stored totals.
 	 * @return the set of gas records that the trip represents.
 	 */
 	public Set<GasRecord> getGasRecords() {
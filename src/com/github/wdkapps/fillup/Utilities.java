@@ -20,6 +20,8 @@
 package com.github.wdkapps.fillup;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.DisplayMetrics;
 import android.widget.Toast;
 
@@ -31,12 +33,22 @@ public class Utilities {
 	
 	/**
      * DESCRIPTION:
-     * Display an Android "toast" dialog box.
+     * Display an Android "toast" dialog box. Can be called from any thread,
+     * the toast is always displayed by the main thread.
      * @param context - the context to use. Usually an Application or Activity object.
      * @param text - the text to display in the toast.
      */
-    public static void toast(Context context, String text)
+    public static void toast(final Context context, final String text)
     {
+    	if (Looper.myLooper() != Looper.getMainLooper()) {
+    		new Handler(Looper.getMainLooper()).post(new Runnable() {
+    			@Override
+    			public void run() {
+    				toast(context,text);
+    			}
+    		});
+    		return;
+    	}
         Toast toast = Toast.makeText(context, text, Toast.LENGTH_LONG);
         toast.show();
     }
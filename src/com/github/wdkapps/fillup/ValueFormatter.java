@@ -0,0 +1,317 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+
+
+package com.github.wdkapps.fillup;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DateFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * DESCRIPTION:
+ * Formats dates and fixed point numeric values as text for display and 
+ * for CSV files. java.text formatters are not thread-safe, so each thread 
+ * obtains its own instance of ValueFormatter (see getInstance()), which 
+ * can then be used without synchronization. Fixed point values are 
+ * formatted digit by digit into a StringBuilder instead of through 
+ * String.format(), which parses its format string and allocates a new 
+ * java.util.Formatter on every call.
+ */
+public class ValueFormatter {
+	
+	/// powers of ten used to scale fixed point values
+	private static final long[] SCALE = new long[] {
+		1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L
+	};
+	
+	/// largest value formatted digit by digit (larger values use String.format)
+	private static final double MAX_FAST_VALUE = 1e12;
+	
+	/// scaled values this close to a rounding midpoint are rounded exactly
+	private static final double MIDPOINT_TOLERANCE = 1e-6;
+	
+	/// the instance for each thread
+	private static final ThreadLocal<ValueFormatter> instances = new ThreadLocal<ValueFormatter>() {
+		@Override
+		protected ValueFormatter initialValue() {
+			return new ValueFormatter();
+		}
+	};
+	
+	/// the locale that display formats are configured for
+	private Locale locale;
+	
+	/// locale specific characters for display of numeric values
+	private char zeroDigit;
+	private char decimalSeparator;
+	private char minusSign;
+	
+	/// formatters for display of dates and times (created as needed)
+	private DateFormat dateFormat;
+	private DateFormat timeFormat;
+	
+	/// used to determine CSV date/time fields in local time
+	private final Calendar calendar = Calendar.getInstance();
+	
+	/// a reusable buffer returned to callers
+	private final StringBuilder builder = new StringBuilder(128);
+	
+	/// a reusable buffer for values formatted as Strings
+	private final StringBuilder scratch = new StringBuilder(32);
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the ValueFormatter for the current thread, configured for 
+	 * the current device locale.
+	 * @return ValueFormatter - the instance for the current thread.
+	 */
+	public static ValueFormatter getInstance() {
+		return getInstance(App.getLocale());
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the ValueFormatter for the current thread, configured for 
+	 * a specific locale.
+	 * @param locale - the Locale.
+	 * @return ValueFormatter - the instance for the current thread.
+	 */
+	static ValueFormatter getInstance(Locale locale) {
+		ValueFormatter formatter = instances.get();
+		formatter.setLocale(locale);
+		return formatter;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the ValueFormatter for the current thread without checking 
+	 * the device locale. Only for CSV values (appendCsvFixed() and 
+	 * appendCsvDateTime()), which do not depend on the locale.
+	 * @return ValueFormatter - the instance for the current thread.
+	 */
+	static ValueFormatter getCsvInstance() {
+		return instances.get();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Constructs an instance of ValueFormatter (private to enforce one
+	 * instance per thread).
+	 */
+	private ValueFormatter() {
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Configures display formats for a locale (if it has changed).
+	 * @param locale - the Locale.
+	 */
+	private void setLocale(Locale locale) {
+		if (locale.equals(this.locale)) return;
+		this.locale = locale;
+		DecimalFormatSymbols symbols = new DecimalFormatSymbols(locale);
+		zeroDigit = symbols.getZeroDigit();
+		decimalSeparator = symbols.getDecimalSeparator();
+		minusSign = symbols.getMinusSign();
+		dateFormat = null;
+		timeFormat = null;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns a reusable, empty StringBuilder for assembling text. The 
+	 * same StringBuilder is returned (emptied) by the next call on the 
+	 * same thread, so the text must be used before then.
+	 * @return the StringBuilder.
+	 */
+	public StringBuilder getBuilder() {
+		builder.setLength(0);
+		return builder;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Formats a value with a fixed number of fraction digits for display
+	 * (the same result as String.format(locale,"%.nf",value)). 
+	 * @param value - the value.
+	 * @param digits - the number of fraction digits (0-6).
+	 * @return the formatted String.
+	 */
+	public String formatFixed(double value, int digits) {
+		scratch.setLength(0);
+		return appendFixed(scratch,value,digits).toString();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Appends a value with a fixed number of fraction digits for display.
+	 * @param sb - the StringBuilder to append to.
+	 * @param value - the value.
+	 * @param digits - the number of fraction digits (0-6).
+	 * @return the StringBuilder.
+	 */
+	public StringBuilder appendFixed(StringBuilder sb, double value, int digits) {
+		if (!appendDecimal(sb,value,digits,zeroDigit,decimalSeparator,minusSign)) {
+			sb.append(String.format(locale,"%." + digits + "f",value));
+		}
+		return sb;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Appends a value with a fixed number of fraction digits for a CSV 
+	 * file (ASCII digits, '.' as the decimal separator).
+	 * @param sb - the StringBuilder to append to.
+	 * @param value - the value.
+	 * @param digits - the number of fraction digits (0-6).
+	 * @return the StringBuilder.
+	 */
+	public StringBuilder appendCsvFixed(StringBuilder sb, double value, int digits) {
+		if (!appendDecimal(sb,value,digits,'0','.','-')) {
+			sb.append(String.format(Locale.US,"%." + digits + "f",value));
+		}
+		return sb;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Appends a date/time for a CSV file as MM/dd/yyyy HH:mm (local time).
+	 * @param sb - the StringBuilder to append to.
+	 * @param time - the time in milliseconds.
+	 * @return the StringBuilder.
+	 */
+	public StringBuilder appendCsvDateTime(StringBuilder sb, long time) {
+		calendar.setTimeInMillis(time);
+		appendDigits(sb,calendar.get(Calendar.MONTH) + 1,2);
+		sb.append('/');
+		appendDigits(sb,calendar.get(Calendar.DAY_OF_MONTH),2);
+		sb.append('/');
+		appendDigits(sb,calendar.get(Calendar.YEAR),4);
+		sb.append(' ');
+		appendDigits(sb,calendar.get(Calendar.HOUR_OF_DAY),2);
+		sb.append(':');
+		appendDigits(sb,calendar.get(Calendar.MINUTE),2);
+		return sb;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Formats a date for display using the device's date format setting.
+	 * @param date - the Date.
+	 * @return the formatted String.
+	 */
+	public String formatDate(Date date) {
+		if (dateFormat == null) {
+			dateFormat = android.text.format.DateFormat.getDateFormat(App.getContext());
+		}
+		return dateFormat.format(date);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Formats a time for display using the device's time format setting.
+	 * @param date - the Date.
+	 * @return the formatted String.
+	 */
+	public String formatTime(Date date) {
+		if (timeFormat == null) {
+			timeFormat = android.text.format.DateFormat.getTimeFormat(App.getContext());
+		}
+		return timeFormat.format(date);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Appends a value with a fixed number of fraction digits, rounded half 
+	 * up like String.format(). 
+	 * @param sb - the StringBuilder to append to.
+	 * @param value - the value.
+	 * @param digits - the number of fraction digits (0-6).
+	 * @param zero - the character for the digit zero.
+	 * @param separator - the decimal separator character.
+	 * @param minus - the minus sign character.
+	 * @return false if the value cannot be formatted digit by digit (too 
+	 * large, infinite, NaN), in which case nothing is appended.
+	 */
+	private static boolean appendDecimal(StringBuilder sb, double value, int digits, char zero, char separator, char minus) {
+		double magnitude = Math.abs(value);
+		if (!(magnitude < MAX_FAST_VALUE) || (digits < 0) || (digits >= SCALE.length)) {
+			return false;
+		}
+		
+		// String.format() rounds the shortest decimal representation of the
+		// value (Double.toString), so values such as 0.145 round up even
+		// though their binary representation is slightly below the midpoint
+		double product = magnitude * SCALE[digits];
+		long scaled = Math.round(product);
+		if (Math.abs(product - Math.floor(product) - 0.5) < MIDPOINT_TOLERANCE) {
+			scaled = new BigDecimal(Double.toString(magnitude))
+				.setScale(digits,RoundingMode.HALF_UP)
+				.unscaledValue().longValue();
+		}
+		if (value < 0) sb.append(minus);
+		appendLong(sb,scaled / SCALE[digits],1,zero);
+		if (digits > 0) {
+			sb.append(separator);
+			appendLong(sb,scaled % SCALE[digits],digits,zero);
+		}
+		return true;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Appends a non-negative integer value using ASCII digits.
+	 * @param sb - the StringBuilder to append to.
+	 * @param value - the value.
+	 * @param width - minimum number of digits (zero padded).
+	 */
+	private static void appendDigits(StringBuilder sb, long value, int width) {
+		appendLong(sb,value,width,'0');
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Appends a non-negative integer value.
+	 * @param sb - the StringBuilder to append to.
+	 * @param value - the value.
+	 * @param width - minimum number of digits (zero padded).
+	 * @param zero - the character for the digit zero.
+	 */
+	private static void appendLong(StringBuilder sb, long value, int width, char zero) {
+		int start = sb.length();
+		do {
+			sb.append((char)(zero + (value % 10)));
+			value /= 10;
+			width--;
+		} while ((value > 0) || (width > 0));
+		
+		// digits were appended in reverse order
+		for (int i = start, j = sb.length() - 1; i < j; i++, j--) {
+			char c = sb.charAt(i);
+			sb.setCharAt(i,sb.charAt(j));
+			sb.setCharAt(j,c);
+		}
+	}
+}
@@ -144,7 +144,7 @@ public class Vehicle implements Serializable {
 	 * @return the vehicle tank size attribute value as a String.
 	 */
 	public String getTankSizeString() {
-		return String.format(App.getLocale(),"%.1f",tanksize);
+		return ValueFormatter.getInstance().formatFixed(tanksize,1);
 	}
 
 	/**
@@ -0,0 +1,90 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+package com.github.wdkapps.fillup;
+
+import junit.framework.TestCase;
+
+/**
+ * DESCRIPTION:
+ * Tests of ArrayXYSeries.
+ * NOTE: plain JUnit tests (no Android dependencies).
+ */
+public class ArrayXYSeriesTest extends TestCase {
+	
+	/**
+	 * DESCRIPTION:
+	 * Values appended beyond the initial capacity are kept in order.
+	 */
+	public void testGrowth() {
+		final int[] capacities = {0, 1, 3, 16, 10000};
+		for (int capacity : capacities) {
+			ArrayXYSeries series = new ArrayXYSeries(capacity,"title");
+			assertEquals(0,series.size());
+			for (int i = 0; i < 10000; i++) {
+				series.add(1000L * i,i / 4f);
+			}
+			assertEquals(10000,series.size());
+			for (int i = 0; i < 10000; i++) {
+				assertEquals(1000L * i,series.getXValue(i));
+				assertEquals(i / 4f,series.getYValue(i),0f);
+			}
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * The XYSeries methods return the same values as Number instances.
+	 */
+	public void testXYSeries() {
+		ArrayXYSeries series = new ArrayXYSeries("mileage");
+		series.add(Long.MAX_VALUE,-1.5f);
+		series.add(0L,Float.NaN);
+		assertEquals("mileage",series.getTitle());
+		assertEquals(2,series.size());
+		assertEquals(Long.valueOf(Long.MAX_VALUE),series.getX(0));
+		assertEquals(Float.valueOf(-1.5f),series.getY(0));
+		assertEquals(Long.valueOf(0L),series.getX(1));
+		assertTrue(Float.isNaN(series.getY(1).floatValue()));
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Indices outside of the values are rejected (not the array capacity).
+	 */
+	public void testIndexRange() {
+		ArrayXYSeries series = new ArrayXYSeries(16,"title");
+		series.add(1L,1f);
+		final int[] invalid = {-1, 1, 15, 16};
+		for (int index : invalid) {
+			try {
+				series.getXValue(index);
+				fail("x index " + index);
+			} catch (IndexOutOfBoundsException e) {
+				// expected
+			}
+			try {
+				series.getY(index);
+				fail("y index " + index);
+			} catch (IndexOutOfBoundsException e) {
+				// expected
+			}
+		}
+	}
+}
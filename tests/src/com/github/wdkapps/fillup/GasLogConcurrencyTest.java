@@ -0,0 +1,257 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+package com.github.wdkapps.fillup;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * DESCRIPTION:
+ * Stress test of concurrent reads and writes of the log (instrumentation
+ * test, runs against the log database of the application on the device).
+ * One writer thread creates records in batches, one transaction per batch,
+ * while reader threads repeatedly read all records of the vehicle. The 
+ * threads use the log the same way as AsyncGasLog: a single writer, and 
+ * readers that only query with cursors.
+ * <p>
+ * Each read must see a consistent state of the log: whole batches only,
+ * at least the batches committed before the read started, consecutive 
+ * odometer values, and a mileage calculation matching the records (the
+ * mileage segments are updated in the same transaction as the records). 
+ * When write-ahead logging is enabled, reads must also complete while a 
+ * write transaction is in progress. The throughput of both is logged.
+ * <p>
+ * The records are created for a temporary vehicle, which is deleted when 
+ * the test ends. To run the test (with the application and the tests 
+ * project installed):
+ * <pre>
+ * adb shell am instrument -w -e class com.github.wdkapps.fillup.GasLogConcurrencyTest \
+ *     com.github.wdkapps.fillup.tests/android.test.InstrumentationTestRunner
+ * </pre>
+ */
+public class GasLogConcurrencyTest extends AndroidTestCase {
+	
+	/// for logging
+	private static final String TAG = GasLogConcurrencyTest.class.getSimpleName();
+	
+	/// number of records created per transaction
+	private static final int BATCH_SIZE = 250;
+	
+	/// number of transactions
+	private static final int BATCHES = 40;
+	
+	/// number of reader threads
+	private static final int READERS = 3;
+	
+	/// odometer distance between records
+	private static final int DISTANCE = 300;
+	
+	/// gallons purchased per record
+	private static final float GALLONS = 10f;
+	
+	/// the log
+	private GasLog log;
+	
+	/// the temporary vehicle
+	private Vehicle vehicle;
+	
+	/// number of records committed by the writer
+	private volatile int committed;
+	
+	/// true while the writer is in a write transaction
+	private volatile boolean writing;
+	
+	/// true when the writer has finished
+	private volatile boolean done;
+	
+	/// the first error detected by any thread
+	private final AtomicReference<String> error = new AtomicReference<String>();
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		log = GasLog.getInstance();
+		vehicle = new Vehicle();
+		vehicle.setName(TAG + " " + System.currentTimeMillis());
+		assertTrue("create vehicle",log.createVehicle(vehicle));
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		if (vehicle.getID() != null) {
+			log.deleteVehicle(vehicle);
+		}
+		super.tearDown();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Records an error (only the first error is kept).
+	 * @param message - the error message.
+	 */
+	private void error(String message) {
+		error.compareAndSet(null,message);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns a batch of full tank records following the records already 
+	 * created.
+	 * @param first - the number of the first record.
+	 * @return the List of GasRecords.
+	 */
+	private List<GasRecord> batch(int first) {
+		List<GasRecord> records = new ArrayList<GasRecord>(BATCH_SIZE);
+		long start = new Date().getTime() - (BATCHES * BATCH_SIZE * 86400000L);
+		for (int i = first; i < first + BATCH_SIZE; i++) {
+			GasRecord record = new GasRecord(vehicle);
+			record.setDate(new Date(start + (i * 86400000L)));
+			record.setOdometer(i * DISTANCE);
+			record.setGallons(GALLONS);
+			record.setCost(35d);
+			record.setFullTank(true);
+			record.calculatePrice();
+			records.add(record);
+		}
+		return records;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Checks that a list of records read by a reader is a consistent 
+	 * state of the log.
+	 * @param records - the records read.
+	 * @param minimum - the number of records committed before the read.
+	 */
+	private void check(List<GasRecord> records, int minimum) {
+		int count = records.size();
+		if ((count % BATCH_SIZE) != 0) {
+			error("read part of a transaction: " + count + " records");
+			return;
+		}
+		if (count < minimum) {
+			error("read " + count + " records, " + minimum + " were committed");
+			return;
+		}
+		for (int i = 0; i < count; i++) {
+			GasRecord record = records.get(i);
+			if (record.getOdometer() != i * DISTANCE) {
+				error("record " + i + " has odometer " + record.getOdometer());
+				return;
+			}
+			MileageCalculation calc = record.getCalculation();
+			if (i == 0) continue;
+			if ((calc == null) || 
+				(calc.getDistanceDriven() != DISTANCE) || 
+				(calc.getGasolineUsed() != GALLONS)) {
+				error("record " + i + " has calculation " + calc);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Creates records in one thread while other threads read them.
+	 */
+	public void testConcurrentReadWrite() throws Exception {
+		
+		final AtomicInteger reads = new AtomicInteger();
+		final AtomicInteger readsDuringWrite = new AtomicInteger();
+		
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < BATCHES; i++) {
+						List<GasRecord> records = batch(committed);
+						writing = true;
+						int created = log.createRecords(vehicle,records,0,ImportMode.SKIP_DUPLICATES,null);
+						writing = false;
+						if (created != BATCH_SIZE) {
+							error("batch " + i + " created " + created + " records");
+							return;
+						}
+						committed += created;
+					}
+				} catch (Throwable t) {
+					error("writer failed: " + t);
+				} finally {
+					writing = false;
+					done = true;
+				}
+			}
+		},TAG + " writer");
+		
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int i = 0; i < READERS; i++) {
+			readers.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (!done && (error.get() == null)) {
+							int minimum = committed;
+							boolean before = writing;
+							List<GasRecord> records = log.readAllRecords(vehicle);
+							if (before && writing) {
+								readsDuringWrite.incrementAndGet();
+							}
+							reads.incrementAndGet();
+							check(records,minimum);
+						}
+					} catch (Throwable t) {
+						error("reader failed: " + t);
+					}
+				}
+			},TAG + " reader " + i));
+		}
+		
+		long start = System.currentTimeMillis();
+		for (Thread reader : readers) {
+			reader.start();
+		}
+		writer.start();
+		writer.join();
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		long elapsed = Math.max(System.currentTimeMillis() - start,1);
+		
+		Log.i(TAG,String.format("WAL=%b: %d records in %d ms (%d records/s), %d reads (%d reads/s, %d during a write)",
+				log.isWriteAheadLoggingEnabled(),
+				committed,elapsed,(committed * 1000L) / elapsed,
+				reads.get(),(reads.get() * 1000L) / elapsed,readsDuringWrite.get()));
+		
+		assertNull(error.get(),error.get());
+		assertEquals(BATCHES * BATCH_SIZE,committed);
+		check(log.readAllRecords(vehicle),committed);
+		assertNull(error.get(),error.get());
+		assertTrue("no reads",reads.get() > 0);
+		if (log.isWriteAheadLoggingEnabled()) {
+			assertTrue("no reads completed during a write",readsDuringWrite.get() > 0);
+		}
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+package com.github.wdkapps.fillup;
+
+import java.lang.reflect.Method;
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+/**
+ * DESCRIPTION:
+ * Tests of the GasRecord value model: calculations, range checks, copies
+ * and equality.
+ * NOTE: plain JUnit tests (no Android dependencies).
+ */
+public class GasRecordTest extends TestCase {
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns a record with typical values.
+	 */
+	private static GasRecord record() {
+		GasRecord record = new GasRecord();
+		record.setID(7);
+		record.setVehicleID(3);
+		record.setDate(new Date(1388534400000L));
+		record.setOdometer(12345);
+		record.setGallons(10.5f);
+		record.setCost(31.5d);
+		record.setNotes("notes");
+		record.setFullTank(true);
+		record.setHiddenCalculation(false);
+		record.calculatePrice();
+		return record;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Price, gallons and cost are calculated from the other two values.
+	 */
+	public void testCalculations() {
+		GasRecord record = record();
+		assertEquals(3d,record.getPrice(),0d);
+		
+		record.setPrice("3.5");
+		record.calculateGallons();
+		assertEquals(9f,record.getGallons(),0f);
+		
+		record.setPrice("3,199");
+		record.setGallons(10f);
+		record.calculateCost();
+		assertEquals(31.99d,record.getCost(),1e-9);
+		
+		record.setGallons(0f);
+		record.calculatePrice();
+		assertEquals(0d,record.getPrice(),0d);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Calculated values out of range are rejected and cleared.
+	 */
+	public void testCalculationRange() {
+		GasRecord record = record();
+		record.setCost(GasRecord.MAX_COST);
+		record.setGallons(0.001f);
+		try {
+			record.calculatePrice();
+			fail("price out of range");
+		} catch (NumberFormatException e) {
+			assertEquals(0d,record.getPrice(),0d);
+		}
+		
+		record = record();
+		record.setPrice("0");
+		try {
+			record.calculateGallons();
+			fail("gallons out of range");
+		} catch (NumberFormatException e) {
+			assertEquals(0f,record.getGallons(),0f);
+		}
+		
+		record = record();
+		record.setPrice(Double.toString(GasRecord.MAX_PRICE));
+		record.setGallons(GasRecord.MAX_GALLONS);
+		try {
+			record.calculateCost();
+			fail("cost out of range");
+		} catch (NumberFormatException e) {
+			assertEquals(0d,record.getCost(),0d);
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * String setters accept ',' as the decimal separator and apply the 
+	 * same range checks as the calculations.
+	 */
+	public void testStringSetters() {
+		GasRecord record = new GasRecord();
+		record.setOdometer("9999999");
+		assertEquals(GasRecord.MAX_ODOMETER,record.getOdometer());
+		record.setGallons("10,125");
+		assertEquals(10.125f,record.getGallons(),0f);
+		record.setCost("1,25");
+		assertEquals(1.25d,record.getCost(),0d);
+		record.setFullTank("TRUE");
+		assertTrue(record.isFullTank());
+		record.setHiddenCalculation("no");
+		assertFalse(record.isCalculationHidden());
+		
+		final String[] odometers = {"-1", "10000000", "1.5", ""};
+		for (String value : odometers) {
+			try {
+				record.setOdometer(value);
+				fail("accepted odometer " + value);
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+		
+		final String[] gallons = {"0", "-1", "10000", "x"};
+		for (String value : gallons) {
+			try {
+				record.setGallons(value);
+				fail("accepted gallons " + value);
+			} catch (NumberFormatException e) {
+				assertEquals(0f,record.getGallons(),0f);
+			}
+		}
+		
+		try {
+			record.setCost("-0.01");
+			fail("accepted negative cost");
+		} catch (NumberFormatException e) {
+			assertEquals(0d,record.getCost(),0d);
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * A copy is equal to the original, has its own date and no calculation.
+	 */
+	public void testCopy() {
+		GasRecord record = record();
+		GasRecord copy = new GasRecord(record);
+		assertEquals(record,copy);
+		assertEquals(record.hashCode(),copy.hashCode());
+		assertNull(copy.getCalculation());
+		
+		copy.getDate().setTime(0);
+		assertEquals(1388534400000L,record.getDate().getTime());
+		assertFalse(record.equals(copy));
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Records differing in any persistent attribute are not equal.
+	 */
+	public void testEquals() {
+		GasRecord record = record();
+		assertFalse(record.equals(null));
+		assertFalse(record.equals("record"));
+		assertTrue(record.equals(record));
+		
+		GasRecord other = record();
+		other.setID(null);
+		assertFalse(record.equals(other));
+		other = record();
+		other.setOdometer(12346);
+		assertFalse(record.equals(other));
+		other = record();
+		other.setGallons(10.500001f);
+		assertFalse(record.equals(other));
+		other = record();
+		other.setCost(31.500000001d);
+		assertFalse(record.equals(other));
+		other = record();
+		other.setNotes(null);
+		assertFalse(record.equals(other));
+		other = record();
+		other.setFullTank(false);
+		assertFalse(record.equals(other));
+		other = record();
+		other.setHiddenCalculation(true);
+		assertFalse(record.equals(other));
+		
+		// the calculation is not part of the value
+		other = record();
+		other.setCalculation(new MileageCalculation(12000,12345,10.5f,null));
+		assertEquals(record,other);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Calculations, accessors and equality do not allocate objects. 
+	 * Only checked where the Java VM reports allocations per thread (not
+	 * on Android).
+	 */
+	public void testNoAllocation() throws Exception {
+		if (allocatedBytes() < 0) return;
+		
+		GasRecord record = record();
+		GasRecord copy = new GasRecord(record);
+		final int count = 100000;
+		double sum = 0;
+		
+		// warm up so that the measured loop is compiled
+		for (int i = 0; i < count; i++) {
+			sum += calculate(record,copy,i);
+		}
+		
+		long before = allocatedBytes();
+		for (int i = 0; i < count; i++) {
+			sum += calculate(record,copy,i);
+		}
+		long allocated = allocatedBytes() - before;
+		
+		assertTrue("sum " + sum,sum > 0);
+		// less than one byte per record (measurement itself allocates a little)
+		assertTrue("allocated " + allocated + " bytes",allocated < count);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Recalculates and compares the values of a record (allocation test).
+	 */
+	private static double calculate(GasRecord record, GasRecord copy, int i) {
+		record.setOdometer(i);
+		record.setGallons(10f + (i % 10));
+		record.setCost(30d + (i % 7));
+		record.calculatePrice();
+		record.calculateCost();
+		record.calculateGallons();
+		int hash = record.hashCode() + (record.equals(copy) ? 1 : 0);
+		return record.getPrice() + record.getGallons() + record.getCost() + record.getOdometer() + (hash & 1);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the number of bytes allocated by the current thread, using 
+	 * com.sun.management.ThreadMXBean (via reflection, so the test also 
+	 * loads where it is not available).
+	 * @return the number of bytes (-1 if not available).
+	 */
+	private static long allocatedBytes() {
+		try {
+			Class<?> factory = Class.forName("java.lang.management.ManagementFactory");
+			Object bean = factory.getMethod("getThreadMXBean").invoke(null);
+			Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+			Method method = type.getMethod("getThreadAllocatedBytes",long.class);
+			return (Long)method.invoke(bean,Thread.currentThread().getId());
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,299 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+package com.github.wdkapps.fillup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * DESCRIPTION:
+ * Tests of RecordCsvReader, including records written by RecordCsvWriter
+ * and the record layouts written by previous versions of the application.
+ * NOTE: plain JUnit tests (no Android dependencies).
+ */
+public class RecordCsvReaderTest extends TestCase {
+	
+	/// notes that must be quoted in CSV text
+	private static final String[] NOTES = {
+		"",
+		"plain notes",
+		"comma, in notes",
+		"\"quoted\" notes",
+		"line one\nline two",
+		"line one\r\nline two, \"three\"",
+		",\"\n",
+	};
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns a time in milliseconds (local time).
+	 */
+	private static long time(int year, int month, int day, int hour, int minute) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(year,month - 1,day,hour,minute,0);
+		return calendar.getTimeInMillis();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Reads all records from CSV text.
+	 */
+	private static List<GasRecord> readAll(String csv) throws IOException, ParseException {
+		List<GasRecord> records = new ArrayList<GasRecord>();
+		RecordCsvReader in = new RecordCsvReader(new StringReader(csv));
+		try {
+			GasRecord record;
+			while ((record = in.read()) != null) {
+				records.add(record);
+			}
+		} finally {
+			in.close();
+		}
+		return records;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Parses a single line of CSV text.
+	 */
+	private static GasRecord parse(String csv) throws ParseException {
+		GasRecord record = new GasRecord();
+		RecordCsvReader.parse(csv,record);
+		return record;
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Records written by RecordCsvWriter (7 and 8 fields, notes quoted as
+	 * needed) are read back with the same values.
+	 */
+	public void testRoundTrip() throws Exception {
+		StringWriter text = new StringWriter();
+		RecordCsvWriter out = new RecordCsvWriter(text,2);
+		for (int i = 0; i < NOTES.length; i++) {
+			out.write(time(2013,1 + i,10 + i,i,5 * i),1000 + i,10.125f + i,(i % 2) == 0,(i % 3) == 0,
+					35.5 + i,NOTES[i],(i % 2) == 1,28.75f);
+		}
+		out.write(time(2014,12,31,23,59),2000,12f,true,false,0d,null,false,0f);
+		out.close();
+		
+		List<GasRecord> records = readAll(text.toString());
+		assertEquals(NOTES.length + 1,records.size());
+		for (int i = 0; i < NOTES.length; i++) {
+			GasRecord record = records.get(i);
+			assertEquals(time(2013,1 + i,10 + i,i,5 * i),record.getDate().getTime());
+			assertEquals(1000 + i,record.getOdometer());
+			assertEquals(10.125f + i,record.getGallons(),0f);
+			assertEquals((i % 2) == 0,record.isFullTank());
+			assertEquals((i % 3) == 0,record.isCalculationHidden());
+			assertEquals(35.5 + i,record.getCost(),0d);
+			assertEquals(NOTES[i],record.getNotes());
+		}
+		GasRecord last = records.get(NOTES.length);
+		assertEquals(time(2014,12,31,23,59),last.getDate().getTime());
+		assertEquals("",last.getNotes());
+		assertEquals(0d,last.getCost(),0d);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Values are rounded to the precision written by RecordCsvWriter.
+	 */
+	public void testWriteRounding() throws Exception {
+		StringWriter text = new StringWriter();
+		RecordCsvWriter out = new RecordCsvWriter(text,2);
+		out.write(time(2013,3,4,5,6),123,9.8765f,true,false,12.345,"notes",true,31.456f);
+		out.close();
+		assertEquals("03/04/2013 05:06,123,9.877,true,false,12.35,notes,31.46" + 
+				System.getProperty("line.separator"),text.toString());
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Text fields written by writeFields() are quoted only when needed.
+	 */
+	public void testWriteFields() throws Exception {
+		StringWriter text = new StringWriter();
+		RecordCsvWriter out = new RecordCsvWriter(text,0);
+		out.writeFields("plain",null,"a,b","say \"hi\"","two\nlines");
+		out.close();
+		assertEquals("plain,,\"a,b\",\"say \"\"hi\"\"\",\"two\nlines\"" + 
+				System.getProperty("line.separator"),text.toString());
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * All four record layouts are recognized by their number of fields.
+	 */
+	public void testLayouts() throws Exception {
+		
+		// 5 fields (db_version<5)
+		GasRecord record = parse("01/02/2013 03:04,1500,10.5,true,false");
+		assertEquals(time(2013,1,2,3,4),record.getDate().getTime());
+		assertEquals(1500,record.getOdometer());
+		assertEquals(10.5f,record.getGallons(),0f);
+		assertTrue(record.isFullTank());
+		assertFalse(record.isCalculationHidden());
+		assertEquals(0d,record.getCost(),0d);
+		assertEquals("",record.getNotes());
+		
+		// 6 fields (db_version<5 with calculation)
+		record = parse("01/02/2013,1500,10.5,false,TRUE,25.31");
+		assertFalse(record.isFullTank());
+		assertTrue(record.isCalculationHidden());
+		assertEquals(0d,record.getCost(),0d);
+		
+		// 7 fields (db_version=5)
+		record = parse("01/02/2013,1500,10.5,true,false,31.50,notes");
+		assertEquals(31.5d,record.getCost(),0d);
+		assertEquals(3d,record.getPrice(),1e-9);
+		assertEquals("notes",record.getNotes());
+		
+		// 8 fields (db_version=5 with calculation)
+		record = parse("01/02/2013,1500,10.5,true,false,31.50,\"a, b\",25.31");
+		assertEquals(31.5d,record.getCost(),0d);
+		assertEquals("a, b",record.getNotes());
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Records with too few or too many fields are rejected.
+	 */
+	public void testInvalidLength() {
+		final String[] invalid = {
+			"01/02/2013,1500,10.5,true",
+			"01/02/2013,1500,10.5,true,false,31.50,notes,25.31,extra",
+		};
+		for (String csv : invalid) {
+			try {
+				parse(csv);
+				fail("accepted: " + csv);
+			} catch (ParseException e) {
+				// expected
+			}
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Text following the date/time is ignored, and a date without a valid
+	 * time is read as midnight.
+	 */
+	public void testDateTime() throws Exception {
+		assertEquals(time(2013,1,2,0,0),parse("1/2/2013,1,1,true,false").getDate().getTime());
+		assertEquals(time(2013,1,2,3,4),parse("01/02/2013 03:04:59,1,1,true,false").getDate().getTime());
+		assertEquals(time(2013,1,2,15,45),parse("01/02/2013 15:45 PM,1,1,true,false").getDate().getTime());
+		assertEquals(time(2013,1,2,0,0),parse("01/02/2013 noon,1,1,true,false").getDate().getTime());
+		assertEquals(time(2013,1,2,0,0),parse("01/02/2013 25:00,1,1,true,false").getDate().getTime());
+		
+		final String[] invalid = {"", "2013-01-02", "13/02/2013", "01/32/2013", "01/02", "001/02/2013"};
+		for (String date : invalid) {
+			try {
+				parse(date + ",1,1,true,false");
+				fail("accepted: " + date);
+			} catch (ParseException e) {
+				// expected
+			}
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Invalid numeric values are rejected.
+	 */
+	public void testInvalidNumbers() throws Exception {
+		final String[] invalid = {
+			"01/02/2013,,10.5,true,false",
+			"01/02/2013,-1,10.5,true,false",
+			"01/02/2013,1500,x,true,false",
+			"01/02/2013,1500,0,true,false",
+			"01/02/2013,1500,10.5,true,false,-1,notes",
+		};
+		for (String csv : invalid) {
+			try {
+				parse(csv);
+				fail("accepted: " + csv);
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Blank lines are skipped, both line break styles are accepted and
+	 * line numbers include the line breaks within quoted notes.
+	 */
+	public void testLines() throws Exception {
+		String csv = "\n" +
+				"01/02/2013,1500,10.5,true,false,31.50,\"two\nlines\"\r\n" +
+				"\r\n" +
+				"01/03/2013,1600,10.5,true,false,31.50,notes\r" +
+				"01/04/2013,1700,10.5,true,false,31.50,notes";
+		RecordCsvReader in = new RecordCsvReader(new StringReader(csv));
+		assertEquals("two\nlines",in.read().getNotes());
+		assertEquals(3,in.getLineNumber());
+		assertEquals(1600,in.read().getOdometer());
+		assertEquals(5,in.getLineNumber());
+		assertEquals(1700,in.read().getOdometer());
+		assertNull(in.read());
+		assertEquals(6,in.getLineNumber());
+		in.close();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Chunks read by readChunk() end at record boundaries (not within a 
+	 * quoted field), so they can be parsed separately.
+	 */
+	public void testReadChunk() throws Exception {
+		StringWriter text = new StringWriter();
+		RecordCsvWriter out = new RecordCsvWriter(text,2);
+		final int count = 25;
+		for (int i = 0; i < count; i++) {
+			out.write(time(2013,1,1,0,0),i,10f,true,false,30d,NOTES[i % NOTES.length],false,0f);
+		}
+		out.close();
+		
+		RecordCsvReader in = new RecordCsvReader(new StringReader(text.toString()));
+		List<GasRecord> records = new ArrayList<GasRecord>();
+		StringBuilder chunk = new StringBuilder();
+		while (in.readChunk(chunk,4) > 0) {
+			records.addAll(readAll(chunk.toString()));
+			chunk.setLength(0);
+		}
+		in.close();
+		
+		assertEquals(count,records.size());
+		for (int i = 0; i < count; i++) {
+			assertEquals(i,records.get(i).getOdometer());
+			assertEquals(NOTES[i % NOTES.length],records.get(i).getNotes());
+		}
+		assertEquals(readAll(text.toString()).size(),count);
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * *****************************************************************************
+ * Copyright 2014 William D. Kraemer
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *    
+ * ****************************************************************************
+ */
+
+package com.github.wdkapps.fillup;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * DESCRIPTION:
+ * Tests of the fixed point and CSV date/time formatting of ValueFormatter.
+ * Values are rounded half up from their shortest decimal representation
+ * (Double.toString), as by String.format().
+ * NOTE: plain JUnit tests (no Android dependencies).
+ */
+public class ValueFormatterTest extends TestCase {
+	
+	/// powers of ten for 0-6 fraction digits
+	private static final double[] SCALE = {1, 10, 100, 1000, 10000, 100000, 1000000};
+	
+	/// formatter using '.' as the decimal separator
+	private ValueFormatter us;
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		us = ValueFormatter.getInstance(Locale.US);
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Returns the expected text for a value: the shortest decimal 
+	 * representation rounded half up.
+	 */
+	private static String expected(double value, int digits) {
+		return new BigDecimal(Double.toString(value)).setScale(digits,RoundingMode.HALF_UP).toPlainString();
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Values whose binary representation is just below or above a rounding 
+	 * midpoint are rounded like their decimal representation.
+	 */
+	public void testMidpoints() {
+		assertEquals("0.15",us.formatFixed(0.145,2));
+		assertEquals("0.13",us.formatFixed(0.125,2));
+		assertEquals("1.01",us.formatFixed(1.005,2));
+		assertEquals("2.68",us.formatFixed(2.675,2));
+		assertEquals("1.13",us.formatFixed(1.125,2));
+		assertEquals("0.001",us.formatFixed(0.0005,3));
+		assertEquals("3",us.formatFixed(2.5,0));
+		assertEquals("4",us.formatFixed(3.5,0));
+		assertEquals("-0.15",us.formatFixed(-0.145,2));
+		assertEquals("-3",us.formatFixed(-2.5,0));
+		assertEquals("10.000",us.formatFixed(9.9995,3));
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Values away from a midpoint, zero padding and negative values.
+	 */
+	public void testValues() {
+		assertEquals("0.00",us.formatFixed(0d,2));
+		assertEquals("0.10",us.formatFixed(0.1,2));
+		assertEquals("0.000001",us.formatFixed(0.000001,6));
+		assertEquals("12.346",us.formatFixed(12.3456,3));
+		assertEquals("12.345",us.formatFixed(12.3454,3));
+		assertEquals("1000000",us.formatFixed(999999.9,0));
+		assertEquals("-0.00",us.formatFixed(-0.001,2));
+		assertEquals("-12.3",us.formatFixed(-12.34,1));
+		assertEquals("16.0",us.formatFixed(16f,1));
+		assertEquals("10.125",us.formatFixed(10.125f,3));
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Values that cannot be formatted digit by digit are formatted by 
+	 * String.format().
+	 */
+	public void testLargeValues() {
+		assertEquals(String.format(Locale.US,"%.2f",1e12),us.formatFixed(1e12,2));
+		assertEquals(String.format(Locale.US,"%.2f",-5e15),us.formatFixed(-5e15,2));
+		assertEquals(String.format(Locale.US,"%.2f",Double.NaN),us.formatFixed(Double.NaN,2));
+		assertEquals(String.format(Locale.US,"%.2f",Double.POSITIVE_INFINITY),
+				us.formatFixed(Double.POSITIVE_INFINITY,2));
+		assertEquals("999999999999.99",us.formatFixed(999999999999.99,2));
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Random values with 0-6 fraction digits match the decimal rounding.
+	 */
+	public void testRandomValues() {
+		Random random = new Random(20140101L);
+		for (int i = 0; i < 200000; i++) {
+			int digits = random.nextInt(7);
+			double value;
+			switch (i % 3) {
+			case 0:
+				// a rounding midpoint (decimal)
+				value = (random.nextInt(2000000) + 0.5) / SCALE[digits];
+				break;
+			case 1:
+				// a float value (such as gallons)
+				value = random.nextFloat() * 100f;
+				break;
+			default:
+				value = (random.nextDouble() - 0.5) * 20000;
+				break;
+			}
+			assertEquals("value " + value + " digits " + digits,expected(value,digits),us.formatFixed(value,digits));
+		}
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * Display values use the locale's decimal separator; CSV values 
+	 * always use '.'.
+	 */
+	public void testLocale() {
+		ValueFormatter german = ValueFormatter.getInstance(Locale.GERMANY);
+		assertEquals("0,15",german.formatFixed(0.145,2));
+		assertEquals("-1234,5",german.formatFixed(-1234.5,1));
+		
+		StringBuilder sb = new StringBuilder();
+		german.appendCsvFixed(sb,0.145,2).append(',');
+		german.appendCsvFixed(sb,-1234.5,1).append(',');
+		german.appendCsvFixed(sb,1e13,1);
+		assertEquals("0.15,-1234.5,10000000000000.0",sb.toString());
+	}
+	
+	/**
+	 * DESCRIPTION:
+	 * CSV dates are MM/dd/yyyy HH:mm in local time.
+	 */
+	public void testCsvDateTime() {
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(2014,Calendar.FEBRUARY,3,4,5,6);
+		StringBuilder sb = new StringBuilder("x");
+		ValueFormatter.getCsvInstance().appendCsvDateTime(sb,calendar.getTimeInMillis());
+		assertEquals("x02/03/2014 04:05",sb.toString());
+		
+		calendar.set(999,Calendar.DECEMBER,31,23,59,0);
+		sb.setLength(0);
+		ValueFormatter.getCsvInstance().appendCsvDateTime(sb,calendar.getTimeInMillis());
+		assertEquals("12/31/0999 23:59",sb.toString());
+	}
+}